@@ -0,0 +1,170 @@
+/**
+ * File: TransactionScopeTest
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Instrumented tests of the transaction scopes
+ */
+
+package com.keysd.baseandroid.dao.db.helper;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Instrumented tests of {@link TransactionScope}, they run on a device because the behaviour of
+ * the savepoints depends on the framework version
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransactionScopeTest {
+
+  private static final String DATABASE_NAME = "transaction_scope_test.db";
+  private static final String SQL_CREATE = "CREATE TABLE Item (_id INTEGER PRIMARY KEY, name " +
+      "TEXT)";
+
+  private Context context;
+  private TestOpenHelper openHelper;
+
+  @Before
+  public void setUp() {
+    context = InstrumentationRegistry.getTargetContext();
+    context.deleteDatabase(DATABASE_NAME);
+    openHelper = new TestOpenHelper(context);
+  }
+
+  @After
+  public void tearDown() {
+    openHelper.close();
+    context.deleteDatabase(DATABASE_NAME);
+  }
+
+  @Test
+  public void failedNestedScopeOnlyRollsBackItsChanges() {
+    TransactionScope outer = openHelper.beginScope();
+    try {
+      insert("outer");
+      TransactionScope inner = openHelper.beginScope();
+      try {
+        insert("inner");
+        //Not successful, so only its savepoint is rolled back
+      } finally {
+        inner.end();
+      }
+      insert("afterInner");
+      outer.setSuccessful();
+    } finally {
+      outer.end();
+    }
+
+    assertNull(openHelper.getActiveScope());
+    assertEquals(2, count());
+    assertEquals(1, count("outer"));
+    assertEquals(0, count("inner"));
+    assertEquals(1, count("afterInner"));
+  }
+
+  @Test
+  public void successfulNestedScopeIsCommittedWithOuterScope() {
+    TransactionScope outer = openHelper.beginScope();
+    try {
+      TransactionScope inner = openHelper.beginScope();
+      try {
+        insert("inner");
+        inner.setSuccessful();
+      } finally {
+        inner.end();
+      }
+      outer.setSuccessful();
+    } finally {
+      outer.end();
+    }
+
+    assertEquals(1, count("inner"));
+  }
+
+  @Test
+  public void failedOuterScopeRollsBackNestedScopes() {
+    TransactionScope outer = openHelper.beginScope();
+    try {
+      TransactionScope inner = openHelper.beginScope();
+      try {
+        insert("inner");
+        inner.setSuccessful();
+      } finally {
+        inner.end();
+      }
+    } finally {
+      outer.end();
+    }
+
+    assertEquals(0, count());
+  }
+
+  private void insert(String name) {
+    SQLiteDatabase db = openHelper.getWritableDatabase();
+    try {
+      db.execSQL("INSERT INTO Item (name) VALUES (?)", new Object[]{name});
+    } finally {
+      db.close();
+    }
+  }
+
+  private int count() {
+    return count(null);
+  }
+
+  private int count(String name) {
+    SQLiteDatabase db = openHelper.getReadableDatabase();
+    Cursor cursor = null;
+    try {
+      cursor = name == null ? db.rawQuery("SELECT COUNT(*) FROM Item", null) :
+          db.rawQuery("SELECT COUNT(*) FROM Item WHERE name = ?", new String[]{name});
+      cursor.moveToFirst();
+      return cursor.getInt(0);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+      db.close();
+    }
+  }
+
+  /**
+   * Open helper with a single table
+   */
+  private static class TestOpenHelper extends BaseDatabaseOpenHelper {
+
+    TestOpenHelper(Context context) {
+      super(context, DATABASE_NAME, 1);
+    }
+
+    @Override
+    public void create(SQLiteDatabase db, String createSQL) {
+      db.execSQL(createSQL);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+      create(db, SQL_CREATE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+      //Single version
+    }
+  }
+}
@@ -16,13 +16,26 @@ import android.database.Cursor;
 import android.util.Log;
 import com.keysd.baseandroid.dao.db.BaseDBDAO;
 import com.keysd.baseandroid.dao.db.DBException;
+import com.keysd.baseandroid.dao.db.ModelBinder;
+import com.keysd.baseandroid.dao.db.OneToManyRelation;
+import com.keysd.baseandroid.dao.db.RowCallback;
+import com.keysd.baseandroid.dao.db.RowMapper;
+import com.keysd.baseandroid.dao.db.TableChangeListener;
 import com.keysd.baseandroid.dao.db.helper.BaseDatabaseOpenHelper;
+import com.keysd.baseandroid.dao.ws.InvalidResponseException;
+import com.keysd.baseandroid.dao.ws.ResponseErrorException;
 import com.keysd.baseandroid.model.db.BaseModel;
+import com.keysd.baseandroid.model.db.Copyable;
 import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Class that will be the connection between database and view classes, so it will include
@@ -37,8 +50,52 @@ import java.util.Map;
  */
 public abstract class BaseDBController<T extends BaseModel> {
 
+  /**
+   * Catalog snapshots by controller class, controllers are usually created on each use so the
+   * snapshots are shared by all the instances
+   */
+  private static final Map<Class<?>, CatalogSnapshot<?>> snapshots =
+      new ConcurrentHashMap<Class<?>, CatalogSnapshot<?>>();
+
+  /**
+   * Locks of the snapshot loads and discards by controller class, so a load of a catalog does
+   * not block the readers of the other catalogs
+   */
+  private static final ConcurrentMap<Class<?>, Object> snapshotLocks =
+      new ConcurrentHashMap<Class<?>, Object>();
+
+  /**
+   * Number of syncs in progress by table name, their snapshots are refreshed once the sync ends
+   */
+  private static final Map<String, Integer> syncingTables = new HashMap<String, Integer>();
+
+  static {
+    //Snapshots are discarded once the writes are finished and loaded again on the next read,
+    //so a write inside a transaction scope or a batch of single writes is not loaded row by row.
+    //The writes made during a sync of the table are covered by the refresh after the sync
+    BaseDBDAO.addTableChangeListener(new TableChangeListener() {
+      @Override
+      public void onTableChanged(String tableName) {
+        if (!isSyncing(tableName)) {
+          discardSnapshots(tableName, null);
+        }
+      }
+    });
+  }
+
   BaseDBDAO<T> baseDBDAO;
 
+  /**
+   * Binder used for reading the rows, null if the DAO has no binder or the objects are filled
+   * up by an overridden {@link #fillUpObject(android.database.Cursor)}
+   */
+  private final ModelBinder<T> binder;
+
+  /**
+   * Lock of the snapshot of this controller class
+   */
+  private final Object snapshotLock;
+
 
   protected BaseDBDAO<T> getBaseDBDAO() {
     return baseDBDAO;
@@ -52,14 +109,21 @@ public abstract class BaseDBController<T extends BaseModel> {
    */
   protected BaseDBController(BaseDBDAO<T> baseDBDAO) {
     this.baseDBDAO = baseDBDAO;
+    this.binder = overridesFillUpObject() ? null : baseDBDAO.getBinder();
+    this.snapshotLock = getSnapshotLock(getClass());
   }
 
   /**
-   * Columns that will be returned by the sql statements
+   * Columns that will be returned by the sql statements, by default the columns of the model
+   * binder
    *
-   * @return A string array with the columns that will be returned in all sql statements
+   * @return A string array with the columns that will be returned in all sql statements, null
+   * for all the columns
    */
-  protected abstract String[] getColumns();
+  protected String[] getColumns() {
+    ModelBinder<T> daoBinder = baseDBDAO.getBinder();
+    return daoBinder != null ? daoBinder.getColumns() : null;
+  }
 
   /**
    * Projection map that will be used by default on the query statement, by default the
@@ -160,16 +224,36 @@ public abstract class BaseDBController<T extends BaseModel> {
   }
 
   /**
-   * Fill up an object with cursor values, the cursor must be valid or exceptions could be thrown
+   * Fill up an object with cursor values, the cursor must be valid or exceptions could be thrown.
+   * By default the object is read with the binder of the DAO, controllers whose DAO has no binder
+   * must override it
    *
    * @param cursor
    * 	Valid cursor for extract object information
    * @return A State object fill up with cursor information
    *
    * @throws DBException
-   * 	if something goes wrong during SQL statements execution
+   * 	if something goes wrong during SQL statements execution or the DAO has no binder
+   */
+  public T fillUpObject(Cursor cursor) throws DBException {
+    ModelBinder<T> daoBinder = baseDBDAO.getBinder();
+    if (daoBinder == null) {
+      throw new DBException("fillUpObject must be overridden by controllers without binder");
+    }
+    return daoBinder.fromCursor(cursor, daoBinder.getColumnIndexes(cursor));
+  }
+
+  /**
+   * @return True if a subclass fills up the objects by itself, so the binder must not be used
    */
-  public abstract T fillUpObject(Cursor cursor) throws DBException;
+  private boolean overridesFillUpObject() {
+    try {
+      return getClass().getMethod("fillUpObject", Cursor.class).getDeclaringClass() !=
+          BaseDBController.class;
+    } catch (NoSuchMethodException e) {
+      return true;
+    }
+  }
 
   /**
    * Gets the object with the selected id
@@ -230,10 +314,122 @@ public abstract class BaseDBController<T extends BaseModel> {
    * 	if something goes wrong during SQL statements execution
    */
   public List<T> getAll() throws DBException {
+    if (baseDBDAO.isResultCacheEnabled()) {
+      //The controller class defines the model and how the rows are filled up
+      List<T> cached = baseDBDAO.getAll(getColumns(), getProjectionMap(), new ModelRowMapper(),
+                                        getClass().getName());
+      return copyAll(cached);
+    }
     Cursor cursor = baseDBDAO.getAll(getColumns(), getProjectionMap());
     return processGetAll(cursor);
   }
 
+  /**
+   * Copies the objects of a cached result when the model is
+   * {@link com.keysd.baseandroid.model.db.Copyable}, so the callers could modify them without
+   * changing the cached objects
+   */
+  @SuppressWarnings("unchecked")
+  private List<T> copyAll(List<T> cached) {
+    if (cached.isEmpty() || !(cached.get(0) instanceof Copyable)) {
+      return cached;
+    }
+    List<T> copies = new ArrayList<T>(cached.size());
+    for (T object : cached) {
+      copies.add(((Copyable<T>) object).copy());
+    }
+    return copies;
+  }
+
+  /**
+   * Enables the cache of the results of {@link #getAll()}, so repeated calls do not execute the
+   * query again until the table is written. If the model implements
+   * {@link com.keysd.baseandroid.model.db.Copyable} each call returns copies of the cached
+   * objects; otherwise the cached list is shared by all the callers, it is unmodifiable and its
+   * objects must not be modified
+   *
+   * @param resultCacheEnabled
+   * 	True for caching the results
+   */
+  public void setResultCacheEnabled(boolean resultCacheEnabled) {
+    baseDBDAO.setResultCacheEnabled(resultCacheEnabled);
+  }
+
+  /**
+   * Gets all the objects of the table with their children, with a single join query instead of
+   * one query per object. The parents are created with
+   * {@link #fillUpObject(android.database.Cursor)}
+   *
+   * @param join
+   * 	Tables of the query, ej. State LEFT OUTER JOIN StateAux ON State._id = StateAux.idState
+   * @param columns
+   * 	The columns to return, must include the parent and child id columns
+   * @param projectionMap
+   * 	The projection map used for disambiguating the columns of both tables
+   * @param parentIdColumn
+   * 	Column with the parent id
+   * @param childIdColumn
+   * 	Column with the child id, rows where it is null have no child
+   * @param childMapper
+   * 	Creates the children from the rows
+   * @param childCollector
+   * 	Adds the children to their parents
+   * @return A list with the objects and their children
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   */
+  public <C extends BaseModel> List<T> getAllWithChildren(String join, String[] columns,
+      Map<String, String> projectionMap, String parentIdColumn, String childIdColumn,
+      RowMapper<C> childMapper, OneToManyRelation.ChildCollector<T, C> childCollector)
+      throws DBException {
+    OneToManyRelation<T, C> relation = new OneToManyRelation<T, C>(
+        parentIdColumn, new ModelRowMapper(), childIdColumn, childMapper, childCollector);
+    return baseDBDAO.queryRelation(join, null, null, columns, projectionMap, null, relation);
+  }
+
+  /**
+   * Scans all the objects of the table without creating a list, see
+   * {@link #forEach(String, String[], String, com.keysd.baseandroid.dao.db.RowCallback)}
+   *
+   * @param callback
+   * 	Receives the reused object on each row
+   * @return The number of scanned rows
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   */
+  public int forEach(RowCallback<T> callback) throws DBException {
+    return forEach(null, null, null, callback);
+  }
+
+  /**
+   * Scans the objects of the table without creating a list. When the DAO has a binder a single
+   * object is re-pointed to each row, so full table scans, ej. aggregations or filters, only
+   * allocate the text values of the rows; otherwise the objects are created with
+   * {@link #fillUpObject(android.database.Cursor)}. The received object is only valid during the
+   * callback, objects that must be kept should be copied, ej. with
+   * {@link com.keysd.baseandroid.model.db.Copyable#copy()}
+   *
+   * @param selection
+   * 	The selection clause, null for all the rows
+   * @param selectionArgs
+   * 	Selection arguments for "?" components in the selection
+   * @param sortOrder
+   * 	How to order the rows, formatted as an SQL ORDER BY clause (excluding the ORDER BY itself)
+   * @param callback
+   * 	Receives the reused object on each row, it could stop the scan
+   * @return The number of scanned rows
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   */
+  public int forEach(String selection, String[] selectionArgs, String sortOrder,
+      RowCallback<T> callback) throws DBException {
+    return baseDBDAO.forEach(selection, selectionArgs, getColumns(), getProjectionMap(),
+                             sortOrder, new FlyweightCallback(callback));
+  }
+
   /**
    * Process the cursor returned
    *
@@ -248,8 +444,10 @@ public abstract class BaseDBController<T extends BaseModel> {
     //If the cursor has at least one element, create the corresponding State object, if not,
     // return an empty object
     if (cursor != null && cursor.moveToFirst()) {
+      //Resolve the column indexes once instead of on each row
+      int[] indexes = binder != null ? binder.getColumnIndexes(cursor) : null;
       do {
-        T t = fillUpObject(cursor);
+        T t = indexes != null ? binder.fromCursor(cursor, indexes) : fillUpObject(cursor);
         res.add(t);
       } while (cursor.moveToNext());
       cursor.close();
@@ -260,6 +458,124 @@ public abstract class BaseDBController<T extends BaseModel> {
     return res;
   }
 
+  /**
+   * Gets the server id of an object, used for the lookups by server id of the catalog snapshots,
+   * see {@link CatalogSnapshot#getByServerId(Object)}
+   *
+   * @param object
+   * 	Object of the catalog
+   * @return The server id, null by default
+   */
+  protected Object getServerId(T object) {
+    return null;
+  }
+
+  /**
+   * Gets an immutable copy of the whole table, it is loaded from the data base on the first
+   * call and then shared by all the controllers of the same class until the table changes. Use
+   * it for small catalogs that are read constantly, the readers never touch the data base nor
+   * take locks once it is loaded
+   *
+   * @return The catalog snapshot
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   */
+  @SuppressWarnings("unchecked")
+  public CatalogSnapshot<T> getSnapshot() throws DBException {
+    if (baseDBDAO.hasUncommittedChanges()) {
+      //Only this thread sees the rows, so the snapshot is not shared
+      return loadSnapshot();
+    }
+    CatalogSnapshot<T> snapshot = (CatalogSnapshot<T>) snapshots.get(getClass());
+    if (snapshot != null) {
+      return snapshot;
+    }
+    synchronized (snapshotLock) {
+      snapshot = (CatalogSnapshot<T>) snapshots.get(getClass());
+      return snapshot != null ? snapshot : refreshSnapshot();
+    }
+  }
+
+  /**
+   * Loads the table again and replaces the catalog snapshot, the readers keep the previous
+   * snapshot until the new one is complete
+   *
+   * @return The new catalog snapshot
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution, the previous snapshot is kept
+   */
+  public CatalogSnapshot<T> refreshSnapshot() throws DBException {
+    if (baseDBDAO.hasUncommittedChanges()) {
+      return loadSnapshot();
+    }
+    //Serialized with the loads and the discards of this class, so an older load never replaces a
+    //newer one
+    synchronized (snapshotLock) {
+      CatalogSnapshot<T> snapshot = loadSnapshot();
+      snapshots.put(getClass(), snapshot);
+      return snapshot;
+    }
+  }
+
+  private CatalogSnapshot<T> loadSnapshot() throws DBException {
+    List<T> rows = processGetAll(baseDBDAO.getAll(getColumns(), getProjectionMap()));
+    List<Object> serverIds = new ArrayList<Object>(rows.size());
+    for (T row : rows) {
+      serverIds.add(getServerId(row));
+    }
+    return new CatalogSnapshot<T>(baseDBDAO.getTableName(), rows, serverIds);
+  }
+
+  /**
+   * Applies the changes of the table since the previous sync. Once the changes are committed the
+   * catalog snapshot of this controller, if it was loaded, is refreshed and swapped in, so the
+   * readers keep the previous snapshot instead of loading the table again
+   *
+   * @param syncEngine
+   * 	Engine used for the sync
+   * @param keyColumn
+   * 	Column that identifies the rows on the server, ej. the server id
+   * @param changeSource
+   * 	Source of the changes
+   * @return The number of inserted, updated and deleted rows
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   * @throws InvalidResponseException
+   * 	If the server response contains invalid fields or does not full fill the established protocol
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+   * 	If the server response contains an error message
+   * @see DeltaSyncEngine#sync(BaseDBDAO, String, DeltaSyncEngine.ChangeSource)
+   */
+  public DeltaSyncEngine.SyncResult sync(DeltaSyncEngine syncEngine, String keyColumn,
+      DeltaSyncEngine.ChangeSource<T> changeSource)
+      throws DBException, InvalidResponseException, IOException, ResponseErrorException {
+    String tableName = baseDBDAO.getTableName();
+    DeltaSyncEngine.SyncResult result = null;
+    setSyncing(tableName, true);
+    try {
+      result = syncEngine.sync(baseDBDAO, keyColumn, changeSource);
+    } finally {
+      setSyncing(tableName, false);
+      //The writes during the sync were not notified, the snapshot of this controller is kept for
+      //the refresh unless the sync failed
+      discardSnapshots(tableName, result != null ? getClass() : null);
+    }
+    if (snapshots.containsKey(getClass())) {
+      try {
+        refreshSnapshot();
+      } catch (DBException e) {
+        discardSnapshots(tableName, null);
+        throw e;
+      }
+    }
+    return result;
+  }
+
   /**
    * Gets the number of rows registered for the table
    * @return
@@ -269,4 +585,101 @@ public abstract class BaseDBController<T extends BaseModel> {
   public Integer getCount() throws DBException {
     return getBaseDBDAO().getCount();
   }
+
+  private static Object getSnapshotLock(Class<?> controllerClass) {
+    Object lock = snapshotLocks.get(controllerClass);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = snapshotLocks.putIfAbsent(controllerClass, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  /**
+   * Discards the snapshots of a table, serialized with their loads so a load that started before
+   * the change never replaces the discard
+   *
+   * @param tableName
+   * 	Changed table
+   * @param except
+   * 	Controller class whose snapshot is kept, null for discarding all of them
+   */
+  private static void discardSnapshots(String tableName, Class<?> except) {
+    for (Map.Entry<Class<?>, CatalogSnapshot<?>> entry : snapshots.entrySet()) {
+      Class<?> controllerClass = entry.getKey();
+      if (controllerClass != except && tableName.equals(entry.getValue().getTableName())) {
+        synchronized (getSnapshotLock(controllerClass)) {
+          snapshots.remove(controllerClass);
+        }
+      }
+    }
+  }
+
+  private static void setSyncing(String tableName, boolean syncing) {
+    synchronized (syncingTables) {
+      Integer count = syncingTables.get(tableName);
+      int newCount = (count != null ? count : 0) + (syncing ? 1 : -1);
+      if (newCount > 0) {
+        syncingTables.put(tableName, newCount);
+      } else {
+        syncingTables.remove(tableName);
+      }
+    }
+  }
+
+  private static boolean isSyncing(String tableName) {
+    synchronized (syncingTables) {
+      return syncingTables.containsKey(tableName);
+    }
+  }
+
+  /**
+   * Creates the objects with {@link #fillUpObject(android.database.Cursor)}, or with the binder
+   * resolving the column indexes on the first row. Each query uses its own mapper, as the indexes
+   * belong to its cursor
+   */
+  private class ModelRowMapper implements RowMapper<T> {
+    private int[] indexes;
+
+    @Override
+    public T mapRow(Cursor cursor) throws DBException {
+      if (binder == null) {
+        return fillUpObject(cursor);
+      }
+      if (indexes == null) {
+        indexes = binder.getColumnIndexes(cursor);
+      }
+      return binder.fromCursor(cursor, indexes);
+    }
+  }
+
+  /**
+   * Re-points a single object to each row of a cursor and passes it to a callback
+   */
+  private class FlyweightCallback implements RowCallback<Cursor> {
+    private final RowCallback<T> callback;
+    private int[] indexes;
+    private T row;
+
+    private FlyweightCallback(RowCallback<T> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public boolean onRow(Cursor cursor) throws DBException {
+      if (binder == null) {
+        return callback.onRow(fillUpObject(cursor));
+      }
+      if (row == null) {
+        indexes = binder.getColumnIndexes(cursor);
+        row = binder.fromCursor(cursor, indexes);
+      } else {
+        binder.readInto(row, cursor, indexes);
+      }
+      return callback.onRow(row);
+    }
+  }
 }
@@ -0,0 +1,120 @@
+/**
+ * File: CatalogSnapshot
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Immutable in memory copy of a catalog table
+ */
+
+package com.keysd.baseandroid.controller;
+
+import com.keysd.baseandroid.model.db.BaseModel;
+import com.keysd.baseandroid.util.CustomCatalogComparator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in memory copy of a small catalog table, ej. states, with constant time lookups by
+ * data base id and by server id and a view sorted by
+ * {@link com.keysd.baseandroid.model.db.BaseModel#getShownDescription()}. Snapshots are never
+ * modified once built, so they could be read from any thread without locks; when the table
+ * changes the snapshot is discarded once the writes are committed and a new one is loaded on
+ * the next read, see {@link BaseDBController#getSnapshot()}.
+ * <p/>
+ * The objects are shared by all the readers, so they must not be modified
+ *
+ * @param <T>
+ * 	Model of the catalog
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public final class CatalogSnapshot<T extends BaseModel> {
+
+  private final String tableName;
+  private final List<T> all;
+  private final List<T> sorted;
+  private final Map<Integer, T> byDbId;
+  private final Map<Object, T> byServerId;
+  private final long createdAt;
+
+  /**
+   * Constructor
+   *
+   * @param tableName
+   * 	Table of the catalog
+   * @param rows
+   * 	All the rows of the table
+   * @param serverIds
+   * 	Server id of each row, in the same order, or null if the catalog has no server id
+   */
+  CatalogSnapshot(String tableName, List<T> rows, List<?> serverIds) {
+    this.tableName = tableName;
+    List<T> sortedRows = new ArrayList<T>(rows);
+    Collections.sort(sortedRows, new CustomCatalogComparator<T>());
+    Map<Integer, T> dbIds = new HashMap<Integer, T>(rows.size() * 4 / 3 + 1);
+    Map<Object, T> server = new HashMap<Object, T>(rows.size() * 4 / 3 + 1);
+    for (int i = 0; i < rows.size(); i++) {
+      T row = rows.get(i);
+      dbIds.put(row.getDbId(), row);
+      if (serverIds != null && serverIds.get(i) != null) {
+        server.put(serverIds.get(i), row);
+      }
+    }
+    this.all = Collections.unmodifiableList(new ArrayList<T>(rows));
+    this.sorted = Collections.unmodifiableList(sortedRows);
+    this.byDbId = Collections.unmodifiableMap(dbIds);
+    this.byServerId = Collections.unmodifiableMap(server);
+    this.createdAt = System.currentTimeMillis();
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * @param dbId
+   * 	Data base id
+   * @return The object with the id or null if it does not exist
+   */
+  public T getByDbId(Integer dbId) {
+    return byDbId.get(dbId);
+  }
+
+  /**
+   * @param serverId
+   * 	Server id, of the same type returned by {@link BaseDBController#getServerId(BaseModel)}
+   * @return The object with the id or null if it does not exist
+   */
+  public T getByServerId(Object serverId) {
+    return byServerId.get(serverId);
+  }
+
+  /**
+   * @return All the objects, in the order returned by the data base
+   */
+  public List<T> getAll() {
+    return all;
+  }
+
+  /**
+   * @return All the objects sorted by their shown description, ej. for a spinner
+   */
+  public List<T> getSorted() {
+    return sorted;
+  }
+
+  public int size() {
+    return all.size();
+  }
+
+  /**
+   * @return The time the snapshot was built, in milliseconds
+   */
+  public long getCreatedAt() {
+    return createdAt;
+  }
+}
@@ -0,0 +1,314 @@
+/**
+ * File: DeltaSyncEngine
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Synchronizes tables with the server applying only the changes since the previous sync
+ */
+
+package com.keysd.baseandroid.controller;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import com.keysd.baseandroid.dao.db.BaseDBDAO;
+import com.keysd.baseandroid.dao.db.DBException;
+import com.keysd.baseandroid.dao.db.helper.BaseDatabaseOpenHelper;
+import com.keysd.baseandroid.dao.db.helper.DatabaseDictionary;
+import com.keysd.baseandroid.dao.ws.InvalidResponseException;
+import com.keysd.baseandroid.dao.ws.ResponseErrorException;
+import com.keysd.baseandroid.model.db.BaseModel;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Synchronizes tables with the server applying only the changes since the previous sync, instead
+ * of deleting and inserting the whole table. For each table a high water mark is saved, ej. the
+ * server timestamp or version of the latest change received; on each sync the changes after
+ * that mark are requested, the changed objects are inserted or updated and the deleted ones
+ * (tombstones) are removed, all in a single transaction together with the new mark, so a failed
+ * sync leaves the table and its mark untouched.
+ * <p/>
+ * The changes are obtained by a {@link ChangeSource}, usually implemented with a
+ * {@link com.keysd.baseandroid.dao.ws.WSClient} method that receives the mark as parameter.
+ * Rows are matched by a key column, ej. the server id, see
+ * {@link com.keysd.baseandroid.dao.db.BaseDBDAO#upsert(com.keysd.baseandroid.model.db.BaseModel,
+ * String, android.database.sqlite.SQLiteDatabase)}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class DeltaSyncEngine {
+
+  private final BaseDatabaseOpenHelper databaseOpenHelper;
+
+  /**
+   * Constructor, the open helper must create the marks table
+   * {@link DatabaseDictionary.SyncState#SQL_CREATE} on its onCreate and onUpgrade functions
+   *
+   * @param databaseOpenHelper
+   * 	Open helper of the data base where the synchronized tables and their marks are saved
+   */
+  public DeltaSyncEngine(BaseDatabaseOpenHelper databaseOpenHelper) {
+    this.databaseOpenHelper = databaseOpenHelper;
+  }
+
+  /**
+   * Gets the mark of the latest change applied to a table
+   *
+   * @param tableName
+   * 	Table name
+   * @return The mark, or null if the table was never synchronized
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   */
+  public String getHighWaterMark(String tableName) throws DBException {
+    SQLiteDatabase db = null;
+    Cursor cursor = null;
+    try {
+      db = databaseOpenHelper.getWritableDatabase();
+      cursor = db.query(DatabaseDictionary.SyncState.NAME,
+                        new String[]{DatabaseDictionary.SyncState.COLUMN_NAME_HIGH_WATER_MARK},
+                        DatabaseDictionary.SyncState.FILTER_TABLE_NAME, new String[]{tableName},
+                        null, null, null);
+      return cursor.moveToFirst() ? cursor.getString(0) : null;
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+      if (db != null) {
+        db.close();
+      }
+    }
+  }
+
+  /**
+   * Removes the mark of a table, so the next sync requests all its rows, ej. after clearing the
+   * table
+   *
+   * @param tableName
+   * 	Table name
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution
+   */
+  public void resetHighWaterMark(String tableName) throws DBException {
+    SQLiteDatabase db = null;
+    try {
+      db = databaseOpenHelper.getWritableDatabase();
+      db.delete(DatabaseDictionary.SyncState.NAME, DatabaseDictionary.SyncState.FILTER_TABLE_NAME,
+                new String[]{tableName});
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (db != null) {
+        db.close();
+      }
+    }
+  }
+
+  /**
+   * Requests the changes of a table since its mark and applies them
+   *
+   * @param dao
+   * 	DAO of the table
+   * @param keyColumn
+   * 	Column that identifies the rows on the server, ej. the server id
+   * @param changeSource
+   * 	Source of the changes
+   * @return The number of inserted, updated and deleted rows
+   *
+   * @throws DBException
+   * 	if something goes wrong during SQL statements execution, no change is applied
+   * @throws InvalidResponseException
+   * 	If the server response contains invalid fields or does not full fill the established protocol
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+   * 	If the server response contains an error message
+   */
+  public <T extends BaseModel> SyncResult sync(BaseDBDAO<T> dao, String keyColumn,
+      ChangeSource<T> changeSource)
+      throws DBException, InvalidResponseException, IOException, ResponseErrorException {
+    long start = System.currentTimeMillis();
+    String tableName = dao.getTableName();
+    String highWaterMark = getHighWaterMark(tableName);
+
+    //Network first, so the data base is not locked while waiting for the server
+    ChangeSet<T> changeSet = changeSource.getChanges(highWaterMark);
+
+    int inserted = 0;
+    int updated = 0;
+    int deleted;
+    SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
+    db.beginTransaction();
+    try {
+      for (T upsert : changeSet.getUpserts()) {
+        if (dao.upsert(upsert, keyColumn, db)) {
+          inserted++;
+        } else {
+          updated++;
+        }
+      }
+      deleted = dao.delete(keyColumn, changeSet.getDeletedKeys(), db);
+
+      if (changeSet.getHighWaterMark() != null) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseDictionary.SyncState.COLUMN_NAME_TABLE_NAME, tableName);
+        values.put(DatabaseDictionary.SyncState.COLUMN_NAME_HIGH_WATER_MARK,
+                   changeSet.getHighWaterMark());
+        db.replaceOrThrow(DatabaseDictionary.SyncState.NAME, null, values);
+      }
+      db.setTransactionSuccessful();
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      db.endTransaction();
+      db.close();
+      //The rows could have been read by other connections before the commit
+      dao.notifyTableChanged();
+    }
+    return new SyncResult(tableName, inserted, updated, deleted,
+                          changeSet.getHighWaterMark() != null ? changeSet.getHighWaterMark() :
+                              highWaterMark, System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Source of the changes of a table, usually a web service method
+   *
+   * @param <T>
+   * 	Model of the table
+   * @author "M. en C. Javier Silva Perez (JSP)"
+   * @version 1.0
+   * @since 19/10/16
+   */
+  public interface ChangeSource<T extends BaseModel> {
+
+    /**
+     * Gets the changes after a mark
+     *
+     * @param highWaterMark
+     * 	Mark of the latest change applied, null for requesting all the rows
+     * @return The changes and the new mark
+     *
+     * @throws InvalidResponseException
+     * 	If the server response contains invalid fields or does not full fill the established
+     * 	protocol
+     * @throws java.io.IOException
+     * 	If the connection could not be done due to network problems
+     * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+     * 	If the server response contains an error message
+     */
+    public ChangeSet<T> getChanges(String highWaterMark)
+        throws InvalidResponseException, IOException, ResponseErrorException;
+  }
+
+  /**
+   * Changes of a table after a mark
+   *
+   * @param <T>
+   * 	Model of the table
+   */
+  public static class ChangeSet<T extends BaseModel> {
+    private final List<T> upserts;
+    private final List<String> deletedKeys;
+    private final String highWaterMark;
+
+    /**
+     * Constructor
+     *
+     * @param upserts
+     * 	Created or modified objects, could be null
+     * @param deletedKeys
+     * 	Key column values of the deleted objects, could be null
+     * @param highWaterMark
+     * 	Mark of the latest change included, null to keep the current mark
+     */
+    public ChangeSet(List<T> upserts, List<String> deletedKeys, String highWaterMark) {
+      this.upserts = upserts != null ? upserts : Collections.<T>emptyList();
+      this.deletedKeys = deletedKeys != null ? deletedKeys : Collections.<String>emptyList();
+      this.highWaterMark = highWaterMark;
+    }
+
+    public List<T> getUpserts() {
+      return upserts;
+    }
+
+    public List<String> getDeletedKeys() {
+      return deletedKeys;
+    }
+
+    public String getHighWaterMark() {
+      return highWaterMark;
+    }
+  }
+
+  /**
+   * Result of the sync of a table
+   */
+  public static class SyncResult {
+    private final String tableName;
+    private final int inserted;
+    private final int updated;
+    private final int deleted;
+    private final String highWaterMark;
+    private final long duration;
+
+    private SyncResult(String tableName, int inserted, int updated, int deleted,
+        String highWaterMark, long duration) {
+      this.tableName = tableName;
+      this.inserted = inserted;
+      this.updated = updated;
+      this.deleted = deleted;
+      this.highWaterMark = highWaterMark;
+      this.duration = duration;
+    }
+
+    public String getTableName() {
+      return tableName;
+    }
+
+    public int getInserted() {
+      return inserted;
+    }
+
+    public int getUpdated() {
+      return updated;
+    }
+
+    public int getDeleted() {
+      return deleted;
+    }
+
+    /**
+     * @return The table mark after the sync
+     */
+    public String getHighWaterMark() {
+      return highWaterMark;
+    }
+
+    /**
+     * @return Sync duration in milliseconds, including the request
+     */
+    public long getDuration() {
+      return duration;
+    }
+
+    @Override
+    public String toString() {
+      return "SyncResult{" +
+          "tableName='" + tableName + '\'' +
+          ", inserted=" + inserted +
+          ", updated=" + updated +
+          ", deleted=" + deleted +
+          ", highWaterMark='" + highWaterMark + '\'' +
+          ", duration=" + duration +
+          '}';
+    }
+  }
+}
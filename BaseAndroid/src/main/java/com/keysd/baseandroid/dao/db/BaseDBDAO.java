@@ -6,15 +6,21 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import com.keysd.baseandroid.dao.db.helper.BaseDatabaseOpenHelper;
 import com.keysd.baseandroid.dao.db.helper.DatabaseDictionary;
+import com.keysd.baseandroid.dao.db.helper.TransactionScope;
 import com.keysd.baseandroid.model.db.BaseModel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 
 /**
  * Base data base helper contains all the base functions for common data base operations like,
@@ -32,8 +38,23 @@ public abstract class BaseDBDAO<T extends BaseModel> {
    * Maximum SQLite query params
    */
   public static final int MAX_QUERY_PARAMS = 999;
+
+  /**
+   * Separates the tables of a join clause
+   */
+  private static final Pattern JOIN_SEPARATOR = Pattern.compile(
+      "\\s*,\\s*|\\s+(?:(?:NATURAL|LEFT|RIGHT|FULL|OUTER|INNER|CROSS)\\s+)*JOIN\\s+",
+      Pattern.CASE_INSENSITIVE);
   protected final BaseDatabaseOpenHelper mDatabaseOpenHelper;
   protected String tableName;
+  /**
+   * Listeners of the writes of all the DAOs
+   */
+  private static final List<TableChangeListener> tableChangeListeners =
+      new CopyOnWriteArrayList<TableChangeListener>();
+  private final SqlCache sqlCache = new SqlCache(SqlCache.DEFAULT_MAX_SIZE);
+  private final ModelBinder<T> binder;
+  private boolean resultCacheEnabled;
 
   /**
    * Constructor
@@ -42,8 +63,23 @@ public abstract class BaseDBDAO<T extends BaseModel> {
    * @param baseDatabaseOpenHelper data base open helper to be used in this class
    */
   protected BaseDBDAO(String tableName, BaseDatabaseOpenHelper baseDatabaseOpenHelper) {
+    this(tableName, baseDatabaseOpenHelper, null);
+  }
+
+  /**
+   * Constructor for models with a binder generated from their annotations, the binder is used
+   * by {@link #fillMapValues(com.keysd.baseandroid.model.db.BaseModel)} and by the list inserts,
+   * which bind each object directly into a single compiled statement
+   *
+   * @param tableName              Table name in which this queries will be executed
+   * @param baseDatabaseOpenHelper data base open helper to be used in this class
+   * @param binder                 Binder of the model, ej. new State_Binder()
+   */
+  protected BaseDBDAO(String tableName, BaseDatabaseOpenHelper baseDatabaseOpenHelper,
+      ModelBinder<T> binder) {
     this.tableName = tableName;
     mDatabaseOpenHelper = baseDatabaseOpenHelper;
+    this.binder = binder;
   }
 
   /**
@@ -57,12 +93,19 @@ public abstract class BaseDBDAO<T extends BaseModel> {
   }
 
   /**
-   * Fill up a map for the values to be inserted or updated into the data base
+   * Fill up a map for the values to be inserted or updated into the data base, by default the
+   * values are taken from the model binder, DAOs without binder must override it
    *
    * @param insertObject Object to be get the table values
    * @return A ContentValues object filled up with the corresponding Patient values
+   * @throws DBException if the DAO has no binder
    */
-  protected abstract ContentValues fillMapValues(T insertObject) throws DBException;
+  protected ContentValues fillMapValues(T insertObject) throws DBException {
+    if (binder == null) {
+      throw new DBException("fillMapValues must be overridden by DAOs without binder");
+    }
+    return binder.toContentValues(insertObject);
+  }
 
   /**
    * Gets the default table join string
@@ -84,10 +127,116 @@ public abstract class BaseDBDAO<T extends BaseModel> {
     return tableName + "." + DatabaseDictionary.DBBaseStructure.FILTER_ID;
   }
 
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * @return The binder of the model, or null if the DAO maps its values by hand
+   */
+  public ModelBinder<T> getBinder() {
+    return binder;
+  }
+
+  /**
+   * Gets the cache of the SQL built by this DAO, ej. for reporting its hit rates
+   *
+   * @return The SQL cache of this DAO
+   */
+  public SqlCache getSqlCache() {
+    return sqlCache;
+  }
+
+  public boolean isResultCacheEnabled() {
+    return resultCacheEnabled;
+  }
+
   /**
-   * Close the data base
+   * Enables the cache of the results of the queries that return lists of objects, see
+   * {@link #queryList(String, String, String[], String[], java.util.Map, String, RowMapper)}.
+   * Cached results are shared by all the callers, so the lists are unmodifiable, but their
+   * objects are not copied and must not be modified, see {@link QueryResultCache}
+   *
+   * @param resultCacheEnabled True for caching the results on the {@link QueryResultCache}
+   */
+  public void setResultCacheEnabled(boolean resultCacheEnabled) {
+    this.resultCacheEnabled = resultCacheEnabled;
+  }
+
+  /**
+   * Discards the cached results that read the table of this DAO and notifies the
+   * {@link TableChangeListener}s, it is called by all the write methods of this class. Writes
+   * done inside a transaction managed outside should call it again once the transaction is
+   * committed, inside a {@link TransactionScope} the listeners are notified when the scope ends
+   */
+  public void notifyTableChanged() {
+    QueryResultCache.getInstance().invalidate(tableName);
+    TransactionScope scope = mDatabaseOpenHelper.getActiveScope();
+    if (scope != null) {
+      //The listeners are notified when the scope ends
+      scope.addChangedTable(tableName);
+    } else {
+      dispatchTableChanged(tableName);
+    }
+  }
+
+  /**
+   * @return True if the table of this DAO was written on the active transaction scope of the
+   * current thread, so the rows read on this thread are not committed yet
+   */
+  public boolean hasUncommittedChanges() {
+    TransactionScope scope = mDatabaseOpenHelper.getActiveScope();
+    return scope != null && scope.hasChangedTable(tableName);
+  }
+
+  /**
+   * Registers a listener of the writes done by all the DAOs
+   *
+   * @param listener Listener to be notified once the writes to a table are finished
+   */
+  public static void addTableChangeListener(TableChangeListener listener) {
+    tableChangeListeners.add(listener);
+  }
+
+  public static void removeTableChangeListener(TableChangeListener listener) {
+    tableChangeListeners.remove(listener);
+  }
+
+  /**
+   * Notifies the listeners that the writes to a table are finished, it is called by
+   * {@link #notifyTableChanged()} and by the transaction scopes when they end
+   *
+   * @param tableName Written table
+   */
+  public static void dispatchTableChanged(String tableName) {
+    for (TableChangeListener listener : tableChangeListeners) {
+      listener.onTableChanged(tableName);
+    }
+  }
+
+  /**
+   * Gets the tables read by a query, used for invalidating its cached results. By default the
+   * tables are parsed from the join clause, it should be overridden if the join clause contains
+   * sub queries
+   *
+   * @param tables Tables of the query, ej. foo LEFT OUTER JOIN bar ON (foo.id = bar.foo_id)
+   * @return The table names
+   */
+  protected String[] getReadTables(String tables) {
+    String[] joined = JOIN_SEPARATOR.split(tables.trim());
+    String[] names = new String[joined.length];
+    for (int i = 0; i < joined.length; i++) {
+      //Remove the alias and the join constraint
+      names[i] = joined[i].trim().split("\\s+", 2)[0];
+    }
+    return names;
+  }
+
+  /**
+   * Close the data base, and the compiled statements of the SQL cache that keep it open
    */
   public void close() {
+    sqlCache.releaseStatements();
     mDatabaseOpenHelper.close();
   }
 
@@ -129,6 +278,257 @@ public abstract class BaseDBDAO<T extends BaseModel> {
     return query(getDefaultTableJoin(), null, null, columns, projectionMap);
   }
 
+  /**
+   * Returns all the objects of the table
+   *
+   * @param columns       The columns to include, if null then all are included
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names, see
+   *                      {@link #getAll(String[], java.util.Map)}
+   * @param rowMapper     Creates the objects from the rows
+   * @return A list with the objects, unmodifiable if the result cache is enabled
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  public <R> List<R> getAll(String[] columns, Map<String, String> projectionMap,
+      RowMapper<R> rowMapper) throws DBException {
+    return queryList(getDefaultTableJoin(), null, null, columns, projectionMap, null, rowMapper);
+  }
+
+  /**
+   * Returns all the objects of the table
+   *
+   * @param columns       The columns to include, if null then all are included
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names, see
+   *                      {@link #getAll(String[], java.util.Map)}
+   * @param rowMapper     Creates the objects from the rows
+   * @param mapperKey     Identifies how the rows are mapped on the result cache, see
+   *                      {@link #queryList(String, String, String[], String[], java.util.Map,
+   *                      String, RowMapper, String)}
+   * @return A list with the objects, unmodifiable if the result cache is enabled
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  public <R> List<R> getAll(String[] columns, Map<String, String> projectionMap,
+      RowMapper<R> rowMapper, String mapperKey) throws DBException {
+    return queryList(getDefaultTableJoin(), null, null, columns, projectionMap, null, rowMapper,
+                     mapperKey);
+  }
+
+  /**
+   * Performs a database query and creates an object for each row. If the result cache is
+   * enabled, see {@link #setResultCacheEnabled(boolean)}, the result is taken from the
+   * {@link QueryResultCache} when the same query with the same arguments and row mapper was
+   * executed before and none of its tables has been written since then. The cache is not used
+   * inside a {@link com.keysd.baseandroid.dao.db.helper.TransactionScope}, where the rows could
+   * be uncommitted
+   *
+   * @param tableName     Sets the list of tables to query, see
+   *                      {@link #query(String, String, String[], String[], java.util.Map)}
+   * @param selection     The selection clause
+   * @param selectionArgs Selection arguments for "?" components in the selection
+   * @param columns       The columns to return
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names
+   * @param sortOrder     How to order the rows, formatted as an SQL ORDER BY clause (excluding
+   *                      the ORDER BY itself)
+   * @param rowMapper     Creates the objects from the rows, its class identifies the mapping on
+   *                      the result cache, so all the instances of a mapper class must map the
+   *                      rows the same way
+   * @return A list with the objects, unmodifiable if the result cache is enabled
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  protected <R> List<R> queryList(String tableName, String selection, String[] selectionArgs,
+      String[] columns, Map<String, String> projectionMap, String sortOrder,
+      RowMapper<R> rowMapper) throws DBException {
+    return queryList(tableName, selection, selectionArgs, columns, projectionMap, sortOrder,
+                     rowMapper, rowMapper.getClass().getName());
+  }
+
+  /**
+   * Performs a database query and creates an object for each row, see
+   * {@link #queryList(String, String, String[], String[], java.util.Map, String, RowMapper)}
+   *
+   * @param tableName     Sets the list of tables to query
+   * @param selection     The selection clause
+   * @param selectionArgs Selection arguments for "?" components in the selection
+   * @param columns       The columns to return
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names
+   * @param sortOrder     How to order the rows, formatted as an SQL ORDER BY clause (excluding
+   *                      the ORDER BY itself)
+   * @param rowMapper     Creates the objects from the rows
+   * @param mapperKey     Identifies how the rows are mapped, results are only shared by queries
+   *                      with the same key, ej. the class of the controller that maps them
+   * @return A list with the objects, unmodifiable if the result cache is enabled
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  protected <R> List<R> queryList(String tableName, String selection, String[] selectionArgs,
+      String[] columns, Map<String, String> projectionMap, String sortOrder,
+      RowMapper<R> rowMapper, String mapperKey) throws DBException {
+    String sql = buildQuery(tableName, selection, columns, projectionMap, null, null, sortOrder,
+                            null);
+    QueryResultCache resultCache = QueryResultCache.getInstance();
+    //Inside a transaction scope the rows could be uncommitted, so they must not be shared, and
+    // the cached ones could miss the writes of the scope
+    boolean useCache = resultCacheEnabled && mDatabaseOpenHelper.getActiveScope() == null;
+    String key = null;
+    long stamp = 0;
+    if (useCache) {
+      key = mapperKey + '\u0001' + sql + '\u0001' +
+          Arrays.toString(selectionArgs);
+      List<R> cached = resultCache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+      stamp = resultCache.getStamp();
+    }
+
+    List<R> result = useCache ? new ArrayList<R>() : new LinkedList<R>();
+    Cursor cursor = null;
+    try {
+      cursor = rawQuery(sql, selectionArgs);
+      if (cursor != null) {
+        do {
+          result.add(rowMapper.mapRow(cursor));
+        } while (cursor.moveToNext());
+      }
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+
+    if (useCache) {
+      return resultCache.put(key, getReadTables(tableName), result, stamp);
+    }
+    return result;
+  }
+
+  /**
+   * Performs a database query and stores its rows by column on primitive arrays, see
+   * {@link ColumnarResult}. Use it for large results where a list of objects would take too
+   * much memory
+   *
+   * @param selection     The selection clause, null for all the rows
+   * @param selectionArgs Selection arguments for "?" components in the selection
+   * @param columns       The columns to return, they are read by position
+   * @param columnTypes   The type of each column, see {@link ColumnarResult#TYPE_INT},
+   *                      {@link ColumnarResult#TYPE_LONG}, {@link ColumnarResult#TYPE_DOUBLE} and
+   *                      {@link ColumnarResult#TYPE_TEXT}
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names
+   * @param sortOrder     How to order the rows, formatted as an SQL ORDER BY clause (excluding
+   *                      the ORDER BY itself)
+   * @return The result, empty if no rows were found
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  public ColumnarResult getColumnar(String selection, String[] selectionArgs, String[] columns,
+      int[] columnTypes, Map<String, String> projectionMap, String sortOrder)
+      throws DBException {
+    String sql = buildQuery(getDefaultTableJoin(), selection, columns, projectionMap, null, null,
+                            sortOrder, null);
+    Cursor cursor = null;
+    try {
+      cursor = rawQuery(sql, selectionArgs);
+      if (cursor == null) {
+        return new ColumnarResult(columns, columnTypes, 0);
+      }
+      //The whole result is sized once, so the arrays are never grown
+      ColumnarResult result = new ColumnarResult(columns, columnTypes, cursor.getCount());
+      result.fill(cursor);
+      return result;
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+
+  /**
+   * Scans the rows of a query without creating any object, the callback receives the cursor
+   * positioned on each row, so primitive columns could be read without allocations, ej. for
+   * aggregating or filtering the whole table. The cursor must not be moved or closed by the
+   * callback
+   *
+   * @param selection     The selection clause, null for all the rows
+   * @param selectionArgs Selection arguments for "?" components in the selection
+   * @param columns       The columns to return
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names
+   * @param sortOrder     How to order the rows, formatted as an SQL ORDER BY clause (excluding
+   *                      the ORDER BY itself)
+   * @param callback      Receives the cursor on each row, it could stop the scan
+   * @return The number of scanned rows
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  public int forEach(String selection, String[] selectionArgs, String[] columns,
+      Map<String, String> projectionMap, String sortOrder, RowCallback<Cursor> callback)
+      throws DBException {
+    String sql = buildQuery(getDefaultTableJoin(), selection, columns, projectionMap, null, null,
+                            sortOrder, null);
+    Cursor cursor = null;
+    int count = 0;
+    try {
+      cursor = rawQuery(sql, selectionArgs);
+      if (cursor != null) {
+        boolean next;
+        do {
+          count++;
+          next = callback.onRow(cursor);
+        } while (next && cursor.moveToNext());
+      }
+      return count;
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+
+  /**
+   * Performs a join query and maps its rows into parent objects with their children, see
+   * {@link OneToManyRelation}. The parents are created once even if the join returns them on
+   * several rows, so the related objects are read with a single query
+   *
+   * @param join          Tables of the query, ej. foo LEFT OUTER JOIN bar ON (foo._id =
+   *                      bar.foo_id)
+   * @param selection     The selection clause
+   * @param selectionArgs Selection arguments for "?" components in the selection
+   * @param columns       The columns to return, must include the parent and child id columns of
+   *                      the relation
+   * @param projectionMap The projection map maps from column names that the caller passes into
+   *                      query to database column names, used for disambiguating the columns of
+   *                      both tables
+   * @param sortOrder     How to order the rows, formatted as an SQL ORDER BY clause (excluding
+   *                      the ORDER BY itself)
+   * @param relation      Maps the rows into the parents and children
+   * @return The parents with their children, in the order they were found
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  public <P extends BaseModel, C extends BaseModel> List<P> queryRelation(String join,
+      String selection, String[] selectionArgs, String[] columns,
+      Map<String, String> projectionMap, String sortOrder, OneToManyRelation<P, C> relation)
+      throws DBException {
+    String sql = buildQuery(join, selection, columns, projectionMap, null, null, sortOrder, null);
+    Cursor cursor = null;
+    try {
+      cursor = rawQuery(sql, selectionArgs);
+      return relation.hydrate(cursor);
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+
   /**
    * Performs a database query.
    *
@@ -200,14 +600,12 @@ public abstract class BaseDBDAO<T extends BaseModel> {
 		 * mechanism by which the ContentProvider does not need to know the real
 		 * column base_dictionary
 		 */
-    SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-    builder.setTables(tableName);
-    builder.setProjectionMap(projectionMap);
+    String sql = buildQuery(tableName, selection, columns, projectionMap, groupBy, having,
+                            sortOrder, limit);
 
     SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
 
-    Cursor cursor = builder.query(db, columns, selection, selectionArgs, groupBy, having,
-                                  sortOrder, limit);
+    Cursor cursor = db.rawQuery(sql, selectionArgs);
 
     if (cursor == null) {
       db.close();
@@ -222,6 +620,54 @@ public abstract class BaseDBDAO<T extends BaseModel> {
     return cursor;
   }
 
+  /**
+   * Builds the SQL of a query, the SQL is cached by all its inputs so identical queries only
+   * bind their arguments
+   *
+   * @see #query(String, String, String[], String[], java.util.Map, String, String, String, String)
+   */
+  @SuppressWarnings("deprecation")
+  protected String buildQuery(String tableName, String selection, String[] columns,
+      Map<String, String> projectionMap, String groupBy, String having, String sortOrder,
+      String limit) {
+    SqlCache.QueryKey key = new SqlCache.QueryKey(tableName, columns, projectionMap, selection,
+                                                  groupBy, having, sortOrder, limit);
+    String sql = sqlCache.getSql(key);
+    if (sql == null) {
+      SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+      builder.setTables(tableName);
+      builder.setProjectionMap(projectionMap);
+      //The selection args are not used by the builder, the overload without them needs API 11
+      sql = builder.buildQuery(columns, selection, null, groupBy, having, sortOrder, limit);
+      sqlCache.putSql(key, sql);
+    }
+    return sql;
+  }
+
+  /**
+   * Executes a query that returns a single number, ej. a count, with a compiled statement that
+   * is reused until the DAO is closed, see {@link SqlCache}
+   *
+   * @param sql           Query SQL
+   * @param selectionArgs Selection arguments for "?" components in the query
+   * @return The value of the first column of the first row
+   * @throws DBException if something goes wrong during SQL statements execution or the query
+   *                     returns zero rows
+   */
+  protected long simpleQueryForLong(String sql, String[] selectionArgs) throws DBException {
+    SQLiteDatabase db = null;
+    try {
+      db = mDatabaseOpenHelper.getReadableDatabase();
+      return sqlCache.simpleQueryForLong(db, sql, selectionArgs);
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (db != null) {
+        db.close();
+      }
+    }
+  }
+
   /**
    * Executes a raw query and stores the results in a cursor, managing its proper closing.
    *
@@ -275,6 +721,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
       if (db != null) {
         db.close();
       }
+      notifyTableChanged();
     }
   }
 
@@ -294,6 +741,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
     insert(insertObjects, db);
     db.close();
     db.releaseReference();
+    notifyTableChanged();
   }
 
   /**
@@ -302,7 +750,8 @@ public abstract class BaseDBDAO<T extends BaseModel> {
    * insert one, this method should only be used when the
 	 * {@link android.database.sqlite.SQLiteDatabase} object is
    * managed outside the insert method, in other case use
-	 * {@link #insert(com.keysd.baseandroid.model.db.BaseModel)}
+	 * {@link #insert(com.keysd.baseandroid.model.db.BaseModel)}. The caller must call
+   * {@link #notifyTableChanged()} once its transaction is finished
    *
    * @param insertObjects List of objects to insert
    * @param db            SQLite data base object to be used
@@ -310,7 +759,9 @@ public abstract class BaseDBDAO<T extends BaseModel> {
    * statements execution
    */
   public void insert(List<T> insertObjects, SQLiteDatabase db) throws DBException {
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+    if (binder != null) {
+      insertBound(insertObjects, db);
+    } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
       insertV16(insertObjects, db);
     } else {
       insertV8(insertObjects, db);
@@ -318,6 +769,85 @@ public abstract class BaseDBDAO<T extends BaseModel> {
   }
 
 
+  /**
+   * Insert the objects of an iterator to the data base in batches and inside a single
+   * transaction, only one batch is kept in memory at a time. Use it for large data sets that are
+   * parsed while they are inserted, ej. a
+   * {@link com.keysd.baseandroid.model.ws.JsonArrayIterator} over a web service response
+   *
+   * @param insertObjects Iterator over the objects to insert
+   * @param batchSize     Number of objects inserted on each batch
+   * @return The number of inserted objects
+   * @throws com.keysd.baseandroid.dao.db.DBException if something goes wrong during SQL
+   * statements execution, no object is inserted in that case
+   */
+  public int insert(Iterator<T> insertObjects, int batchSize) throws DBException {
+    SQLiteDatabase db = mDatabaseOpenHelper.getWritableDatabase();
+    List<T> batch = new ArrayList<T>(batchSize);
+    int count = 0;
+    db.beginTransaction();
+    try {
+      while (insertObjects.hasNext()) {
+        batch.add(insertObjects.next());
+        if (batch.size() >= batchSize) {
+          insert(batch, db);
+          count += batch.size();
+          batch.clear();
+        }
+      }
+      if (!batch.isEmpty()) {
+        insert(batch, db);
+        count += batch.size();
+      }
+      db.setTransactionSuccessful();
+      return count;
+    } finally {
+      db.endTransaction();
+      db.close();
+      notifyTableChanged();
+    }
+  }
+
+  /**
+   * Insert a list of object to the data base with the model binder, the insert is compiled once
+   * and each object is bound by index, so no ContentValues or SQL is created per object. The
+   * inserts are done inside a transaction unless the caller already started one
+   *
+   * @param insertObjects List of objects to insert
+   * @param db            SQLite data base object to be used
+   * @throws com.keysd.baseandroid.dao.db.DBException if something goes wrong during SQL
+   * statements execution
+   */
+  private void insertBound(List<T> insertObjects, SQLiteDatabase db) throws DBException {
+    if (insertObjects == null || insertObjects.isEmpty()) {
+      return;
+    }
+    boolean ownTransaction = !db.inTransaction();
+    SQLiteStatement statement = null;
+    if (ownTransaction) {
+      db.beginTransaction();
+    }
+    try {
+      statement = db.compileStatement(binder.getInsertSql());
+      for (T insertObject : insertObjects) {
+        binder.bindInsert(statement, insertObject);
+        statement.executeInsert();
+      }
+      if (ownTransaction) {
+        db.setTransactionSuccessful();
+      }
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    } finally {
+      if (statement != null) {
+        statement.close();
+      }
+      if (ownTransaction) {
+        db.endTransaction();
+      }
+    }
+  }
+
   /**
    * Insert a list of object to the data base, this method should be used prior API 16, due to
 	 * SQLite version
@@ -509,6 +1039,72 @@ public abstract class BaseDBDAO<T extends BaseModel> {
       if (db != null) {
         db.close();
       }
+      notifyTableChanged();
+    }
+  }
+
+  /**
+   * Updates the row identified by a key column with the values of the object, or inserts it if
+   * there is no such row, ej. for applying the changes received from the server, where the key is
+   * the server id. This method should only be used when the
+   * {@link android.database.sqlite.SQLiteDatabase} object is managed outside, ej. inside a
+   * transaction, the listeners are not notified, so the caller should call
+   * {@link #notifyTableChanged()} once the transaction ends
+   *
+   * @param upsertObject Object to be get the values to update or insert
+   * @param keyColumn    Column that identifies the row, its value is taken from
+   *                     {@link #fillMapValues(com.keysd.baseandroid.model.db.BaseModel)}
+   * @param db           SQLite data base object to be used
+   * @return True if the object was inserted, false if it was updated
+   * @throws DBException if the object has no value for the key column or something goes wrong
+   *                     during SQL statements execution
+   */
+  public boolean upsert(T upsertObject, String keyColumn, SQLiteDatabase db) throws DBException {
+    try {
+      ContentValues values = fillMapValues(upsertObject);
+      String key = values.getAsString(keyColumn);
+      if (key == null) {
+        throw new DBException("Missing " + keyColumn + " value for the upsert into " + tableName);
+      }
+      if (db.update(tableName, values, keyColumn + " = ?", new String[]{key}) > 0) {
+        return false;
+      }
+      db.insertOrThrow(tableName, null, values);
+      return true;
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Delete the rows whose key column has one of the selected values, the values are deleted in
+   * batches of the maximum number of SQL parameters. This method should only be used when the
+   * {@link android.database.sqlite.SQLiteDatabase} object is managed outside, ej. inside a
+   * transaction, the listeners are not notified, so the caller should call
+   * {@link #notifyTableChanged()} once the transaction ends
+   *
+   * @param keyColumn Column that identifies the rows
+   * @param keys      Values of the rows to delete
+   * @param db        SQLite data base object to be used
+   * @return the number of rows affected
+   * @throws DBException if something goes wrong during SQL statements execution
+   */
+  public int delete(String keyColumn, List<String> keys, SQLiteDatabase db) throws DBException {
+    try {
+      int deleted = 0;
+      for (int start = 0; start < keys.size(); start += MAX_QUERY_PARAMS) {
+        List<String> batch = keys.subList(start, Math.min(start + MAX_QUERY_PARAMS, keys.size()));
+        StringBuilder selection = new StringBuilder(keyColumn).append(" IN (");
+        for (int i = 0; i < batch.size(); i++) {
+          selection.append(i > 0 ? ",?" : "?");
+        }
+        selection.append(')');
+        deleted += db.delete(tableName, selection.toString(),
+                             batch.toArray(new String[batch.size()]));
+      }
+      return deleted;
+    } catch (SQLException e) {
+      throw new DBException(e.getMessage(), e);
     }
   }
 
@@ -538,6 +1134,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
       if (db != null) {
         db.close();
       }
+      notifyTableChanged();
     }
   }
 
@@ -570,6 +1167,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
       if (db != null) {
         db.close();
       }
+      notifyTableChanged();
     }
   }
 
@@ -595,6 +1193,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
       if (db != null) {
         db.close();
       }
+      notifyTableChanged();
     }
   }
 
@@ -623,6 +1222,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
       if (db != null) {
         db.close();
       }
+      notifyTableChanged();
     }
   }
 
@@ -715,18 +1315,7 @@ public abstract class BaseDBDAO<T extends BaseModel> {
    * @throws DBException if something goes wrong during SQL statements execution
    */
   public Integer getCount() throws DBException {
-    try {
-      SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
-      if (db == null) {
-        return 0;
-      }
-      final String SQL_COUNT = "select count(*) from " + tableName;
-      Cursor res = db.rawQuery(SQL_COUNT, null);
-      res.moveToFirst();
-      db.close();
-      return res.getInt(0);
-    } catch (SQLException e) {
-      throw new DBException(e.getMessage(), e);
-    }
+    final String SQL_COUNT = "select count(*) from " + tableName;
+    return (int) simpleQueryForLong(SQL_COUNT, null);
   }
 }
@@ -0,0 +1,563 @@
+/**
+ * File: ColumnarResult
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Query result stored by columns on primitive arrays
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+import android.database.Cursor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query result stored by columns instead of by objects, for large results, ej. analytics
+ * screens, where a list of models would spend most of its memory on object headers and boxed
+ * fields. Each numeric column is a primitive array and each text column is a dictionary: an int
+ * code per row plus each distinct text stored once, so the memory per row is close to the size
+ * of the raw values.
+ * <p/>
+ * Rows are accessed by their position on the current view. {@link #sort(int, boolean)} and the
+ * filter methods reorder or reduce the view through an array of row indexes, without moving or
+ * boxing the column values, and could be combined, ej. filter and then sort the remaining rows;
+ * {@link #reset()} restores all the rows in query order. Instances are created by
+ * {@link BaseDBDAO#getColumnar(String, String[], String[], int[], java.util.Map, String)} and
+ * they are not thread safe
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class ColumnarResult {
+
+  /**
+   * Integer column stored on an int array
+   */
+  public static final int TYPE_INT = 1;
+
+  /**
+   * Integer column stored on a long array
+   */
+  public static final int TYPE_LONG = 2;
+
+  /**
+   * Real column stored on a double array
+   */
+  public static final int TYPE_DOUBLE = 3;
+
+  /**
+   * Text column stored as a dictionary of its distinct values
+   */
+  public static final int TYPE_TEXT = 4;
+
+  /**
+   * Code of a null text
+   */
+  private static final int NULL_CODE = -1;
+
+  /**
+   * Ranges shorter than this are sorted by insertion
+   */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private final String[] columns;
+  private final int[] types;
+  private final int capacity;
+  private final int[][] intValues;
+  private final long[][] longValues;
+  private final double[][] doubleValues;
+  private final String[][] dictionaries;
+  private final BitSet[] nulls;
+  private int rowCount;
+  /**
+   * Rows of the current view, null while the view contains all the rows in query order
+   */
+  private int[] rows;
+  private int viewSize;
+
+  /**
+   * Constructor
+   *
+   * @param columns
+   * 	Column names
+   * @param types
+   * 	Type of each column, one of {@link #TYPE_INT}, {@link #TYPE_LONG}, {@link #TYPE_DOUBLE} or
+   * 	{@link #TYPE_TEXT}
+   * @param capacity
+   * 	Maximum number of rows
+   */
+  ColumnarResult(String[] columns, int[] types, int capacity) {
+    if (columns == null || types == null || columns.length != types.length) {
+      throw new IllegalArgumentException("A type is needed for each column");
+    }
+    this.columns = columns.clone();
+    this.types = types.clone();
+    this.capacity = capacity;
+    intValues = new int[columns.length][];
+    longValues = new long[columns.length][];
+    doubleValues = new double[columns.length][];
+    dictionaries = new String[columns.length][];
+    nulls = new BitSet[columns.length];
+    for (int i = 0; i < types.length; i++) {
+      switch (types[i]) {
+        case TYPE_INT:
+          intValues[i] = new int[capacity];
+          break;
+        case TYPE_LONG:
+          longValues[i] = new long[capacity];
+          break;
+        case TYPE_DOUBLE:
+          doubleValues[i] = new double[capacity];
+          break;
+        case TYPE_TEXT:
+          intValues[i] = new int[capacity];
+          dictionaries[i] = new String[0];
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown type for column " + columns[i]);
+      }
+    }
+  }
+
+  /**
+   * Reads the rows of a cursor, the columns are read by position, so the cursor must contain the
+   * columns of this result in the same order
+   *
+   * @param cursor
+   * 	Cursor positioned on its first row
+   */
+  void fill(Cursor cursor) {
+    List<Map<String, Integer>> codes = new ArrayList<Map<String, Integer>>(columns.length);
+    for (int i = 0; i < types.length; i++) {
+      codes.add(types[i] == TYPE_TEXT ? new HashMap<String, Integer>() : null);
+    }
+
+    int row = 0;
+    do {
+      for (int i = 0; i < columns.length; i++) {
+        if (cursor.isNull(i)) {
+          if (nulls[i] == null) {
+            nulls[i] = new BitSet(capacity);
+          }
+          nulls[i].set(row);
+          if (types[i] == TYPE_TEXT) {
+            intValues[i][row] = NULL_CODE;
+          }
+          continue;
+        }
+        switch (types[i]) {
+          case TYPE_INT:
+            intValues[i][row] = cursor.getInt(i);
+            break;
+          case TYPE_LONG:
+            longValues[i][row] = cursor.getLong(i);
+            break;
+          case TYPE_DOUBLE:
+            doubleValues[i][row] = cursor.getDouble(i);
+            break;
+          default:
+            intValues[i][row] = getCode(codes.get(i), cursor.getString(i));
+            break;
+        }
+      }
+      row++;
+    } while (row < capacity && cursor.moveToNext());
+    rowCount = row;
+    viewSize = row;
+
+    for (int i = 0; i < columns.length; i++) {
+      Map<String, Integer> columnCodes = codes.get(i);
+      if (columnCodes != null) {
+        String[] dictionary = new String[columnCodes.size()];
+        for (Map.Entry<String, Integer> entry : columnCodes.entrySet()) {
+          dictionary[entry.getValue()] = entry.getKey();
+        }
+        dictionaries[i] = dictionary;
+      }
+    }
+  }
+
+  /**
+   * @return The number of rows on the current view
+   */
+  public int getRowCount() {
+    return viewSize;
+  }
+
+  /**
+   * @return The number of rows returned by the query
+   */
+  public int getTotalRowCount() {
+    return rowCount;
+  }
+
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  public String getColumnName(int column) {
+    return columns[column];
+  }
+
+  /**
+   * Gets the index of a column
+   *
+   * @param columnName
+   * 	Column name
+   * @return The column index, or -1 if the column does not exist
+   */
+  public int getColumnIndex(String columnName) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].equals(columnName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The column type, one of {@link #TYPE_INT}, {@link #TYPE_LONG}, {@link #TYPE_DOUBLE}
+   * or {@link #TYPE_TEXT}
+   */
+  public int getType(int column) {
+    return types[column];
+  }
+
+  /**
+   * Gets the number of distinct values of a text column
+   *
+   * @param column
+   * 	Text column index
+   * @return The number of distinct values, excluding null
+   */
+  public int getDistinctCount(int column) {
+    checkText(column);
+    return dictionaries[column].length;
+  }
+
+  public boolean isNull(int position, int column) {
+    return nulls[column] != null && nulls[column].get(getRow(position));
+  }
+
+  /**
+   * Gets the value of a numeric column as an int, null values are returned as 0
+   *
+   * @param position
+   * 	Row position on the current view
+   * @param column
+   * 	Column index
+   * @return The value
+   */
+  public int getInt(int position, int column) {
+    return types[column] == TYPE_INT ? intValues[column][getRow(position)] :
+        (int) getLong(position, column);
+  }
+
+  /**
+   * Gets the value of a numeric column as a long, null values are returned as 0
+   *
+   * @param position
+   * 	Row position on the current view
+   * @param column
+   * 	Column index
+   * @return The value
+   */
+  public long getLong(int position, int column) {
+    int row = getRow(position);
+    switch (types[column]) {
+      case TYPE_INT:
+        return intValues[column][row];
+      case TYPE_LONG:
+        return longValues[column][row];
+      case TYPE_DOUBLE:
+        return (long) doubleValues[column][row];
+      default:
+        throw new IllegalArgumentException("Column " + columns[column] + " is not numeric");
+    }
+  }
+
+  /**
+   * Gets the value of a numeric column as a double, null values are returned as 0
+   *
+   * @param position
+   * 	Row position on the current view
+   * @param column
+   * 	Column index
+   * @return The value
+   */
+  public double getDouble(int position, int column) {
+    return types[column] == TYPE_DOUBLE ? doubleValues[column][getRow(position)] :
+        getLong(position, column);
+  }
+
+  /**
+   * Gets the value of a column as text, numeric values are converted
+   *
+   * @param position
+   * 	Row position on the current view
+   * @param column
+   * 	Column index
+   * @return The value or null
+   */
+  public String getString(int position, int column) {
+    int row = getRow(position);
+    if (nulls[column] != null && nulls[column].get(row)) {
+      return null;
+    }
+    switch (types[column]) {
+      case TYPE_INT:
+        return String.valueOf(intValues[column][row]);
+      case TYPE_LONG:
+        return String.valueOf(longValues[column][row]);
+      case TYPE_DOUBLE:
+        return String.valueOf(doubleValues[column][row]);
+      default:
+        return dictionaries[column][intValues[column][row]];
+    }
+  }
+
+  /**
+   * Sorts the rows of the current view by a column, nulls are considered smaller than any value.
+   * The sort is stable, so sorting by a second column and then by the first one orders by both
+   *
+   * @param column
+   * 	Column index
+   * @param ascending
+   * 	True for ascending order
+   */
+  public void sort(int column, boolean ascending) {
+    int[] view = getView();
+    int[] ranks = types[column] == TYPE_TEXT ? getRanks(column) : null;
+    mergeSort(view, new int[viewSize], 0, viewSize, column, ranks, ascending ? 1 : -1);
+  }
+
+  /**
+   * Keeps on the current view only the rows whose value is inside a range, nulls are removed
+   *
+   * @param column
+   * 	Integer column index
+   * @param min
+   * 	Minimum value, inclusive
+   * @param max
+   * 	Maximum value, inclusive
+   * @return The number of rows on the view
+   */
+  public int filterRange(int column, long min, long max) {
+    if (types[column] != TYPE_INT && types[column] != TYPE_LONG) {
+      return filterRange(column, (double) min, (double) max);
+    }
+    int[] view = getView();
+    int size = 0;
+    for (int i = 0; i < viewSize; i++) {
+      int row = view[i];
+      long value = types[column] == TYPE_INT ? intValues[column][row] : longValues[column][row];
+      if (value >= min && value <= max && !isNullRow(row, column)) {
+        view[size++] = row;
+      }
+    }
+    viewSize = size;
+    return size;
+  }
+
+  /**
+   * Keeps on the current view only the rows whose value is inside a range, nulls are removed
+   *
+   * @param column
+   * 	Numeric column index
+   * @param min
+   * 	Minimum value, inclusive
+   * @param max
+   * 	Maximum value, inclusive
+   * @return The number of rows on the view
+   */
+  public int filterRange(int column, double min, double max) {
+    int[] view = getView();
+    int size = 0;
+    for (int i = 0; i < viewSize; i++) {
+      int row = view[i];
+      double value = getNumber(row, column);
+      if (value >= min && value <= max && !isNullRow(row, column)) {
+        view[size++] = row;
+      }
+    }
+    viewSize = size;
+    return size;
+  }
+
+  /**
+   * Keeps on the current view only the rows with a text value, the text is searched once on the
+   * column dictionary and then the rows are compared by their codes
+   *
+   * @param column
+   * 	Text column index
+   * @param value
+   * 	Value to keep, null for keeping the null rows
+   * @return The number of rows on the view
+   */
+  public int filterEquals(int column, String value) {
+    checkText(column);
+    int code = NULL_CODE;
+    if (value != null) {
+      code = Arrays.asList(dictionaries[column]).indexOf(value);
+      if (code == NULL_CODE) {
+        viewSize = 0;
+        return 0;
+      }
+    }
+    int[] view = getView();
+    int[] codes = intValues[column];
+    int size = 0;
+    for (int i = 0; i < viewSize; i++) {
+      if (codes[view[i]] == code) {
+        view[size++] = view[i];
+      }
+    }
+    viewSize = size;
+    return size;
+  }
+
+  /**
+   * Restores all the rows in query order
+   */
+  public void reset() {
+    rows = null;
+    viewSize = rowCount;
+  }
+
+  private int getRow(int position) {
+    if (position < 0 || position >= viewSize) {
+      throw new IndexOutOfBoundsException("Position " + position + ", rows " + viewSize);
+    }
+    return rows == null ? position : rows[position];
+  }
+
+  /**
+   * @return The rows of the current view, created on the first sort or filter
+   */
+  private int[] getView() {
+    if (rows == null) {
+      rows = new int[rowCount];
+      for (int i = 0; i < rowCount; i++) {
+        rows[i] = i;
+      }
+    }
+    return rows;
+  }
+
+  private boolean isNullRow(int row, int column) {
+    return nulls[column] != null && nulls[column].get(row);
+  }
+
+  private double getNumber(int row, int column) {
+    switch (types[column]) {
+      case TYPE_INT:
+        return intValues[column][row];
+      case TYPE_LONG:
+        return longValues[column][row];
+      case TYPE_DOUBLE:
+        return doubleValues[column][row];
+      default:
+        throw new IllegalArgumentException("Column " + columns[column] + " is not numeric");
+    }
+  }
+
+  /**
+   * Gets the position of each dictionary value on alphabetical order, so the text rows could be
+   * sorted comparing ints
+   */
+  private int[] getRanks(int column) {
+    String[] dictionary = dictionaries[column];
+    String[] sorted = dictionary.clone();
+    Arrays.sort(sorted);
+    int[] ranks = new int[dictionary.length];
+    for (int i = 0; i < dictionary.length; i++) {
+      ranks[i] = Arrays.binarySearch(sorted, dictionary[i]);
+    }
+    return ranks;
+  }
+
+  private int compare(int rowA, int rowB, int column, int[] ranks) {
+    boolean nullA = isNullRow(rowA, column);
+    boolean nullB = isNullRow(rowB, column);
+    if (nullA || nullB) {
+      return nullA == nullB ? 0 : (nullA ? -1 : 1);
+    }
+    switch (types[column]) {
+      case TYPE_INT: {
+        int a = intValues[column][rowA];
+        int b = intValues[column][rowB];
+        return a < b ? -1 : (a == b ? 0 : 1);
+      }
+      case TYPE_LONG: {
+        long a = longValues[column][rowA];
+        long b = longValues[column][rowB];
+        return a < b ? -1 : (a == b ? 0 : 1);
+      }
+      case TYPE_DOUBLE:
+        return Double.compare(doubleValues[column][rowA], doubleValues[column][rowB]);
+      default: {
+        int a = ranks[intValues[column][rowA]];
+        int b = ranks[intValues[column][rowB]];
+        return a < b ? -1 : (a == b ? 0 : 1);
+      }
+    }
+  }
+
+  /**
+   * Stable sort of the rows between from (inclusive) and to (exclusive)
+   */
+  private void mergeSort(int[] view, int[] buffer, int from, int to, int column, int[] ranks,
+      int direction) {
+    if (to - from < INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; i++) {
+        int row = view[i];
+        int j = i - 1;
+        while (j >= from && compare(view[j], row, column, ranks) * direction > 0) {
+          view[j + 1] = view[j];
+          j--;
+        }
+        view[j + 1] = row;
+      }
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    mergeSort(view, buffer, from, middle, column, ranks, direction);
+    mergeSort(view, buffer, middle, to, column, ranks, direction);
+    if (compare(view[middle - 1], view[middle], column, ranks) * direction <= 0) {
+      //Already in order
+      return;
+    }
+    System.arraycopy(view, from, buffer, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < middle &&
+          compare(buffer[left], buffer[right], column, ranks) * direction <= 0)) {
+        view[i] = buffer[left++];
+      } else {
+        view[i] = buffer[right++];
+      }
+    }
+  }
+
+  private void checkText(int column) {
+    if (types[column] != TYPE_TEXT) {
+      throw new IllegalArgumentException("Column " + columns[column] + " is not text");
+    }
+  }
+
+  private static int getCode(Map<String, Integer> codes, String value) {
+    Integer code = codes.get(value);
+    if (code == null) {
+      code = codes.size();
+      codes.put(value, code);
+    }
+    return code;
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * File: ModelBinder
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Binds the fields of a model to the columns of its table
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+import com.keysd.baseandroid.model.db.BaseModel;
+
+/**
+ * Binds the fields of a model to the columns of its table without reflection or intermediate
+ * maps. The implementations are generated at compile time for the models annotated with
+ * {@link com.keysd.baseandroid.annotation.Table}, ej. State_Binder for State, and are passed to
+ * the DAO constructor, see
+ * {@link BaseDBDAO#BaseDBDAO(String, com.keysd.baseandroid.dao.db.helper.BaseDatabaseOpenHelper,
+ * ModelBinder)}
+ *
+ * @param <T>
+ * 	Model class
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public interface ModelBinder<T extends BaseModel> {
+
+  /**
+   * @return The table name
+   */
+  public String getTableName();
+
+  /**
+   * @return The id column followed by the columns of the model fields, in the order used by
+   * {@link #getColumnIndexes(android.database.Cursor)}
+   */
+  public String[] getColumns();
+
+  /**
+   * @return The insert SQL with a parameter for each column except the id, in the order used by
+   * {@link #bindInsert(android.database.sqlite.SQLiteStatement, BaseModel)}
+   */
+  public String getInsertSql();
+
+  /**
+   * Binds the fields of an object to a statement compiled from {@link #getInsertSql()}, the
+   * previous bindings are replaced
+   *
+   * @param statement
+   * 	Compiled insert statement
+   * @param object
+   * 	Object to insert
+   */
+  public void bindInsert(SQLiteStatement statement, T object);
+
+  /**
+   * Fill up a map with the values to be inserted or updated into the data base
+   *
+   * @param object
+   * 	Object to be get the table values
+   * @return A ContentValues object with all the columns except the id
+   */
+  public ContentValues toContentValues(T object);
+
+  /**
+   * Resolves the indexes of the columns on a cursor, it should be called once per cursor
+   *
+   * @param cursor
+   * 	Cursor to read
+   * @return The index of each column of {@link #getColumns()}, -1 if the cursor does not
+   * contain it
+   */
+  public int[] getColumnIndexes(Cursor cursor);
+
+  /**
+   * Creates an object from the current row of a cursor, the columns not included on the cursor
+   * keep the model default values
+   *
+   * @param cursor
+   * 	Cursor positioned on the row to read
+   * @param indexes
+   * 	Indexes obtained from {@link #getColumnIndexes(android.database.Cursor)} for the same cursor
+   * @return The object
+   */
+  public T fromCursor(Cursor cursor, int[] indexes);
+
+  /**
+   * Reads the current row of a cursor into an existing object, so a single object could be
+   * re-pointed to each row of a scan. The columns not included on the cursor are not modified
+   *
+   * @param object
+   * 	Object to fill up
+   * @param cursor
+   * 	Cursor positioned on the row to read
+   * @param indexes
+   * 	Indexes obtained from {@link #getColumnIndexes(android.database.Cursor)} for the same cursor
+   */
+  public void readInto(T object, Cursor cursor, int[] indexes);
+}
@@ -0,0 +1,125 @@
+/**
+ * File: OneToManyRelation
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Maps the rows of a join query into parent objects with their children
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+import android.database.Cursor;
+import com.keysd.baseandroid.model.db.BaseModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the rows of a join query between a parent table and a child table into the parent
+ * objects with their children, so the related objects are read with a single query instead of
+ * one query per parent.
+ * <p/>
+ * The cursor is read in a single pass: each parent is created only the first time its id is
+ * found, parents are returned in the order they appear, and each child is added once to its
+ * parent even if the join repeats it. Rows without a child, ej. on a LEFT JOIN, only create the
+ * parent
+ *
+ * @param <P>
+ * 	Parent model
+ * @param <C>
+ * 	Child model
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class OneToManyRelation<P extends BaseModel, C extends BaseModel> {
+
+  private final String parentIdColumn;
+  private final RowMapper<P> parentMapper;
+  private final String childIdColumn;
+  private final RowMapper<C> childMapper;
+  private final ChildCollector<P, C> childCollector;
+
+  /**
+   * Constructor
+   *
+   * @param parentIdColumn
+   * 	Column of the query with the parent id, ej. an alias of parent._id
+   * @param parentMapper
+   * 	Creates the parents from the rows
+   * @param childIdColumn
+   * 	Column of the query with the child id, rows where it is null have no child
+   * @param childMapper
+   * 	Creates the children from the rows
+   * @param childCollector
+   * 	Adds the children to their parents
+   */
+  public OneToManyRelation(String parentIdColumn, RowMapper<P> parentMapper, String childIdColumn,
+      RowMapper<C> childMapper, ChildCollector<P, C> childCollector) {
+    this.parentIdColumn = parentIdColumn;
+    this.parentMapper = parentMapper;
+    this.childIdColumn = childIdColumn;
+    this.childMapper = childMapper;
+    this.childCollector = childCollector;
+  }
+
+  /**
+   * Reads all the rows of the cursor, from its current position
+   *
+   * @param cursor
+   * 	Cursor positioned on the first row, could be null
+   * @return The parents with their children
+   *
+   * @throws DBException
+   * 	if the rows could not be read
+   */
+  public List<P> hydrate(Cursor cursor) throws DBException {
+    if (cursor == null || cursor.isAfterLast()) {
+      return new ArrayList<P>();
+    }
+    int parentIdIndex = cursor.getColumnIndexOrThrow(parentIdColumn);
+    int childIdIndex = cursor.getColumnIndexOrThrow(childIdColumn);
+    Map<Integer, P> parents = new LinkedHashMap<Integer, P>();
+    Set<Long> children = new HashSet<Long>();
+    do {
+      int parentId = cursor.getInt(parentIdIndex);
+      P parent = parents.get(parentId);
+      if (parent == null) {
+        parent = parentMapper.mapRow(cursor);
+        parents.put(parentId, parent);
+      }
+      if (!cursor.isNull(childIdIndex)) {
+        //Parent and child ids in a single key
+        long key = ((long) parentId << 32) | (cursor.getInt(childIdIndex) & 0xFFFFFFFFL);
+        if (children.add(key)) {
+          childCollector.addChild(parent, childMapper.mapRow(cursor));
+        }
+      }
+    } while (cursor.moveToNext());
+    return new ArrayList<P>(parents.values());
+  }
+
+  /**
+   * Adds a child to its parent, ej. to its list of children
+   *
+   * @param <P>
+   * 	Parent model
+   * @param <C>
+   * 	Child model
+   */
+  public interface ChildCollector<P extends BaseModel, C extends BaseModel> {
+
+    /**
+     * Adds a child to its parent
+     *
+     * @param parent
+     * 	Parent object
+     * @param child
+     * 	Child object
+     */
+    public void addChild(P parent, C child);
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * File: QueryResultCache
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Process wide cache of query results invalidated by the writes to the tables they read
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process wide cache of query results, keyed by the query SQL and its arguments. Each result
+ * records the tables read by its query and is discarded as soon as any of them is written
+ * through a {@link BaseDBDAO}, see {@link #invalidate(String)}. The DAOs create their own
+ * instances, so the cache is shared by all of them.
+ * <p/>
+ * A query that was running while one of its tables was written could have read the old rows, so
+ * results are stored with the stamp taken before the query, see {@link #getStamp()}, and results
+ * older than a write to their tables are rejected.
+ * <p/>
+ * Results are unmodifiable lists shared by all the callers, but their objects are not copied, so
+ * they must not be modified; {@link com.keysd.baseandroid.controller.BaseDBController} returns
+ * copies for {@link com.keysd.baseandroid.model.db.Copyable} models. The cache is bounded by an
+ * estimation of the memory used by the cached rows, the least recently used results are
+ * discarded first
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class QueryResultCache {
+
+  /**
+   * Estimated memory used by each cached row, in bytes
+   */
+  private static final int ESTIMATED_ROW_SIZE = 256;
+
+  private static QueryResultCache instance;
+
+  private final int maxRows;
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final Map<String, Set<String>> keysByTable = new HashMap<String, Set<String>>();
+  private final Map<String, Long> tableWrites = new HashMap<String, Long>();
+  private long writeCounter;
+  private int rows;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructor
+   *
+   * @param maxRows
+   * 	Maximum number of rows kept on all the cached results
+   */
+  public QueryResultCache(int maxRows) {
+    this.maxRows = maxRows;
+  }
+
+  /**
+   * @return The shared cache, using 1/32 of the available memory
+   */
+  public static synchronized QueryResultCache getInstance() {
+    if (instance == null) {
+      long maxRows = Runtime.getRuntime().maxMemory() / 32 / ESTIMATED_ROW_SIZE;
+      instance = new QueryResultCache((int) Math.min(maxRows, Integer.MAX_VALUE));
+    }
+    return instance;
+  }
+
+  /**
+   * Gets the stamp that must be taken before executing a query whose result will be cached
+   *
+   * @return The current stamp
+   */
+  public synchronized long getStamp() {
+    return writeCounter;
+  }
+
+  /**
+   * Gets a cached result
+   *
+   * @param key
+   * 	Query SQL and arguments
+   * @return The unmodifiable result or null if it is not cached
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized <R> List<R> get(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return (List<R>) entry.result;
+  }
+
+  /**
+   * Saves a result, unless one of its tables was written after the stamp
+   *
+   * @param key
+   * 	Query SQL and arguments
+   * @param tables
+   * 	Tables read by the query
+   * @param result
+   * 	Query result
+   * @param stamp
+   * 	Stamp taken before executing the query
+   * @return The unmodifiable result that should be returned to the caller
+   */
+  public synchronized <R> List<R> put(String key, String[] tables, List<R> result, long stamp) {
+    List<R> unmodifiable = Collections.unmodifiableList(result);
+    if (result.size() > maxRows) {
+      return unmodifiable;
+    }
+    Set<String> tableSet = new HashSet<String>();
+    for (String table : tables) {
+      String normalized = normalize(table);
+      Long lastWrite = tableWrites.get(normalized);
+      if (lastWrite != null && lastWrite > stamp) {
+        return unmodifiable;
+      }
+      tableSet.add(normalized);
+    }
+    remove(key);
+    entries.put(key, new Entry(tableSet, unmodifiable));
+    rows += result.size();
+    for (String table : tableSet) {
+      Set<String> keys = keysByTable.get(table);
+      if (keys == null) {
+        keys = new HashSet<String>();
+        keysByTable.put(table, keys);
+      }
+      keys.add(key);
+    }
+    trim();
+    return unmodifiable;
+  }
+
+  /**
+   * Discards all the results that read a table, it must be called after every write to the
+   * table is committed
+   *
+   * @param table
+   * 	Written table
+   */
+  public synchronized void invalidate(String table) {
+    String normalized = normalize(table);
+    tableWrites.put(normalized, ++writeCounter);
+    Set<String> keys = keysByTable.remove(normalized);
+    if (keys != null) {
+      for (String key : keys) {
+        remove(key);
+      }
+    }
+  }
+
+  /**
+   * Discards all the results
+   */
+  public synchronized void clear() {
+    entries.clear();
+    keysByTable.clear();
+    rows = 0;
+  }
+
+  /**
+   * @return The fraction of queries answered by the cache, between 0 and 1
+   */
+  public synchronized float getHitRate() {
+    long total = hits + misses;
+    return total == 0 ? 0 : (float) hits / total;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "QueryResultCache{" +
+        "results=" + entries.size() +
+        ", rows=" + rows +
+        ", maxRows=" + maxRows +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        ", hitRate=" + getHitRate() +
+        '}';
+  }
+
+  private void remove(String key) {
+    Entry entry = entries.remove(key);
+    if (entry == null) {
+      return;
+    }
+    rows -= entry.result.size();
+    for (String table : entry.tables) {
+      Set<String> keys = keysByTable.get(table);
+      if (keys != null) {
+        keys.remove(key);
+      }
+    }
+  }
+
+  private void trim() {
+    while (rows > maxRows && !entries.isEmpty()) {
+      //The first key is the least recently used
+      remove(entries.keySet().iterator().next());
+    }
+  }
+
+  private static String normalize(String table) {
+    return table.trim().toLowerCase(Locale.US);
+  }
+
+  /**
+   * Cached result with the tables read by its query
+   */
+  private static class Entry {
+    private final Set<String> tables;
+    private final List<?> result;
+
+    private Entry(Set<String> tables, List<?> result) {
+      this.tables = tables;
+      this.result = result;
+    }
+  }
+}
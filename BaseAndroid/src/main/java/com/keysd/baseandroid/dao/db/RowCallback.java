@@ -0,0 +1,36 @@
+/**
+ * File: RowCallback
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Receives the rows of a query one by one
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+/**
+ * Receives the rows of a query one by one, used for scanning tables without creating a list,
+ * see {@link BaseDBDAO#forEach(String, String[], String[], java.util.Map, String, RowCallback)}.
+ * The received row is only valid during the call, it is re-pointed to the next row afterwards
+ *
+ * @param <R>
+ * 	Type of the row view, ej. the cursor itself or a reused model
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public interface RowCallback<R> {
+
+  /**
+   * Process the current row, the row must not be kept after the call, a copy should be kept
+   * instead
+   *
+   * @param row
+   * 	View of the current row
+   * @return True for continuing with the next row, false for stopping the scan
+   *
+   * @throws DBException
+   * 	if the row values could not be read
+   */
+  public boolean onRow(R row) throws DBException;
+}
@@ -0,0 +1,36 @@
+/**
+ * File: RowMapper
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Creates an object from the current row of a cursor
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+import android.database.Cursor;
+
+/**
+ * Creates an object from the current row of a cursor, used by the DAO queries that return lists
+ * of objects
+ *
+ * @param <R>
+ * 	Type of the created objects
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public interface RowMapper<R> {
+
+  /**
+   * Creates an object from the current row, the cursor must not be moved
+   *
+   * @param cursor
+   * 	Cursor positioned on the row
+   * @return The object with the row values
+   *
+   * @throws DBException
+   * 	if the row values could not be read
+   */
+  public R mapRow(Cursor cursor) throws DBException;
+}
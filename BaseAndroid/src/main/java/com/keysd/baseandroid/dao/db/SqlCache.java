@@ -0,0 +1,310 @@
+/**
+ * File: SqlCache
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Cache of built SQL strings and compiled statements used by a DAO
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the SQL strings built by a DAO and of the compiled statements of its single value
+ * queries, so the hot queries only bind their arguments. Reusing the same SQL string also lets
+ * SQLite reuse the statement prepared on its connection cache.
+ * <p/>
+ * Compiled statements belong to a connection, so the cache keeps a reference to the data base
+ * while it has statements, otherwise the data base would be closed by the DAO after each query
+ * and the statements lost. The reference is released by {@link #releaseStatements()}, or when the
+ * DAO gets a different {@link android.database.sqlite.SQLiteDatabase}, ej. after the helper was
+ * closed, in that case the statements are compiled again.
+ * The hit rates are available through {@link #getSqlHitRate()}, {@link #getStatementHitRate()}
+ * and {@link #toString()}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class SqlCache {
+
+  /**
+   * Default number of SQL strings and of statements kept
+   */
+  public static final int DEFAULT_MAX_SIZE = 32;
+
+  private final Map<QueryKey, String> sqls;
+  private final Map<String, SQLiteStatement> statements;
+  private SQLiteDatabase statementsDb;
+  private long sqlHits;
+  private long sqlMisses;
+  private long statementHits;
+  private long statementMisses;
+
+  /**
+   * Constructor
+   *
+   * @param maxSize
+   * 	Number of SQL strings and of statements kept, the least recently used are discarded
+   */
+  public SqlCache(final int maxSize) {
+    sqls = new LinkedHashMap<QueryKey, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<QueryKey, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+    statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+        if (size() > maxSize) {
+          closeQuietly(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Gets a SQL string
+   *
+   * @param key
+   * 	Key built with all the inputs of the SQL
+   * @return The SQL or null if it is not cached
+   */
+  public synchronized String getSql(QueryKey key) {
+    String sql = sqls.get(key);
+    if (sql != null) {
+      sqlHits++;
+    } else {
+      sqlMisses++;
+    }
+    return sql;
+  }
+
+  /**
+   * Saves a SQL string
+   *
+   * @param key
+   * 	Key built with all the inputs of the SQL
+   * @param sql
+   * 	SQL string
+   */
+  public synchronized void putSql(QueryKey key, String sql) {
+    sqls.put(key, sql);
+  }
+
+  /**
+   * Executes a query that returns a single number, ej. a count, with a compiled statement
+   *
+   * @param db
+   * 	Data base where the query will be executed
+   * @param sql
+   * 	Query SQL
+   * @param selectionArgs
+   * 	Arguments for "?" components in the query, could be null
+   * @return The value of the first column of the first row
+   *
+   * @throws android.database.sqlite.SQLiteDoneException
+   * 	if the query returns zero rows
+   */
+  public synchronized long simpleQueryForLong(SQLiteDatabase db, String sql,
+      String[] selectionArgs) {
+    return bind(getStatement(db, sql), selectionArgs).simpleQueryForLong();
+  }
+
+  /**
+   * Executes a query that returns a single text with a compiled statement
+   *
+   * @param db
+   * 	Data base where the query will be executed
+   * @param sql
+   * 	Query SQL
+   * @param selectionArgs
+   * 	Arguments for "?" components in the query, could be null
+   * @return The value of the first column of the first row
+   *
+   * @throws android.database.sqlite.SQLiteDoneException
+   * 	if the query returns zero rows
+   */
+  public synchronized String simpleQueryForString(SQLiteDatabase db, String sql,
+      String[] selectionArgs) {
+    return bind(getStatement(db, sql), selectionArgs).simpleQueryForString();
+  }
+
+  /**
+   * Closes the compiled statements and releases the reference to their data base, the SQL
+   * strings are kept
+   */
+  public synchronized void releaseStatements() {
+    clearStatements();
+  }
+
+  /**
+   * Discards all the SQL strings and statements, the statistics are kept
+   */
+  public synchronized void clear() {
+    sqls.clear();
+    clearStatements();
+  }
+
+  /**
+   * @return The fraction of SQL strings found on the cache, between 0 and 1
+   */
+  public synchronized float getSqlHitRate() {
+    return rate(sqlHits, sqlMisses);
+  }
+
+  /**
+   * @return The fraction of compiled statements found on the cache, between 0 and 1
+   */
+  public synchronized float getStatementHitRate() {
+    return rate(statementHits, statementMisses);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SqlCache{" +
+        "sqlHits=" + sqlHits +
+        ", sqlMisses=" + sqlMisses +
+        ", sqlHitRate=" + getSqlHitRate() +
+        ", statementHits=" + statementHits +
+        ", statementMisses=" + statementMisses +
+        ", statementHitRate=" + getStatementHitRate() +
+        '}';
+  }
+
+  private SQLiteStatement getStatement(SQLiteDatabase db, String sql) {
+    if (db != statementsDb) {
+      clearStatements();
+      //Keeps the data base open while its statements are cached
+      db.acquireReference();
+      statementsDb = db;
+    }
+    SQLiteStatement statement = statements.get(sql);
+    if (statement != null) {
+      statementHits++;
+      return statement;
+    }
+    statementMisses++;
+    statement = db.compileStatement(sql);
+    statements.put(sql, statement);
+    return statement;
+  }
+
+  private static SQLiteStatement bind(SQLiteStatement statement, String[] selectionArgs) {
+    statement.clearBindings();
+    if (selectionArgs != null) {
+      for (int i = 0; i < selectionArgs.length; i++) {
+        if (selectionArgs[i] == null) {
+          statement.bindNull(i + 1);
+        } else {
+          statement.bindString(i + 1, selectionArgs[i]);
+        }
+      }
+    }
+    return statement;
+  }
+
+  private void clearStatements() {
+    for (SQLiteStatement statement : statements.values()) {
+      closeQuietly(statement);
+    }
+    statements.clear();
+    if (statementsDb != null) {
+      try {
+        statementsDb.releaseReference();
+      } catch (IllegalStateException e) {
+        //The data base was already closed
+      }
+      statementsDb = null;
+    }
+  }
+
+  private static void closeQuietly(SQLiteStatement statement) {
+    try {
+      statement.close();
+    } catch (IllegalStateException e) {
+      //The data base was already closed
+    }
+  }
+
+  private static float rate(long hits, long misses) {
+    long total = hits + misses;
+    return total == 0 ? 0 : (float) hits / total;
+  }
+
+  /**
+   * Inputs of a query SQL, compared field by field so a look up does not need to build a string
+   * with all of them. The columns are copied, the projection map is kept as is, so it must not be
+   * modified once it has been used for a query
+   */
+  public static final class QueryKey {
+    private final String tableName;
+    private final String[] columns;
+    private final Map<String, String> projectionMap;
+    private final String selection;
+    private final String groupBy;
+    private final String having;
+    private final String sortOrder;
+    private final String limit;
+    private final int hashCode;
+
+    public QueryKey(String tableName, String[] columns, Map<String, String> projectionMap,
+        String selection, String groupBy, String having, String sortOrder, String limit) {
+      this.tableName = tableName;
+      this.columns = columns != null ? columns.clone() : null;
+      this.projectionMap = projectionMap;
+      this.selection = selection;
+      this.groupBy = groupBy;
+      this.having = having;
+      this.sortOrder = sortOrder;
+      this.limit = limit;
+      int result = hash(tableName);
+      result = 31 * result + Arrays.hashCode(columns);
+      result = 31 * result + (projectionMap != null ? projectionMap.hashCode() : 0);
+      result = 31 * result + hash(selection);
+      result = 31 * result + hash(groupBy);
+      result = 31 * result + hash(having);
+      result = 31 * result + hash(sortOrder);
+      result = 31 * result + hash(limit);
+      this.hashCode = result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof QueryKey)) {
+        return false;
+      }
+      QueryKey key = (QueryKey) o;
+      return hashCode == key.hashCode && equal(tableName, key.tableName) &&
+          Arrays.equals(columns, key.columns) && equal(selection, key.selection) &&
+          equal(groupBy, key.groupBy) && equal(having, key.having) &&
+          equal(sortOrder, key.sortOrder) && equal(limit, key.limit) &&
+          (projectionMap == key.projectionMap ||
+              (projectionMap != null && projectionMap.equals(key.projectionMap)));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    private static int hash(String value) {
+      return value != null ? value.hashCode() : 0;
+    }
+
+    private static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+/**
+ * File: TableChangeListener
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Listener notified once the writes to a table are finished
+ */
+
+package com.keysd.baseandroid.dao.db;
+
+/**
+ * Listener notified once the writes to a table are finished, ej. for discarding the data kept in
+ * memory from the table, see {@link BaseDBDAO#addTableChangeListener(TableChangeListener)}.
+ * Writes done inside a {@link com.keysd.baseandroid.dao.db.helper.TransactionScope} are notified
+ * when the outer scope ends, whether it was committed or rolled back
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public interface TableChangeListener {
+
+  /**
+   * Called after a table was written, on the thread that wrote it
+   *
+   * @param tableName
+   * 	Written table
+   */
+  public void onTableChanged(String tableName);
+}
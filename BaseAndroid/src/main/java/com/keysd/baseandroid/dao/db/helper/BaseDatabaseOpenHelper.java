@@ -9,17 +9,34 @@ package com.keysd.baseandroid.dao.db.helper;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.annotation.StringRes;
 import android.text.TextUtils;
 import android.util.Log;
 import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Base class which handles data base tables creation and upgrade and using SQLiteOpenHelper
+ * <p/>
+ * The data base could also be shipped prebuilt on the assets, see
+ * {@link #setPrebuiltDatabase(String, int)}, so on first launch the file is copied instead of
+ * creating the tables and inserting the catalogs row by row. The data base could be opened in
+ * background at application start, see {@link #warmUp(String...)}, and several DAOs could write
+ * on a single transaction, see {@link #beginScope()}
  *
  * @author "M. en C. Javier Silva Perez (JSP)"
  * @version 1.0
@@ -31,10 +48,352 @@ public abstract class BaseDatabaseOpenHelper extends SQLiteOpenHelper {
   protected ProgressUpdater progressUpdater;
 
   private static final String DATABASE_ENABLE_FOREIGN_KEYS = "PRAGMA foreign_keys=ON";
+  private static final String GZIP_EXTENSION = ".gz";
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Buffer shared by all the copies, so it is allocated only once
+   */
+  private static byte[] copyBuffer;
+
+  /**
+   * Warm ups in progress by data base name, the DAOs create their own helpers so they are shared
+   * by all the helpers of the same data base
+   */
+  private static final Map<String, CountDownLatch> warmUps = new HashMap<String, CountDownLatch>();
+
+  /**
+   * Locks by data base name, the prebuilt copy and the open are serialized by all the helpers of
+   * the same data base, otherwise a helper could create an empty data base while other one is
+   * still copying the prebuilt file
+   */
+  private static final Map<String, Object> openLocks = new HashMap<String, Object>();
+
+  /**
+   * Active transaction scopes of the current thread by data base name
+   */
+  private static final ThreadLocal<Map<String, TransactionScope>> activeScopes =
+      new ThreadLocal<Map<String, TransactionScope>>() {
+        @Override
+        protected Map<String, TransactionScope> initialValue() {
+          return new HashMap<String, TransactionScope>();
+        }
+      };
+
+  private final String databaseName;
+  private String prebuiltAssetPath;
+  private int prebuiltVersion;
 
   public BaseDatabaseOpenHelper(Context context, String name, int version) {
     super(context, name, null, version);
     this.dbHelperContext = context;
+    this.databaseName = name;
+  }
+
+  /**
+   * Sets a prebuilt data base file from the assets, that will be copied the first time the data
+   * base is opened instead of running {@link #onCreate(android.database.sqlite.SQLiteDatabase)}.
+   * If the file name ends with .gz it is decompressed while it is copied.
+   * <p/>
+   * If the prebuilt version is lower than the helper version the copied data base goes through
+   * {@link #onUpgrade(android.database.sqlite.SQLiteDatabase, int, int)} as any other existing
+   * data base. Data bases that already exist are never replaced
+   *
+   * @param assetPath
+   * 	Path of the data base file on the assets, ej. databases/catalogs.db.gz
+   * @param prebuiltVersion
+   * 	Schema version of the prebuilt data base
+   */
+  public void setPrebuiltDatabase(String assetPath, int prebuiltVersion) {
+    this.prebuiltAssetPath = assetPath;
+    this.prebuiltVersion = prebuiltVersion;
+  }
+
+  /**
+   * Prepares the data base on a background thread, so the prebuilt copy and onCreate or
+   * onUpgrade are not paid by the first DAO call, which is usually done on the UI thread. It
+   * should be called at application start.
+   * <p/>
+   * The connection used for the warm up is closed once it finishes, each DAO uses its own helper,
+   * so the first DAO call still opens the file and runs the pragmas of
+   * {@link #onOpen(android.database.sqlite.SQLiteDatabase)}, which is cheap once the schema is
+   * ready and the pages are cached.
+   * <p/>
+   * The hot tables and their indexes are read completely, so their pages are loaded on the
+   * operating system cache. Calls to {@link #getWritableDatabase()} or
+   * {@link #getReadableDatabase()} on any helper of this data base wait until the warm up
+   * finishes instead of racing it
+   *
+   * @param hotTables
+   * 	Tables to be read, ej. the catalogs shown on the first screen
+   */
+  public void warmUp(final String... hotTables) {
+    final CountDownLatch latch = new CountDownLatch(1);
+    synchronized (warmUps) {
+      if (warmUps.containsKey(databaseName)) {
+        return;
+      }
+      warmUps.put(databaseName, latch);
+    }
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        long start = System.currentTimeMillis();
+        try {
+          SQLiteDatabase db = openDatabase(true);
+          try {
+            for (String hotTable : hotTables) {
+              touchTable(db, hotTable);
+            }
+          } finally {
+            db.close();
+          }
+          Log.i(KeyDictionary.TAG, "Data base " + databaseName + " warmed up in " +
+              (System.currentTimeMillis() - start) + " ms");
+        } catch (SQLException e) {
+          Log.e(KeyDictionary.TAG, "Unable to warm up data base " + databaseName, e);
+        } finally {
+          synchronized (warmUps) {
+            warmUps.remove(databaseName);
+          }
+          latch.countDown();
+        }
+      }
+    }, "DatabaseWarmUp").start();
+  }
+
+  /**
+   * Reads all the pages of a table and its indexes
+   */
+  private static void touchTable(SQLiteDatabase db, String tableName) {
+    List<String> indexes = new ArrayList<String>();
+    Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND " +
+                                    "tbl_name = ?", new String[]{tableName});
+    try {
+      while (cursor.moveToNext()) {
+        indexes.add(cursor.getString(0));
+      }
+    } finally {
+      cursor.close();
+    }
+    cursor = db.rawQuery("SELECT * FROM " + tableName, null);
+    try {
+      while (cursor.moveToNext()) {
+        //Only the pages are needed
+      }
+    } finally {
+      cursor.close();
+    }
+    for (String index : indexes) {
+      try {
+        cursor = db.rawQuery("SELECT COUNT(*) FROM " + tableName + " INDEXED BY " + index, null);
+        try {
+          cursor.moveToFirst();
+        } finally {
+          cursor.close();
+        }
+      } catch (SQLException e) {
+        Log.w(KeyDictionary.TAG, "Unable to read index " + index, e);
+      }
+    }
+  }
+
+  /**
+   * Waits for the warm up of this data base if it is in progress
+   */
+  private void awaitWarmUp() {
+    CountDownLatch latch;
+    synchronized (warmUps) {
+      latch = warmUps.get(databaseName);
+    }
+    if (latch == null) {
+      return;
+    }
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Starts a transaction scope that all the DAOs of this data base join while it is active on
+   * the current thread, so their writes are atomic and committed once. If a scope is already
+   * active a nested scope is started with a savepoint, see {@link TransactionScope}
+   *
+   * @return The new scope, it must be ended on a finally block
+   */
+  public TransactionScope beginScope() {
+    TransactionScope current = getActiveScope();
+    TransactionScope scope;
+    if (current == null) {
+      SQLiteDatabase db = getWritableDatabase();
+      //Kept until the scope ends even if a DAO closes the helper
+      db.acquireReference();
+      try {
+        db.beginTransaction();
+      } catch (RuntimeException e) {
+        db.releaseReference();
+        close();
+        throw e;
+      }
+      scope = new TransactionScope(this, db);
+    } else {
+      scope = new TransactionScope(current);
+    }
+    activeScopes.get().put(databaseName, scope);
+    return scope;
+  }
+
+  /**
+   * @return The innermost transaction scope of this data base active on the current thread, or
+   * null if there is none
+   */
+  public TransactionScope getActiveScope() {
+    return activeScopes.get().get(databaseName);
+  }
+
+  /**
+   * Restores the enclosing scope once a scope ends
+   */
+  void onScopeEnded(TransactionScope parent) {
+    Map<String, TransactionScope> scopes = activeScopes.get();
+    if (parent != null) {
+      scopes.put(databaseName, parent);
+    } else {
+      scopes.remove(databaseName);
+    }
+  }
+
+  /**
+   * Opens the data base, or returns the connection of the active transaction scope. In both
+   * cases the caller must close the returned data base
+   */
+  @Override
+  public SQLiteDatabase getWritableDatabase() {
+    SQLiteDatabase scopeDb = getScopeDatabase();
+    if (scopeDb != null) {
+      return scopeDb;
+    }
+    awaitWarmUp();
+    return openDatabase(true);
+  }
+
+  /**
+   * Opens the data base, or returns the connection of the active transaction scope. In both
+   * cases the caller must close the returned data base
+   */
+  @Override
+  public SQLiteDatabase getReadableDatabase() {
+    SQLiteDatabase scopeDb = getScopeDatabase();
+    if (scopeDb != null) {
+      return scopeDb;
+    }
+    awaitWarmUp();
+    return openDatabase(false);
+  }
+
+  /**
+   * Gets the connection of the active scope with an extra reference, that is released when the
+   * caller closes it as it would do with its own connection
+   */
+  private SQLiteDatabase getScopeDatabase() {
+    TransactionScope scope = getActiveScope();
+    if (scope == null) {
+      return null;
+    }
+    SQLiteDatabase db = scope.getDatabase();
+    db.acquireReference();
+    return db;
+  }
+
+  private SQLiteDatabase openDatabase(boolean writable) {
+    synchronized (getOpenLock(databaseName)) {
+      installPrebuiltDatabase();
+      return writable ? super.getWritableDatabase() : super.getReadableDatabase();
+    }
+  }
+
+  private static Object getOpenLock(String databaseName) {
+    synchronized (openLocks) {
+      Object lock = openLocks.get(databaseName);
+      if (lock == null) {
+        lock = new Object();
+        openLocks.put(databaseName, lock);
+      }
+      return lock;
+    }
+  }
+
+  /**
+   * Copies the prebuilt data base if it was set and the data base does not exist yet. The file is
+   * copied to a unique temporary file that is renamed once it is complete, so an interrupted copy
+   * never leaves a partial data base. It must be called holding the open lock of the data base
+   */
+  private void installPrebuiltDatabase() {
+    if (prebuiltAssetPath == null || databaseName == null) {
+      return;
+    }
+    File databaseFile = dbHelperContext.getDatabasePath(databaseName);
+    if (databaseFile.exists()) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    File parent = databaseFile.getParentFile();
+    if (!parent.exists() && !parent.mkdirs()) {
+      Log.e(KeyDictionary.TAG, "Unable to create " + parent);
+      return;
+    }
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(databaseName + "-", ".tmp", parent);
+      copyAsset(prebuiltAssetPath, tempFile);
+      SQLiteDatabase db = SQLiteDatabase.openDatabase(tempFile.getPath(), null,
+                                                      SQLiteDatabase.OPEN_READWRITE);
+      try {
+        //The helper compares this version to run onCreate or onUpgrade
+        db.setVersion(prebuiltVersion);
+      } finally {
+        db.close();
+      }
+      if (!tempFile.renameTo(databaseFile)) {
+        throw new IOException("Unable to rename " + tempFile + " to " + databaseFile);
+      }
+      Log.i(KeyDictionary.TAG, "Prebuilt data base " + prebuiltAssetPath + " installed in " +
+          (System.currentTimeMillis() - start) + " ms");
+    } catch (IOException e) {
+      //The data base will be created by onCreate
+      Log.e(KeyDictionary.TAG, "Unable to install prebuilt data base " + prebuiltAssetPath, e);
+      if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+        Log.w(KeyDictionary.TAG, "Unable to delete " + tempFile);
+      }
+    }
+  }
+
+  private void copyAsset(String assetPath, File destination) throws IOException {
+    InputStream in = new BufferedInputStream(dbHelperContext.getAssets().open(assetPath),
+                                             COPY_BUFFER_SIZE);
+    try {
+      if (assetPath.endsWith(GZIP_EXTENSION)) {
+        in = new GZIPInputStream(in, COPY_BUFFER_SIZE);
+      }
+      OutputStream out = new FileOutputStream(destination);
+      try {
+        synchronized (BaseDatabaseOpenHelper.class) {
+          if (copyBuffer == null) {
+            copyBuffer = new byte[COPY_BUFFER_SIZE];
+          }
+          int read;
+          while ((read = in.read(copyBuffer)) != -1) {
+            out.write(copyBuffer, 0, read);
+          }
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
   }
 
   /**
@@ -41,4 +41,18 @@ public class DatabaseDictionary {
   public interface DBBaseStructure extends BaseColumns {
     public static final String FILTER_ID = _ID + " = ?";
   }
+
+  /**
+   * Table where the sync high water mark of each table is saved, see
+   * {@link com.keysd.baseandroid.controller.DeltaSyncEngine}
+   */
+  public interface SyncState {
+    public static final String NAME = "sync_state";
+    public static final String COLUMN_NAME_TABLE_NAME = "table_name";
+    public static final String COLUMN_NAME_HIGH_WATER_MARK = "high_water_mark";
+    public static final String SQL_CREATE = "CREATE TABLE IF NOT EXISTS " + NAME + " (" +
+        COLUMN_NAME_TABLE_NAME + " TEXT PRIMARY KEY," +
+        COLUMN_NAME_HIGH_WATER_MARK + " TEXT)";
+    public static final String FILTER_TABLE_NAME = COLUMN_NAME_TABLE_NAME + " = ?";
+  }
 }
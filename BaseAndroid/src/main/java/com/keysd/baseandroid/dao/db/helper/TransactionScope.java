@@ -0,0 +1,166 @@
+/**
+ * File: TransactionScope
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Transaction shared by all the DAOs of a data base on the current thread
+ */
+
+package com.keysd.baseandroid.dao.db.helper;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.keysd.baseandroid.dao.db.BaseDBDAO;
+import com.keysd.baseandroid.dao.db.QueryResultCache;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Transaction shared by all the DAOs of a data base on the current thread, so several writes,
+ * ej. an object and its children or the sync of several tables, are atomic and committed once.
+ * While a scope is active the DAO methods of the same thread reuse its connection instead of
+ * opening and committing their own, see {@link BaseDatabaseOpenHelper#beginScope()}.
+ * <p/>
+ * Scopes could be nested, a nested scope is a savepoint that could be rolled back without
+ * rolling back the outer scope. Every scope must be ended on a finally block:
+ * <pre>
+ * TransactionScope scope = openHelper.beginScope();
+ * try {
+ *   stateDAO.insert(state);
+ *   stateAuxDAO.insert(stateAuxList);
+ *   scope.setSuccessful();
+ * } finally {
+ *   scope.end();
+ * }
+ * </pre>
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public final class TransactionScope {
+
+  private final BaseDatabaseOpenHelper openHelper;
+  private final SQLiteDatabase db;
+  private final TransactionScope parent;
+  private final String savepoint;
+  private final Set<String> changedTables;
+  private boolean successful;
+  private boolean ended;
+
+  /**
+   * Constructor for the outer scope, the transaction must be already started
+   */
+  TransactionScope(BaseDatabaseOpenHelper openHelper, SQLiteDatabase db) {
+    this.openHelper = openHelper;
+    this.db = db;
+    this.parent = null;
+    this.savepoint = null;
+    this.changedTables = new HashSet<String>();
+  }
+
+  /**
+   * Constructor for a nested scope, it creates its savepoint
+   */
+  TransactionScope(TransactionScope parent) {
+    this.openHelper = parent.openHelper;
+    this.db = parent.db;
+    this.parent = parent;
+    this.savepoint = "scope" + parent.getDepth();
+    this.changedTables = parent.changedTables;
+    db.execSQL("SAVEPOINT " + savepoint);
+  }
+
+  /**
+   * @return The connection of the transaction, it must not be closed
+   */
+  public SQLiteDatabase getDatabase() {
+    return db;
+  }
+
+  /**
+   * @return The enclosing scope or null if this is the outer scope
+   */
+  public TransactionScope getParent() {
+    return parent;
+  }
+
+  /**
+   * Marks the scope as successful, so its changes are kept when it ends. No more writes should
+   * be done on the scope after calling this method
+   */
+  public void setSuccessful() {
+    successful = true;
+  }
+
+  /**
+   * Registers a written table, so its cached query results are discarded again and its
+   * {@link com.keysd.baseandroid.dao.db.TableChangeListener}s are notified once the outer scope
+   * ends
+   *
+   * @param tableName
+   * 	Written table
+   */
+  public void addChangedTable(String tableName) {
+    changedTables.add(tableName);
+  }
+
+  /**
+   * @param tableName
+   * 	Table name
+   * @return True if the table was written on this scope or on its enclosing scopes
+   */
+  public boolean hasChangedTable(String tableName) {
+    return changedTables.contains(tableName);
+  }
+
+  /**
+   * Ends the scope. A nested scope releases its savepoint, or rolls it back if it was not
+   * successful; the outer scope commits the transaction, or rolls it back if it or any of its
+   * nested scopes without savepoint was not successful
+   *
+   * @throws IllegalStateException
+   * 	if a nested scope is still active
+   */
+  public void end() {
+    if (ended) {
+      return;
+    }
+    if (openHelper.getActiveScope() != this) {
+      throw new IllegalStateException("Nested transaction scopes must be ended first");
+    }
+    ended = true;
+    if (parent != null) {
+      try {
+        if (!successful) {
+          //Up to API 27 the framework takes any statement starting with ROLLBACK as the end of
+          //the whole transaction, the leading ; keeps it as a plain statement
+          db.execSQL(";ROLLBACK TO " + savepoint);
+        }
+        db.execSQL("RELEASE " + savepoint);
+      } finally {
+        openHelper.onScopeEnded(parent);
+      }
+      return;
+    }
+
+    try {
+      if (successful) {
+        db.setTransactionSuccessful();
+      }
+      db.endTransaction();
+    } finally {
+      openHelper.onScopeEnded(null);
+      db.releaseReference();
+      openHelper.close();
+    }
+    //Rows read before the commit, or before the rollback, must be discarded
+    for (String tableName : changedTables) {
+      QueryResultCache.getInstance().invalidate(tableName);
+      BaseDBDAO.dispatchTableChanged(tableName);
+    }
+  }
+
+  private int getDepth() {
+    return parent == null ? 1 : parent.getDepth() + 1;
+  }
+}
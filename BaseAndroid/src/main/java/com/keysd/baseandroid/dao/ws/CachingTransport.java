@@ -0,0 +1,437 @@
+/**
+ * File: CachingTransport
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * WS transport that caches GET responses on disk and revalidates them with the server
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import android.util.Log;
+import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link WSTransport} that caches the GET responses on disk, keyed by the request URL, which
+ * includes the method name and the query. It follows the server Cache-Control directives:
+ * <ul>
+ * <li>Fresh responses, within max-age, are returned without a request</li>
+ * <li>Stale responses with an ETag or Last-Modified are revalidated with a conditional request,
+ * a 304 response returns the cached body</li>
+ * <li>no-store responses are not cached, no-cache responses are always revalidated</li>
+ * <li>Requests with credentials, ej. an Authorization header, and private responses or the
+ * ones that vary by a request header are not cached, so the responses of a user are never
+ * served to another one</li>
+ * </ul>
+ * With {@link #setStaleWhileRevalidate(long)}, stale responses are returned immediately and
+ * revalidated in background, so screens could render from the cache without waiting for the
+ * network, except if the server sends must-revalidate.
+ * <p/>
+ * Bodies are written to the cache while they are read, so streamed responses are also cached
+ * once they are fully read. Use it as the transport of a client with
+ * {@link WSClient#setTransport(WSTransport)}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class CachingTransport implements WSTransport {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final WSTransport transport;
+  private final ResponseCache cache;
+  private long staleWhileRevalidate;
+  private final Set<String> revalidating = new HashSet<String>();
+
+  /**
+   * Background revalidations of all the instances, a daemon thread so clients do not need to
+   * shut it down
+   */
+  private static final ExecutorService revalidator =
+      Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "CachingTransportRevalidator");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  /**
+   * Constructor
+   *
+   * @param transport
+   * 	Transport used for the requests that could not be answered by the cache
+   * @param cache
+   * 	Cache where the responses are saved
+   */
+  public CachingTransport(WSTransport transport, ResponseCache cache) {
+    this.transport = transport;
+    this.cache = cache;
+  }
+
+  /**
+   * Sets the time a stale response could still be returned while it is revalidated in background
+   *
+   * @param staleWhileRevalidate
+   * 	Milliseconds after the response becomes stale, 0 for always waiting for the revalidation
+   */
+  public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+    this.staleWhileRevalidate = staleWhileRevalidate;
+  }
+
+  public ResponseCache getCache() {
+    return cache;
+  }
+
+  @Override
+  public WSResponse execute(WSRequest request) throws IOException {
+    //Responses for a user must not be served to another one, ej. after a new log in
+    if (!WSRequest.METHOD_GET.equals(request.getMethod()) || hasCredentials(request)) {
+      return transport.execute(request);
+    }
+    ResponseCache.Entry entry = cache.get(request.getUrl());
+    long now = System.currentTimeMillis();
+    if (entry != null) {
+      if (entry.isFresh(now)) {
+        WSResponse cached = openCached(entry);
+        if (cached != null) {
+          return cached;
+        }
+        entry = null;
+      } else if (!entry.isMustRevalidate() &&
+          entry.getStaleness(now) <= staleWhileRevalidate) {
+        WSResponse cached = openCached(entry);
+        if (cached != null) {
+          revalidateInBackground(request, entry);
+          return cached;
+        }
+        entry = null;
+      }
+    }
+    return fetch(request, entry);
+  }
+
+  /**
+   * Executes the request, conditional if there is a cached response, and caches the result
+   */
+  private WSResponse fetch(WSRequest request, ResponseCache.Entry entry) throws IOException {
+    if (entry != null && entry.hasValidators()) {
+      if (entry.getEtag() != null) {
+        request.setHeader("If-None-Match", entry.getEtag());
+      }
+      if (entry.getLastModified() != null) {
+        request.setHeader("If-Modified-Since", entry.getLastModified());
+      }
+    }
+    WSResponse response = transport.execute(request);
+    long now = System.currentTimeMillis();
+    CacheControl cacheControl = new CacheControl(response.getHeader("Cache-Control"));
+
+    if (entry != null && response.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      response.close();
+      //Without Cache-Control the stored freshness is kept, RFC 7234 section 4.3.4
+      boolean hasCacheControl = response.getHeader("Cache-Control") != null;
+      long maxAge = hasCacheControl ? cacheControl.maxAge : entry.getMaxAge();
+      boolean mustRevalidate = hasCacheControl ? cacheControl.mustRevalidate :
+          entry.isMustRevalidate();
+      ResponseCache.Entry revalidated = entry.revalidated(response.getHeader("ETag"),
+                                                          response.getHeader("Last-Modified"),
+                                                          now, maxAge, mustRevalidate);
+      cache.update(revalidated);
+      WSResponse cached = openCached(revalidated);
+      if (cached != null) {
+        return cached;
+      }
+      //The cached body was removed meanwhile, request it again without validators
+      request.getHeaders().remove("If-None-Match");
+      request.getHeaders().remove("If-Modified-Since");
+      return fetch(request, null);
+    }
+
+    if (response.getStatusCode() != HttpURLConnection.HTTP_OK || response.getBody() == null) {
+      return response;
+    }
+    ResponseCache.Entry newEntry = new ResponseCache.Entry(request.getUrl(),
+                                                           response.getHeader("Content-Type"),
+                                                           response.getHeader("ETag"),
+                                                           response.getHeader("Last-Modified"),
+                                                           now, cacheControl.maxAge,
+                                                           cacheControl.mustRevalidate, null);
+    if (cacheControl.noStore || cacheControl.privateResponse ||
+        !isCacheableVary(response.getHeader("Vary")) ||
+        (cacheControl.maxAge <= 0 && !newEntry.hasValidators())) {
+      cache.remove(request.getUrl());
+      return response;
+    }
+    return new WSResponse(response.getStatusCode(), response.getHeaders(),
+                          new CacheWritingInputStream(response.getBody(), newEntry));
+  }
+
+  private void revalidateInBackground(final WSRequest request, final ResponseCache.Entry entry) {
+    synchronized (revalidating) {
+      if (!revalidating.add(entry.getKey())) {
+        return;
+      }
+    }
+    revalidator.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          WSResponse response = fetch(request, entry);
+          try {
+            //Read the body so it is written to the cache
+            InputStream body = response.getBody();
+            if (body != null) {
+              byte[] buffer = new byte[BUFFER_SIZE];
+              while (body.read(buffer) != -1) {
+                //Just consume
+              }
+            }
+          } finally {
+            response.close();
+          }
+        } catch (IOException e) {
+          Log.e(KeyDictionary.TAG, "Revalidation error for " + entry.getKey() + ": " + e);
+        } finally {
+          synchronized (revalidating) {
+            revalidating.remove(entry.getKey());
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * @return TRUE if the request carries credentials, ej. an Authorization header or cookies
+   */
+  private static boolean hasCredentials(WSRequest request) {
+    for (String header : request.getHeaders().keySet()) {
+      if ("Authorization".equalsIgnoreCase(header) || "Cookie".equalsIgnoreCase(header)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Entries are keyed by URL only, so only the responses that do not vary or vary by the
+   * encoding, which is always gzip for this transport, are cached
+   */
+  private static boolean isCacheableVary(String vary) {
+    if (vary == null) {
+      return true;
+    }
+    for (String header : vary.split(",")) {
+      header = header.trim();
+      if (header.length() > 0 && !"Accept-Encoding".equalsIgnoreCase(header)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Opens a response from the cached body
+   *
+   * @return The response, or null if the cached body was removed
+   */
+  private WSResponse openCached(ResponseCache.Entry entry) {
+    try {
+      InputStream body = new FileInputStream(entry.getBodyFile());
+      Map<String, List<String>> headers = new HashMap<String, List<String>>();
+      if (entry.getContentType() != null) {
+        headers.put("Content-Type", Collections.singletonList(entry.getContentType()));
+      }
+      if (entry.getEtag() != null) {
+        headers.put("ETag", Collections.singletonList(entry.getEtag()));
+      }
+      if (entry.getLastModified() != null) {
+        headers.put("Last-Modified", Collections.singletonList(entry.getLastModified()));
+      }
+      return new WSResponse(HttpURLConnection.HTTP_OK, headers, body);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Parsed Cache-Control response header
+   */
+  private static class CacheControl {
+    boolean noStore;
+    boolean privateResponse;
+    boolean mustRevalidate;
+    long maxAge;
+
+    CacheControl(String header) {
+      if (header == null) {
+        return;
+      }
+      boolean noCache = false;
+      for (String directive : header.toLowerCase(Locale.US).split(",")) {
+        directive = directive.trim();
+        if (directive.equals("no-store")) {
+          noStore = true;
+        } else if (directive.equals("private") || directive.startsWith("private=")) {
+          privateResponse = true;
+        } else if (directive.equals("no-cache")) {
+          noCache = true;
+        } else if (directive.equals("must-revalidate")) {
+          mustRevalidate = true;
+        } else if (directive.startsWith("max-age=")) {
+          try {
+            maxAge = Long.parseLong(directive.substring("max-age=".length()).trim()) * 1000L;
+          } catch (NumberFormatException e) {
+            maxAge = 0;
+          }
+        }
+      }
+      if (noCache) {
+        maxAge = 0;
+      }
+    }
+  }
+
+  /**
+   * Writes the body to a temporal file while it is read, the file is added to the cache only if
+   * the body is fully read
+   */
+  private class CacheWritingInputStream extends FilterInputStream {
+
+    /**
+     * Bytes that are read on close for reaching the end of the body, parsers usually stop
+     * before the end of the stream
+     */
+    private static final int DRAIN_LIMIT = 8 * 1024;
+
+    private final ResponseCache.Entry entry;
+    private File tempFile;
+    private OutputStream out;
+    private boolean complete;
+
+    CacheWritingInputStream(InputStream in, ResponseCache.Entry entry) {
+      super(in);
+      this.entry = entry;
+      try {
+        tempFile = cache.newTempFile(entry.getKey());
+        out = new FileOutputStream(tempFile);
+      } catch (IOException e) {
+        abandon();
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b == -1) {
+        complete = true;
+      } else if (out != null) {
+        try {
+          out.write(b);
+        } catch (IOException e) {
+          abandon();
+        }
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+      int read = super.read(buffer, offset, count);
+      if (read == -1) {
+        complete = true;
+      } else if (out != null) {
+        try {
+          out.write(buffer, offset, read);
+        } catch (IOException e) {
+          abandon();
+        }
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      //Skipped bytes must also be written to the cache
+      byte[] buffer = new byte[(int) Math.min(count, BUFFER_SIZE)];
+      long skipped = 0;
+      while (skipped < count) {
+        int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+        if (read == -1) {
+          break;
+        }
+        skipped += read;
+      }
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (!complete && out != null) {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          int drained = 0;
+          int read = 0;
+          while (drained < DRAIN_LIMIT && (read = read(buffer)) != -1) {
+            drained += read;
+          }
+        }
+      } finally {
+        super.close();
+        if (out != null) {
+          out.close();
+          if (complete) {
+            try {
+              cache.put(entry, tempFile);
+            } catch (IOException e) {
+              Log.e(KeyDictionary.TAG, "Response could not be cached: " + e);
+            }
+          } else {
+            tempFile.delete();
+          }
+          out = null;
+        }
+      }
+    }
+
+    private void abandon() {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          //Ignore, the file is deleted anyway
+        }
+        out = null;
+      }
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+}
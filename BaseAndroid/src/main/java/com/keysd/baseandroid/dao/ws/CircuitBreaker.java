@@ -0,0 +1,123 @@
+/**
+ * File: CircuitBreaker
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Circuit breaker that fails fast the requests to a service that is down
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+/**
+ * Circuit breaker that fails fast the requests to a service that is down. After a number of
+ * consecutive failures the circuit opens and the requests are rejected without reaching the
+ * network; once the open time has passed a single trial request is allowed, if it succeeds the
+ * circuit closes again, otherwise it stays open for another period.
+ * <p/>
+ * It also records the latency of the requests of the service, see {@link #getLatencies()}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class CircuitBreaker {
+
+  /**
+   * Circuit states
+   */
+  public enum State {
+    /**
+     * Requests are allowed
+     */
+    CLOSED,
+    /**
+     * Requests are rejected
+     */
+    OPEN,
+    /**
+     * A trial request is in progress, other requests are rejected
+     */
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openTime;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+
+  private State state = State.CLOSED;
+  private int failures;
+  private long openedAt;
+
+  /**
+   * Constructor
+   *
+   * @param failureThreshold
+   * 	Consecutive failures that open the circuit
+   * @param openTime
+   * 	Time the circuit stays open before allowing a trial request, in milliseconds
+   */
+  public CircuitBreaker(int failureThreshold, long openTime) {
+    this.failureThreshold = failureThreshold;
+    this.openTime = openTime;
+  }
+
+  /**
+   * Checks if a request could be executed, when the open time has passed the first caller gets
+   * the trial request
+   *
+   * @return True if the request is allowed
+   */
+  public synchronized boolean allowRequest() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (System.currentTimeMillis() - openedAt >= openTime) {
+          state = State.HALF_OPEN;
+          return true;
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Records a successful request, closing the circuit
+   *
+   * @param latency
+   * 	Request latency in milliseconds
+   */
+  public synchronized void onSuccess(long latency) {
+    latencies.record(latency);
+    failures = 0;
+    state = State.CLOSED;
+  }
+
+  /**
+   * Records a failed request, opening the circuit if it was the trial request or the failures
+   * reached the threshold
+   *
+   * @param latency
+   * 	Request latency in milliseconds
+   */
+  public synchronized void onFailure(long latency) {
+    latencies.record(latency);
+    failures++;
+    if (state == State.HALF_OPEN || failures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return The latencies of the requests of the service, successful or not
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+}
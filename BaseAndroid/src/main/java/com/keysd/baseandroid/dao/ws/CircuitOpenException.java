@@ -0,0 +1,34 @@
+/**
+ * File: CircuitOpenException
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Exception used when a request is rejected because the circuit of its service is open
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.IOException;
+
+/**
+ * Exception used when a request is rejected without reaching the network because the circuit of
+ * its service is open, see {@link CircuitBreaker}. It is an {@link java.io.IOException} so
+ * callers handle it as any other network problem
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class CircuitOpenException extends IOException {
+
+  /**
+   * Constructs a new {@code Exception} with the current stack trace and the specified detail
+   * message.
+   *
+   * @param detailMessage
+   * 	the detail message for this exception.
+   */
+  public CircuitOpenException(String detailMessage) {
+    super(detailMessage);
+  }
+}
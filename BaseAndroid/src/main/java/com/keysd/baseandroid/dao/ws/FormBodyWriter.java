@@ -0,0 +1,109 @@
+/**
+ * File: FormBodyWriter
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Request body that writes parameters form encoded directly into the connection stream
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.keysd.baseandroid.model.ws.GsonRegistry;
+import org.apache.http.message.BasicNameValuePair;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link WSBodyWriter} that writes parameters in application/x-www-form-urlencoded format
+ * directly into the connection stream. The parameters could be a list of pairs or the fields of
+ * an object; in that case the object is converted to a JSON tree with the shared Gson, without
+ * serializing it to a String and parsing it again as
+ * {@link com.keysd.baseandroid.util.CMUtils#jsonStringToUrlEncodedEntity(String)} does, each
+ * field is a parameter and fields with objects or arrays are sent as JSON
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class FormBodyWriter implements WSBodyWriter {
+
+  private static final String UTF_8 = "UTF-8";
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Object src;
+  private final List<BasicNameValuePair> parameters;
+
+  /**
+   * Constructor
+   *
+   * @param src
+   * 	Object whose fields will be the parameters
+   */
+  public FormBodyWriter(Object src) {
+    this.src = src;
+    this.parameters = null;
+  }
+
+  /**
+   * Constructor
+   *
+   * @param parameters
+   * 	Parameters to be written
+   */
+  public FormBodyWriter(List<BasicNameValuePair> parameters) {
+    this.src = null;
+    this.parameters = parameters;
+  }
+
+  @Override
+  public String getContentType() {
+    return WSClient.CONTENT_TYPE_FORM;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), BUFFER_SIZE);
+    boolean first = true;
+    if (parameters != null) {
+      for (BasicNameValuePair pair : parameters) {
+        writeParameter(writer, pair.getName(), pair.getValue(), first);
+        first = false;
+      }
+    } else {
+      JsonObject fields = GsonRegistry.getGson().toJsonTree(src).getAsJsonObject();
+      for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+        JsonElement value = field.getValue();
+        writeParameter(writer, field.getKey(), value.isJsonNull() ? null :
+            value.isJsonPrimitive() ? value.getAsString() : value.toString(), first);
+        first = false;
+      }
+    }
+    //Flush without closing, the transport closes the connection stream
+    writer.flush();
+  }
+
+  private static void writeParameter(Writer writer, String name, String value, boolean first)
+      throws IOException {
+    if (!first) {
+      writer.write('&');
+    }
+    writer.write(URLEncoder.encode(name, UTF_8));
+    if (value != null) {
+      writer.write('=');
+      writer.write(URLEncoder.encode(value, UTF_8));
+    }
+  }
+}
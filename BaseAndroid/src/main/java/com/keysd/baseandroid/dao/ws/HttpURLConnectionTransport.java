@@ -0,0 +1,250 @@
+/**
+ * File: HttpURLConnectionTransport
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * WS transport based on HttpURLConnection, connections are kept alive and reused between calls
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link WSTransport} based on {@link java.net.HttpURLConnection}. The platform keeps the
+ * connections alive and reuses them for the following requests to the same host, which avoids a
+ * TCP and TLS handshake on every call, as long as the response bodies are fully read and closed.
+ * <p/>
+ * The number of concurrent requests per host is limited, the requests above the limit wait for a
+ * connection to be released, up to the connect time out of the request. Responses are requested
+ * with gzip and decompressed transparently, request bodies are compressed when
+ * {@link WSRequest#isGzipBody()} is set. Bodies set with a {@link WSBodyWriter} are written
+ * directly into the connection, with chunked transfer encoding when their length is unknown.
+ * <p/>
+ * The connection pool is process wide, so a single instance should be shared, see
+ * {@link #getInstance()}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class HttpURLConnectionTransport implements WSTransport {
+
+  /**
+   * Default number of concurrent connections per host
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+  /**
+   * Time to wait for a connection of a host in milliseconds, for the requests without connect
+   * time out
+   */
+  public static final int DEFAULT_CONNECTION_WAIT = 30000;
+
+  private static final String GZIP = "gzip";
+
+  private static HttpURLConnectionTransport instance;
+
+  private final int maxConnectionsPerHost;
+  private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+
+  /**
+   * Constructor
+   *
+   * @param maxConnectionsPerHost
+   * 	Maximum number of concurrent requests per host. The number of idle connections kept alive
+   * 	per host is process wide, it is set by {@link #getInstance()}
+   */
+  public HttpURLConnectionTransport(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  /**
+   * @return The shared transport, with the default connections per host, which is also the
+   * number of idle connections kept alive per host
+   */
+  public static synchronized HttpURLConnectionTransport getInstance() {
+    if (instance == null) {
+      System.setProperty("http.keepAlive", "true");
+      System.setProperty("http.maxConnections", String.valueOf(DEFAULT_MAX_CONNECTIONS_PER_HOST));
+      instance = new HttpURLConnectionTransport(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+    return instance;
+  }
+
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  @Override
+  public WSResponse execute(WSRequest request) throws IOException {
+    URL url = new URL(request.getUrl());
+    final Semaphore permits = getPermits(url.getAuthority());
+    //A permit is only released when the response body is closed, so do not wait forever for
+    // the responses that were never closed
+    int wait = request.getConnectTimeout() > 0 ? request.getConnectTimeout() :
+        DEFAULT_CONNECTION_WAIT;
+    try {
+      if (!permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+        throw new SocketTimeoutException("Timed out waiting for a connection to " +
+                                             url.getHost() + ", check the response bodies are " +
+                                             "closed");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a connection to " + url.getHost());
+    }
+
+    HttpURLConnection connection = null;
+    try {
+      connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod(request.getMethod());
+      connection.setConnectTimeout(request.getConnectTimeout());
+      connection.setReadTimeout(request.getReadTimeout());
+      connection.setUseCaches(false);
+      //Set explicitly so the body is decompressed here on every platform
+      connection.setRequestProperty("Accept-Encoding", GZIP);
+      for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+        connection.setRequestProperty(header.getKey(), header.getValue());
+      }
+
+      byte[] body = request.getBody();
+      WSBodyWriter bodyWriter = request.getBodyWriter();
+      if (bodyWriter != null) {
+        writeBody(connection, bodyWriter, request);
+      } else if (body != null) {
+        if (request.isGzipBody()) {
+          body = gzip(body);
+          connection.setRequestProperty("Content-Encoding", GZIP);
+        }
+        connection.setDoOutput(true);
+        if (request.getChunkLength() > 0) {
+          connection.setChunkedStreamingMode(request.getChunkLength());
+        } else {
+          connection.setFixedLengthStreamingMode(body.length);
+        }
+        OutputStream out = connection.getOutputStream();
+        try {
+          out.write(body);
+        } finally {
+          out.close();
+        }
+      }
+
+      int statusCode = connection.getResponseCode();
+      InputStream in = statusCode >= HttpURLConnection.HTTP_BAD_REQUEST ?
+          connection.getErrorStream() : connection.getInputStream();
+      if (in == null) {
+        permits.release();
+        return new WSResponse(statusCode, connection.getHeaderFields(), null);
+      }
+      InputStream releasing = new ReleasingInputStream(in, permits);
+      if (GZIP.equalsIgnoreCase(connection.getContentEncoding())) {
+        releasing = new GZIPInputStream(releasing);
+      }
+      return new WSResponse(statusCode, connection.getHeaderFields(), releasing);
+    } catch (IOException e) {
+      if (connection != null) {
+        connection.disconnect();
+      }
+      permits.release();
+      throw e;
+    } catch (RuntimeException e) {
+      if (connection != null) {
+        connection.disconnect();
+      }
+      permits.release();
+      throw e;
+    }
+  }
+
+  private synchronized Semaphore getPermits(String host) {
+    Semaphore permits = hostPermits.get(host);
+    if (permits == null) {
+      permits = new Semaphore(maxConnectionsPerHost, true);
+      hostPermits.put(host, permits);
+    }
+    return permits;
+  }
+
+  /**
+   * Writes a streamed body, with its length when it is known or chunked otherwise
+   */
+  private static void writeBody(HttpURLConnection connection, WSBodyWriter bodyWriter,
+      WSRequest request) throws IOException {
+    connection.setDoOutput(true);
+    long length = bodyWriter.getContentLength();
+    if (request.isGzipBody()) {
+      connection.setRequestProperty("Content-Encoding", GZIP);
+      connection.setChunkedStreamingMode(request.getChunkLength());
+    } else if (length >= 0 && length <= Integer.MAX_VALUE && request.getChunkLength() <= 0) {
+      connection.setFixedLengthStreamingMode((int) length);
+    } else {
+      connection.setChunkedStreamingMode(request.getChunkLength());
+    }
+    OutputStream out = connection.getOutputStream();
+    try {
+      if (request.isGzipBody()) {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        bodyWriter.writeTo(gzip);
+        gzip.finish();
+      } else {
+        bodyWriter.writeTo(out);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 32);
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    try {
+      gzip.write(data);
+    } finally {
+      gzip.close();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Releases the host connection permit once the body is closed
+   */
+  private static class ReleasingInputStream extends FilterInputStream {
+    private final Semaphore permits;
+    private boolean released;
+
+    ReleasingInputStream(InputStream in, Semaphore permits) {
+      super(in);
+      this.permits = permits;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        synchronized (this) {
+          if (!released) {
+            released = true;
+            permits.release();
+          }
+        }
+      }
+    }
+  }
+}
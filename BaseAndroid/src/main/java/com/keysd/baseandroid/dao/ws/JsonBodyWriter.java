@@ -0,0 +1,85 @@
+/**
+ * File: JsonBodyWriter
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Request body that serializes an object as JSON directly into the connection stream
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+import com.keysd.baseandroid.model.ws.GsonRegistry;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+
+/**
+ * {@link WSBodyWriter} that serializes an object as JSON with the shared Gson, see
+ * {@link com.keysd.baseandroid.model.ws.GsonRegistry}. The object is written through a
+ * {@link com.google.gson.stream.JsonWriter} directly into the connection stream, so the JSON is
+ * never built as a String
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class JsonBodyWriter implements WSBodyWriter {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Object src;
+  private final Type type;
+
+  /**
+   * Constructor
+   *
+   * @param src
+   * 	Object to be serialized
+   */
+  public JsonBodyWriter(Object src) {
+    this(src, src.getClass());
+  }
+
+  /**
+   * Constructor for generic objects, ej. lists
+   *
+   * @param src
+   * 	Object to be serialized
+   * @param type
+   * 	Type of the object, ej. new TypeToken&lt;List&lt;State&gt;&gt;(){}.getType()
+   */
+  public JsonBodyWriter(Object src, Type type) {
+    this.src = src;
+    this.type = type;
+  }
+
+  @Override
+  public String getContentType() {
+    return WSClient.CONTENT_TYPE_JSON;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    JsonWriter writer = new JsonWriter(
+        new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), BUFFER_SIZE));
+    try {
+      GsonRegistry.getGson().toJson(src, type, writer);
+    } catch (JsonIOException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+    //Flush without closing, the transport closes the connection stream
+    writer.flush();
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * File: LatencyHistogram
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Histogram of request latencies with fixed buckets
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of request latencies with fixed exponential buckets, recording is lock free so it
+ * could be used on every request. Percentiles are approximated by the upper bound of the bucket
+ * where they fall
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class LatencyHistogram {
+
+  /**
+   * Upper bound in milliseconds of each bucket, the last bucket has no upper bound
+   */
+  private static final long[] BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000,
+      30000};
+
+  private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+  /**
+   * Records a latency
+   *
+   * @param latency
+   * 	Latency in milliseconds
+   */
+  public void record(long latency) {
+    int bucket = 0;
+    while (bucket < BOUNDS.length && latency > BOUNDS[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+  }
+
+  /**
+   * @return The number of recorded latencies
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Gets an approximated percentile
+   *
+   * @param percentile
+   * 	Percentile between 0 and 100, ej. 95
+   * @return The upper bound of the bucket of the percentile in milliseconds, Long.MAX_VALUE if it
+   * is on the last bucket or 0 if nothing was recorded
+   */
+  public long getPercentile(double percentile) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(count * percentile / 100.0);
+    long accumulated = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      accumulated += counts.get(i);
+      if (accumulated >= target) {
+        return BOUNDS[i];
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("LatencyHistogram{");
+    for (int i = 0; i < counts.length(); i++) {
+      builder.append(i > 0 ? ", " : "");
+      builder.append(i < BOUNDS.length ? "<=" + BOUNDS[i] : ">" + BOUNDS[BOUNDS.length - 1]);
+      builder.append("ms=").append(counts.get(i));
+    }
+    return builder.append('}').toString();
+  }
+}
@@ -0,0 +1,205 @@
+/**
+ * File: ResilientTransport
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * WS transport that retries failed requests with backoff and fails fast while a service is down
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import android.util.Log;
+import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link WSTransport} that adds resilience to another transport:
+ * <ul>
+ * <li>Failed requests are retried following a {@link RetryPolicy}, network errors and 429,
+ * 502, 503 and 504 responses are retried. Requests that are not idempotent are only retried if
+ * they did not reach the server, see {@link WSRequest#isIdempotent()}</li>
+ * <li>Each service has a {@link CircuitBreaker}, network errors and 5xx responses count as
+ * failures, so while a service is down its requests fail fast with a
+ * {@link CircuitOpenException} instead of waiting for time outs</li>
+ * <li>The latencies of each service are recorded on the breaker histogram</li>
+ * </ul>
+ * The wrapped transport could point to a local mock server, so the policy could be verified
+ * without a real backend
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class ResilientTransport implements WSTransport {
+
+  /**
+   * Default consecutive failures that open the circuit of a service
+   */
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+  /**
+   * Default time the circuit stays open, in milliseconds
+   */
+  public static final long DEFAULT_OPEN_TIME = 30000;
+
+  /**
+   * Maximum delay accepted from a Retry-After header, in milliseconds
+   */
+  private static final long MAX_RETRY_AFTER = 60000;
+
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private final WSTransport transport;
+  private final RetryPolicy retryPolicy;
+  private final int failureThreshold;
+  private final long openTime;
+  private final Map<String, CircuitBreaker> circuitBreakers = new HashMap<String, CircuitBreaker>();
+
+  /**
+   * Constructor with the default policy and circuit breakers
+   *
+   * @param transport
+   * 	Transport used for executing the requests
+   */
+  public ResilientTransport(WSTransport transport) {
+    this(transport, RetryPolicy.DEFAULT, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_TIME);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param transport
+   * 	Transport used for executing the requests
+   * @param retryPolicy
+   * 	Policy for retrying the failed requests
+   * @param failureThreshold
+   * 	Consecutive failures that open the circuit of a service
+   * @param openTime
+   * 	Time the circuit stays open, in milliseconds
+   */
+  public ResilientTransport(WSTransport transport, RetryPolicy retryPolicy, int failureThreshold,
+      long openTime) {
+    this.transport = transport;
+    this.retryPolicy = retryPolicy;
+    this.failureThreshold = failureThreshold;
+    this.openTime = openTime;
+  }
+
+  /**
+   * Gets the circuit breaker of a service, with its state and latencies
+   *
+   * @param service
+   * 	Service URL, as set by {@link WSClient} on its requests
+   * @return The circuit breaker of the service
+   */
+  public synchronized CircuitBreaker getCircuitBreaker(String service) {
+    CircuitBreaker circuitBreaker = circuitBreakers.get(service);
+    if (circuitBreaker == null) {
+      circuitBreaker = new CircuitBreaker(failureThreshold, openTime);
+      circuitBreakers.put(service, circuitBreaker);
+    }
+    return circuitBreaker;
+  }
+
+  @Override
+  public WSResponse execute(WSRequest request) throws IOException {
+    String service = getServiceKey(request);
+    CircuitBreaker circuitBreaker = getCircuitBreaker(service);
+    int attempt = 0;
+    while (true) {
+      attempt++;
+      if (!circuitBreaker.allowRequest()) {
+        throw new CircuitOpenException("Service unavailable: " + service);
+      }
+      long start = System.currentTimeMillis();
+      WSResponse response;
+      try {
+        response = transport.execute(request);
+      } catch (IOException e) {
+        circuitBreaker.onFailure(System.currentTimeMillis() - start);
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+          throw e;
+        }
+        //The request did not reach the server, so it is safe to retry it
+        boolean sent = !(e instanceof ConnectException || e instanceof UnknownHostException);
+        if (!retryPolicy.shouldRetry(request, attempt, sent)) {
+          throw e;
+        }
+        Log.w(KeyDictionary.TAG, "Retrying " + request.getUrl() + " after: " + e);
+        sleep(retryPolicy.getDelay(attempt));
+        continue;
+      } catch (RuntimeException e) {
+        //Otherwise a failed trial request would leave the circuit half open
+        circuitBreaker.onFailure(System.currentTimeMillis() - start);
+        throw e;
+      }
+
+      long latency = System.currentTimeMillis() - start;
+      int statusCode = response.getStatusCode();
+      if (statusCode >= 500) {
+        circuitBreaker.onFailure(latency);
+      } else {
+        circuitBreaker.onSuccess(latency);
+      }
+      if (isRetryable(statusCode) && retryPolicy.shouldRetry(request, attempt, true)) {
+        long delay = Math.max(retryPolicy.getDelay(attempt),
+                              getRetryAfter(response.getHeader("Retry-After")));
+        response.close();
+        Log.w(KeyDictionary.TAG, "Retrying " + request.getUrl() + " after status " + statusCode);
+        sleep(delay);
+        continue;
+      }
+      return response;
+    }
+  }
+
+  private static boolean isRetryable(int statusCode) {
+    return statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == 502 || statusCode == 503 ||
+        statusCode == 504;
+  }
+
+  /**
+   * Parses a Retry-After header with a delay in seconds, dates are ignored
+   */
+  private static long getRetryAfter(String retryAfter) {
+    if (retryAfter == null) {
+      return 0;
+    }
+    try {
+      return Math.min(Long.parseLong(retryAfter.trim()) * 1000L, MAX_RETRY_AFTER);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static String getServiceKey(WSRequest request) {
+    if (request.getService() != null) {
+      return request.getService();
+    }
+    try {
+      return new URL(request.getUrl()).getAuthority();
+    } catch (MalformedURLException e) {
+      return request.getUrl();
+    }
+  }
+
+  private static void sleep(long delay) throws InterruptedIOException {
+    if (delay <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a retry");
+    }
+  }
+}
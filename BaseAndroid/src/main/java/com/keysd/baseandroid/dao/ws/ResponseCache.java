@@ -0,0 +1,385 @@
+/**
+ * File: ResponseCache
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Disk cache of WS responses bounded by size, used by the CachingTransport
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import android.content.Context;
+import android.util.Log;
+import com.keysd.baseandroid.util.CMUtils;
+import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of WS responses bounded by size, used by {@link CachingTransport}. Each response is
+ * saved as a body file and a metadata file with its validators and freshness, both named after
+ * the hash of the request URL. When the cache exceeds its size the least recently used responses
+ * are removed
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class ResponseCache {
+
+  private static final String BODY_SUFFIX = ".body";
+  private static final String META_SUFFIX = ".meta";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File directory;
+  private final long maxBytes;
+
+  /**
+   * Constructor for a cache on the application cache directory
+   *
+   * @param context
+   * 	Application context
+   * @param maxBytes
+   * 	Maximum size of the cache on disk
+   */
+  public ResponseCache(Context context, long maxBytes) {
+    this(new File(context.getCacheDir(), "WSCache"), maxBytes);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param directory
+   * 	Directory where the responses will be saved, it should only be used by this cache
+   * @param maxBytes
+   * 	Maximum size of the cache on disk
+   */
+  public ResponseCache(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    if (!directory.exists()) {
+      directory.mkdirs();
+    }
+  }
+
+  /**
+   * Gets the cached response of a key
+   *
+   * @param key
+   * 	Key of the response, ej. the request URL
+   * @return The cached entry, or null if there is no response for the key
+   */
+  public synchronized Entry get(String key) {
+    String name = CMUtils.getMD5(key);
+    File meta = new File(directory, name + META_SUFFIX);
+    File body = new File(directory, name + BODY_SUFFIX);
+    if (!meta.exists() || !body.exists()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)));
+      try {
+        Entry entry = new Entry(in.readUTF(), readString(in), readString(in), readString(in),
+                                in.readLong(), in.readLong(), in.readBoolean(), body);
+        if (!key.equals(entry.key)) {
+          //Hash collision
+          return null;
+        }
+        //Least recently used responses are removed first
+        long now = System.currentTimeMillis();
+        meta.setLastModified(now);
+        body.setLastModified(now);
+        return entry;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      Log.e(KeyDictionary.TAG, "Invalid cached response for " + key + ": " + e);
+      meta.delete();
+      body.delete();
+      return null;
+    }
+  }
+
+  /**
+   * Creates a temporal file where a response body could be written before it is added to the
+   * cache with {@link #put(Entry, java.io.File)}
+   *
+   * @param key
+   * 	Key of the response
+   * @return A new temporal file
+   */
+  public File newTempFile(String key) {
+    return new File(directory, CMUtils.getMD5(key) + "." + System.nanoTime() + TEMP_SUFFIX);
+  }
+
+  /**
+   * Adds a response to the cache, replacing the previous response of the same key
+   *
+   * @param entry
+   * 	Response metadata
+   * @param bodyTempFile
+   * 	Temporal file with the full response body, it is moved into the cache
+   * @return The cached entry
+   *
+   * @throws IOException
+   * 	If the response could not be saved
+   */
+  public synchronized Entry put(Entry entry, File bodyTempFile) throws IOException {
+    String name = CMUtils.getMD5(entry.key);
+    File body = new File(directory, name + BODY_SUFFIX);
+    body.delete();
+    if (!bodyTempFile.renameTo(body)) {
+      bodyTempFile.delete();
+      throw new IOException("Could not save response body for " + entry.key);
+    }
+    Entry cached = new Entry(entry.key, entry.contentType, entry.etag, entry.lastModified,
+                             entry.storedAt, entry.maxAge, entry.mustRevalidate, body);
+    writeMeta(cached);
+    trim();
+    return cached;
+  }
+
+  /**
+   * Updates the metadata of a cached response, ej. after it is revalidated by the server
+   *
+   * @param entry
+   * 	New metadata, its body file must be the cached one
+   * @throws IOException
+   * 	If the metadata could not be saved
+   */
+  public synchronized void update(Entry entry) throws IOException {
+    if (entry.bodyFile != null && entry.bodyFile.exists()) {
+      writeMeta(entry);
+    }
+  }
+
+  /**
+   * Removes the cached response of a key
+   *
+   * @param key
+   * 	Key of the response
+   */
+  public synchronized void remove(String key) {
+    String name = CMUtils.getMD5(key);
+    new File(directory, name + META_SUFFIX).delete();
+    new File(directory, name + BODY_SUFFIX).delete();
+  }
+
+  /**
+   * Removes all the cached responses
+   */
+  public synchronized void clear() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File f : files) {
+      f.delete();
+    }
+  }
+
+  private void writeMeta(Entry entry) throws IOException {
+    String name = CMUtils.getMD5(entry.key);
+    File temp = new File(directory, name + META_SUFFIX + TEMP_SUFFIX);
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp)));
+    try {
+      out.writeUTF(entry.key);
+      writeString(out, entry.contentType);
+      writeString(out, entry.etag);
+      writeString(out, entry.lastModified);
+      out.writeLong(entry.storedAt);
+      out.writeLong(entry.maxAge);
+      out.writeBoolean(entry.mustRevalidate);
+    } finally {
+      out.close();
+    }
+    File meta = new File(directory, name + META_SUFFIX);
+    meta.delete();
+    if (!temp.renameTo(meta)) {
+      temp.delete();
+      throw new IOException("Could not save response metadata for " + entry.key);
+    }
+  }
+
+  /**
+   * Removes the least recently used responses until the cache fits its size
+   */
+  private void trim() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long size = 0;
+    for (File f : files) {
+      size += f.length();
+    }
+    if (size <= maxBytes) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File lhs, File rhs) {
+        long l = lhs.lastModified();
+        long r = rhs.lastModified();
+        return l < r ? -1 : (l == r ? 0 : 1);
+      }
+    });
+    for (File f : files) {
+      if (size <= maxBytes) {
+        break;
+      }
+      //Temporal files are being written by a response still in progress
+      if (f.getName().endsWith(TEMP_SUFFIX)) {
+        continue;
+      }
+      size -= f.length();
+      f.delete();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * Metadata of a cached response, instances are immutable
+   */
+  public static class Entry {
+    private final String key;
+    private final String contentType;
+    private final String etag;
+    private final String lastModified;
+    private final long storedAt;
+    private final long maxAge;
+    private final boolean mustRevalidate;
+    private final File bodyFile;
+
+    /**
+     * Constructor
+     *
+     * @param key
+     * 	Key of the response, ej. the request URL
+     * @param contentType
+     * 	Response content type, could be null
+     * @param etag
+     * 	ETag validator, could be null
+     * @param lastModified
+     * 	Last-Modified validator, could be null
+     * @param storedAt
+     * 	Time when the response was received or revalidated, in milliseconds
+     * @param maxAge
+     * 	Time while the response is fresh, in milliseconds, 0 if it must always be revalidated
+     * @param mustRevalidate
+     * 	True if the response must not be used once it is stale
+     * @param bodyFile
+     * 	File with the response body, null if the response is not cached yet
+     */
+    public Entry(String key, String contentType, String etag, String lastModified, long storedAt,
+        long maxAge, boolean mustRevalidate, File bodyFile) {
+      this.key = key;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.storedAt = storedAt;
+      this.maxAge = maxAge;
+      this.mustRevalidate = mustRevalidate;
+      this.bodyFile = bodyFile;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    public String getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * @return Time while the response is fresh, in milliseconds
+     */
+    public long getMaxAge() {
+      return maxAge;
+    }
+
+    public boolean isMustRevalidate() {
+      return mustRevalidate;
+    }
+
+    public File getBodyFile() {
+      return bodyFile;
+    }
+
+    /**
+     * @return True if the response has a validator, so it could be revalidated with a
+     * conditional request
+     */
+    public boolean hasValidators() {
+      return etag != null || lastModified != null;
+    }
+
+    /**
+     * @param now
+     * 	Current time in milliseconds
+     * @return True if the response could be used without revalidating it
+     */
+    public boolean isFresh(long now) {
+      return now - storedAt < maxAge;
+    }
+
+    /**
+     * @param now
+     * 	Current time in milliseconds
+     * @return Milliseconds since the response became stale, 0 or less if it is fresh
+     */
+    public long getStaleness(long now) {
+      return now - storedAt - maxAge;
+    }
+
+    /**
+     * Creates a revalidated copy of this entry, new validators replace the current ones
+     *
+     * @param etag
+     * 	New ETag, null to keep the current one
+     * @param lastModified
+     * 	New Last-Modified, null to keep the current one
+     * @param storedAt
+     * 	Time when the response was revalidated, in milliseconds
+     * @param maxAge
+     * 	New time while the response is fresh, in milliseconds
+     * @param mustRevalidate
+     * 	True if the response must not be used once it is stale
+     * @return The revalidated entry
+     */
+    public Entry revalidated(String etag, String lastModified, long storedAt, long maxAge,
+        boolean mustRevalidate) {
+      return new Entry(key, contentType, etag != null ? etag : this.etag,
+                       lastModified != null ? lastModified : this.lastModified, storedAt, maxAge,
+                       mustRevalidate, bodyFile);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * File: RetryPolicy
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Retry policy with exponential backoff and jitter for the WS requests
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.util.Random;
+
+/**
+ * Retry policy with exponential backoff and full jitter for the WS requests, the delay before
+ * each retry is a random value between 0 and the base delay multiplied by 2 for each previous
+ * attempt, up to a maximum delay. The randomness spreads the retries of several clients so they
+ * do not hit a recovering server at the same time
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class RetryPolicy {
+
+  /**
+   * Default policy, 3 attempts starting with a delay of 500 ms up to 10 s
+   */
+  public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 10000);
+
+  /**
+   * Policy that never retries
+   */
+  public static final RetryPolicy NO_RETRY = new RetryPolicy(1, 0, 0);
+
+  private final int maxAttempts;
+  private final long baseDelay;
+  private final long maxDelay;
+  private final Random random;
+
+  /**
+   * Constructor
+   *
+   * @param maxAttempts
+   * 	Maximum number of attempts, including the first one
+   * @param baseDelay
+   * 	Maximum delay before the first retry, in milliseconds
+   * @param maxDelay
+   * 	Maximum delay before any retry, in milliseconds
+   */
+  public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+    this(maxAttempts, baseDelay, maxDelay, new Random());
+  }
+
+  /**
+   * Constructor with the random generator for the jitter, ej. a seeded one for reproducible
+   * delays
+   *
+   * @param maxAttempts
+   * 	Maximum number of attempts, including the first one
+   * @param baseDelay
+   * 	Maximum delay before the first retry, in milliseconds
+   * @param maxDelay
+   * 	Maximum delay before any retry, in milliseconds
+   * @param random
+   * 	Random generator for the jitter
+   */
+  public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, Random random) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    this.random = random;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Checks if a request could be retried
+   *
+   * @param request
+   * 	Failed request
+   * @param attempt
+   * 	Number of the failed attempt, starting at 1
+   * @param sent
+   * 	False if the request surely did not reach the server, ej. the connection was refused
+   * @return True if the request should be retried
+   */
+  public boolean shouldRetry(WSRequest request, int attempt, boolean sent) {
+    //Non idempotent requests could be applied twice if they reached the server
+    return attempt < maxAttempts && (request.isIdempotent() || !sent);
+  }
+
+  /**
+   * Computes the delay before a retry
+   *
+   * @param attempt
+   * 	Number of the failed attempt, starting at 1
+   * @return The delay in milliseconds
+   */
+  public long getDelay(int attempt) {
+    long ceiling = baseDelay << Math.min(attempt - 1, 30);
+    if (ceiling <= 0 || ceiling > maxDelay) {
+      ceiling = maxDelay;
+    }
+    if (ceiling <= 0) {
+      return 0;
+    }
+    synchronized (random) {
+      return (long) (random.nextDouble() * ceiling);
+    }
+  }
+}
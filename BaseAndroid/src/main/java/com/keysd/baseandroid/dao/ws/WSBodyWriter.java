@@ -0,0 +1,48 @@
+/**
+ * File: WSBodyWriter
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Request body that is written directly into the connection stream
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Request body that is serialized directly into the connection stream, so it is never held in
+ * memory as a String or byte array, see {@link WSRequest#setBody(WSBodyWriter)}.
+ * <p/>
+ * A request could be executed more than once, ej. when it is retried by a
+ * {@link ResilientTransport}, so {@link #writeTo(java.io.OutputStream)} must write the same body
+ * every time it is called
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public interface WSBodyWriter {
+
+  /**
+   * @return Body content type, ej. application/json; charset=UTF-8
+   */
+  public String getContentType();
+
+  /**
+   * @return The body length in bytes, or -1 if it is unknown until it is written, in that case
+   * the body is sent with chunked transfer encoding
+   */
+  public long getContentLength();
+
+  /**
+   * Writes the body, the stream must not be closed
+   *
+   * @param out
+   * 	Connection stream
+   * @throws java.io.IOException
+   * 	If the body could not be written
+   */
+  public void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,123 @@
+/**
+ * File: WSCall
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * A single WS client invocation that could be executed concurrently with others
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A single WS client invocation that could be executed concurrently with others by a
+ * {@link WSCallExecutor}. Use the factory methods for the common invocations of
+ * {@link WSClient}, or extend it for custom calls
+ *
+ * @param <T>
+ * 	Type of the response objects
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public abstract class WSCall<T> {
+
+  private final String name;
+
+  /**
+   * Constructor
+   *
+   * @param name
+   * 	Name that identifies the call on the results, ej. the method name
+   */
+  protected WSCall(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Executes the call on the current thread
+   *
+   * @return The response objects
+   *
+   * @throws InvalidResponseException
+   * 	If the server response contains invalid fields or does not full fill the established protocol
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+   * 	If the server response contains an error message
+   */
+  public abstract List<T> execute()
+      throws InvalidResponseException, IOException, ResponseErrorException;
+
+  /**
+   * Creates a call to {@link WSClient#invokeGET(String, String)}
+   *
+   * @param client
+   * 	Client to be used
+   * @param methodName
+   * 	Name of the method that will be invoked
+   * @param data
+   * 	Data to be sent to the server, must be on GET parameters format
+   * @return The call
+   */
+  public static <T1, T2> WSCall<T2> get(final WSClient<T1, T2> client, final String methodName,
+      final String data) {
+    return new WSCall<T2>(methodName) {
+      @Override
+      public List<T2> execute()
+          throws InvalidResponseException, IOException, ResponseErrorException {
+        return client.invokeGET(methodName, data);
+      }
+    };
+  }
+
+  /**
+   * Creates a call to {@link WSClient#invokePOST(String, String)}
+   *
+   * @param client
+   * 	Client to be used
+   * @param methodName
+   * 	Name of the method that will be invoked
+   * @param jsonRequest
+   * 	Service request parameters in json format
+   * @return The call
+   */
+  public static <T1, T2> WSCall<T2> post(final WSClient<T1, T2> client, final String methodName,
+      final String jsonRequest) {
+    return new WSCall<T2>(methodName) {
+      @Override
+      public List<T2> execute()
+          throws InvalidResponseException, IOException, ResponseErrorException {
+        return client.invokePOST(methodName, jsonRequest);
+      }
+    };
+  }
+
+  /**
+   * Creates a call to {@link WSClient#invokePOST(String, Object)}
+   *
+   * @param client
+   * 	Client to be used
+   * @param methodName
+   * 	Name of the method that will be invoked
+   * @param requestData
+   * 	Object to be used for fill out request parameters
+   * @return The call
+   */
+  public static <T1, T2> WSCall<T2> post(final WSClient<T1, T2> client, final String methodName,
+      final T1 requestData) {
+    return new WSCall<T2>(methodName) {
+      @Override
+      public List<T2> execute()
+          throws InvalidResponseException, IOException, ResponseErrorException {
+        return client.invokePOST(methodName, requestData);
+      }
+    };
+  }
+}
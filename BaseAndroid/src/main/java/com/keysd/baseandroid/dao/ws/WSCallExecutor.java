@@ -0,0 +1,129 @@
+/**
+ * File: WSCallExecutor
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Executes groups of WS calls concurrently with a parallelism limit
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executes groups of WS calls concurrently, at most the configured number of calls run at the
+ * same time, so the total time of a group is close to its slowest calls instead of the sum of
+ * all of them. The result or the error of every call is returned, in the same order of the calls.
+ * <p/>
+ * Calls to the same host are also limited by the transport, see
+ * {@link HttpURLConnectionTransport#getMaxConnectionsPerHost()}, so a parallelism above that
+ * limit only helps when calling several hosts
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class WSCallExecutor {
+
+  /**
+   * Default number of concurrent calls
+   */
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  private final ExecutorService executor;
+
+  /**
+   * Constructor with the default parallelism
+   */
+  public WSCallExecutor() {
+    this(DEFAULT_PARALLELISM);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param parallelism
+   * 	Maximum number of calls executed at the same time
+   */
+  public WSCallExecutor(int parallelism) {
+    executor = Executors.newFixedThreadPool(parallelism);
+  }
+
+  /**
+   * Executes the calls concurrently and waits for all of them, must not be called from the UI
+   * thread. For calls with different response types use Object as type
+   *
+   * @param calls
+   * 	Calls to be executed
+   * @return The result of each call, in the same order of the calls
+   *
+   * @throws InterruptedException
+   * 	If the thread is interrupted while waiting, the calls that have not started are cancelled
+   */
+  public <T> List<WSCallResult<T>> executeAll(List<? extends WSCall<? extends T>> calls)
+      throws InterruptedException {
+    List<Future<WSCallResult<T>>> futures = new ArrayList<Future<WSCallResult<T>>>(calls.size());
+    for (WSCall<? extends T> call : calls) {
+      futures.add(executor.submit(new CallTask<T>(call)));
+    }
+    List<WSCallResult<T>> results = new ArrayList<WSCallResult<T>>(calls.size());
+    try {
+      for (Future<WSCallResult<T>> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          //Checked exceptions are part of the result, so this is an unexpected error
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Future<WSCallResult<T>> future : futures) {
+        future.cancel(true);
+      }
+      throw e;
+    }
+    return results;
+  }
+
+  /**
+   * Stops the executor threads, calls in progress are completed
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Executes a call catching its errors
+   */
+  private static class CallTask<T> implements Callable<WSCallResult<T>> {
+    private final WSCall<? extends T> call;
+
+    CallTask(WSCall<? extends T> call) {
+      this.call = call;
+    }
+
+    @Override
+    public WSCallResult<T> call() {
+      long start = System.currentTimeMillis();
+      try {
+        List<? extends T> result = call.execute();
+        return new WSCallResult<T>(call.getName(), result, System.currentTimeMillis() - start);
+      } catch (InvalidResponseException e) {
+        return new WSCallResult<T>(call.getName(), e, System.currentTimeMillis() - start);
+      } catch (ResponseErrorException e) {
+        return new WSCallResult<T>(call.getName(), e, System.currentTimeMillis() - start);
+      } catch (IOException e) {
+        return new WSCallResult<T>(call.getName(), e, System.currentTimeMillis() - start);
+      } catch (RuntimeException e) {
+        return new WSCallResult<T>(call.getName(), e, System.currentTimeMillis() - start);
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * File: WSCallResult
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Result or error of a single WS call executed as part of a group
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result or error of a single WS call executed as part of a group, so a failed call does not
+ * discard the results of the others
+ *
+ * @param <T>
+ * 	Type of the response objects
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class WSCallResult<T> {
+
+  private final String name;
+  private final List<T> result;
+  private final Exception error;
+  private final long duration;
+
+  /**
+   * Constructor for a successful call
+   *
+   * @param name
+   * 	Call name
+   * @param result
+   * 	Response objects
+   * @param duration
+   * 	Call duration in milliseconds
+   */
+  public WSCallResult(String name, List<? extends T> result, long duration) {
+    this.name = name;
+    this.result = result != null ? Collections.unmodifiableList(result) : null;
+    this.error = null;
+    this.duration = duration;
+  }
+
+  /**
+   * Constructor for a failed call
+   *
+   * @param name
+   * 	Call name
+   * @param error
+   * 	Error thrown by the call, ej. a {@link ResponseErrorException}
+   * @param duration
+   * 	Call duration in milliseconds
+   */
+  public WSCallResult(String name, Exception error, long duration) {
+    this.name = name;
+    this.result = null;
+    this.error = error;
+    this.duration = duration;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The response objects, null if the call failed
+   */
+  public List<T> getResult() {
+    return result;
+  }
+
+  /**
+   * @return The error thrown by the call, null if it was successful
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  public boolean isSuccessful() {
+    return error == null;
+  }
+
+  /**
+   * @return Call duration in milliseconds
+   */
+  public long getDuration() {
+    return duration;
+  }
+
+  @Override
+  public String toString() {
+    return "WSCallResult{" +
+        "name='" + name + '\'' +
+        ", successful=" + isSuccessful() +
+        ", error=" + error +
+        ", duration=" + duration +
+        '}';
+  }
+}
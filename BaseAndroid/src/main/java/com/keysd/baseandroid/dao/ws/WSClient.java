@@ -10,29 +10,35 @@
 package com.keysd.baseandroid.dao.ws;
 
 import android.util.Log;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.keysd.baseandroid.model.ws.GsonRegistry;
+import com.keysd.baseandroid.model.ws.JsonArrayIterator;
 import com.keysd.baseandroid.model.ws.MessageErrorCode;
 import com.keysd.baseandroid.util.KeyDictionary;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.AbstractHttpEntity;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 import org.json.JSONObject;
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Class that contains all the common base methods that should be implemented by the WS clients
@@ -48,8 +54,25 @@ import java.util.List;
  */
 public abstract class WSClient<T1, T2> {
 
-  private static final Integer TIME_OUT = 10000;
+  /**
+   * Default time out for establish the connection and for wait for the response
+   */
+  public static final int DEFAULT_TIME_OUT = 10000;
+
+  protected static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
+  protected static final String CONTENT_TYPE_FORM =
+      "application/x-www-form-urlencoded; charset=UTF-8";
+  private static final String UTF_8 = "UTF-8";
+  private static final String BATCH_METHOD = "method";
+  private static final String BATCH_PARAMS = "params";
+
   private String service;
+  private WSTransport transport = HttpURLConnectionTransport.getInstance();
+  private int[] defaultTimeouts = {DEFAULT_TIME_OUT, DEFAULT_TIME_OUT};
+  private final Map<String, int[]> methodTimeouts = new HashMap<String, int[]>();
+  private boolean gzipRequests;
+  private int chunkLength;
+  private final Set<String> idempotentMethods = new HashSet<String>();
 
   /**
    * Default constructor for ws client
@@ -74,6 +97,22 @@ public abstract class WSClient<T1, T2> {
   protected abstract List<BasicNameValuePair> buildRequestContent(String methodName,
       T1 requestParams);
 
+  /**
+   * Method that creates the body that will be written directly into the connection on the invoke
+   * step, so the request object is never materialized as a String or as a list of parameters, ej.
+   * a {@link JsonBodyWriter} or a {@link FormBodyWriter}. By default it returns null and
+   * {@link #buildRequestContent(String, Object)} is used instead
+   *
+   * @param methodName
+   * 	Web Service method name that will be invoked.
+   * @param requestParams
+   * 	Object to be used as parameters to invoke que web service
+   * @return The request body or null for using {@link #buildRequestContent(String, Object)}
+   */
+  protected WSBodyWriter buildRequestBody(String methodName, T1 requestParams) {
+    return null;
+  }
+
   /**
    * Method that evaluates the web service method name that was invoked. It parses the extracted
    * data and passes the
@@ -116,8 +155,9 @@ public abstract class WSClient<T1, T2> {
    */
   public List<T2> invokePOST(String methodName, T1 requestData)
       throws InvalidResponseException, IOException, ResponseErrorException {
-    String jsonServerResponse = makeWSPostRequest(methodName,
-                                                  buildRequestContent(methodName, requestData));
+    WSBodyWriter body = buildRequestBody(methodName, requestData);
+    String jsonServerResponse = body != null ? makeWSPostRequest(methodName, body) :
+        makeWSPostRequest(methodName, buildRequestContent(methodName, requestData));
 
     //Receiving and parsing the response
     if (jsonServerResponse != null) {
@@ -170,6 +210,203 @@ public abstract class WSClient<T1, T2> {
     }
   }
 
+  /**
+   * Invokes a method through GET whose response is a JSON array, the response is parsed while
+   * iterating so it is never fully loaded into memory. Use it for large responses, ej. catalogs
+   *
+   * @param methodName
+   * 	Name of the method that will be invoked
+   * @param data
+   * 	Data to be sent to the server, must be on GET parameters format
+   * @param type
+   * 	Type of the array elements
+   * @return An iterator over the response objects, it must be closed once it is not needed so
+   * the connection is released
+   *
+   * @throws InvalidResponseException
+   * 	If the server response is not a JSON array
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+   * 	If the server response contains an error message
+   * @see #invokeGET(String, String)
+   */
+  public JsonArrayIterator<T2> invokeGETIterator(String methodName, String data, Class<T2> type)
+      throws InvalidResponseException, IOException, ResponseErrorException {
+    return openIterator(buildRequest(WSRequest.METHOD_GET, methodName, data), type);
+  }
+
+  /**
+   * Invokes a method through POST whose response is a JSON array, the response is parsed while
+   * iterating so it is never fully loaded into memory. Use it for large responses, ej. catalogs
+   *
+   * @param methodName
+   * 	Name of the method that will be invoked
+   * @param jsonRequest
+   * 	Service request parameters in json format
+   * @param type
+   * 	Type of the array elements
+   * @return An iterator over the response objects, it must be closed once it is not needed so
+   * the connection is released
+   *
+   * @throws InvalidResponseException
+   * 	If the server response is not a JSON array
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+   * 	If the server response contains an error message
+   * @see #invokePOST(String, String)
+   */
+  public JsonArrayIterator<T2> invokePOSTIterator(String methodName, String jsonRequest,
+      Class<T2> type) throws InvalidResponseException, IOException, ResponseErrorException {
+    WSRequest request = buildRequest(WSRequest.METHOD_POST, methodName, null);
+    request.setBody(CONTENT_TYPE_JSON, jsonRequest.getBytes(UTF_8));
+    return openIterator(request, type);
+  }
+
+  /**
+   * Executes a request and opens an iterator over its response array. If the response is not an
+   * array, it is read fully and passed to {@link #manageErrors(String)}
+   *
+   * @param request
+   * 	Request to be executed
+   * @param type
+   * 	Type of the array elements
+   * @return An iterator over the response objects
+   *
+   * @throws InvalidResponseException
+   * 	If the server response is not a JSON array
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   * @throws com.keysd.baseandroid.dao.ws.ResponseErrorException
+   * 	If the server response contains an error message
+   */
+  protected JsonArrayIterator<T2> openIterator(WSRequest request, Class<T2> type)
+      throws InvalidResponseException, IOException, ResponseErrorException {
+    Log.d(KeyDictionary.TAG, "Sending request to: " + request.getUrl());
+    WSResponse response = transport.execute(request);
+    if (response.getBody() == null) {
+      throw new InvalidResponseException("Server response invalid or unsupported format");
+    }
+    boolean streaming = false;
+    try {
+      JsonReader reader = new JsonReader(new InputStreamReader(response.getBody(), UTF_8));
+      reader.setLenient(true);
+      if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+        //Not a list, so it should be a small error message
+        manageErrors(new JsonParser().parse(reader).toString());
+        throw new InvalidResponseException("Server response invalid or unsupported format");
+      }
+      streaming = true;
+      return new JsonArrayIterator<T2>(reader, GsonRegistry.getGson(), type);
+    } catch (MalformedJsonException ex) {
+      throw new InvalidResponseException("Server response invalid or unsupported format");
+    } catch (EOFException ex) {
+      throw new InvalidResponseException("Server response invalid or unsupported format");
+    } catch (JsonParseException ex) {
+      throw new InvalidResponseException("Server response invalid or unsupported format");
+    } finally {
+      if (!streaming) {
+        response.close();
+      }
+    }
+  }
+
+  /**
+   * Invokes several methods on a single POST, for servers that support a batch method. The
+   * envelope is created by {@link #buildBatchEnvelope(java.util.List)} and the response is split
+   * by {@link #splitBatchResponse(String, int)}, each part is processed as the response of its
+   * method, so an error on a method does not discard the results of the others
+   *
+   * @param batchMethodName
+   * 	Name of the batch method of the server
+   * @param entries
+   * 	Methods to invoke, with their parameters
+   * @return The result of each method, in the same order of the entries
+   *
+   * @throws InvalidResponseException
+   * 	If the batch response could not be split
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   */
+  public List<WSCallResult<T2>> invokePOSTBatch(String batchMethodName, List<BatchEntry> entries)
+      throws InvalidResponseException, IOException {
+    long start = System.currentTimeMillis();
+    String jsonServerResponse = makeWSPostRequest(batchMethodName, buildBatchEnvelope(entries));
+    if (jsonServerResponse == null) {
+      throw new InvalidResponseException("Server response invalid or unsupported format");
+    }
+    List<String> responses = splitBatchResponse(jsonServerResponse, entries.size());
+    long duration = System.currentTimeMillis() - start;
+
+    List<WSCallResult<T2>> results = new ArrayList<WSCallResult<T2>>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      String methodName = entries.get(i).getMethodName();
+      try {
+        manageErrors(responses.get(i));
+        results.add(new WSCallResult<T2>(methodName, manageResponse(methodName, responses.get(i)),
+                                         duration));
+      } catch (ResponseErrorException ex) {
+        results.add(new WSCallResult<T2>(methodName, ex, duration));
+      } catch (JsonSyntaxException ex) {
+        results.add(new WSCallResult<T2>(methodName, new InvalidResponseException(
+            "Server response invalid or unsupported format"), duration));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Creates the batch request body, by default a JSON array with an object for each method with
+   * the fields "method" and "params". Override it for other server formats
+   *
+   * @param entries
+   * 	Methods to invoke, with their parameters
+   * @return The request body
+   */
+  protected String buildBatchEnvelope(List<BatchEntry> entries) {
+    JsonArray envelope = new JsonArray();
+    JsonParser jsonParser = new JsonParser();
+    for (BatchEntry entry : entries) {
+      JsonObject call = new JsonObject();
+      call.addProperty(BATCH_METHOD, entry.getMethodName());
+      call.add(BATCH_PARAMS, jsonParser.parse(entry.getJsonRequest()));
+      envelope.add(call);
+    }
+    return envelope.toString();
+  }
+
+  /**
+   * Splits the batch response into the response of each method, by default the response must be
+   * a JSON array with an element for each method, in the same order. Override it for other
+   * server formats
+   *
+   * @param jsonServerResponse
+   * 	Batch response
+   * @param expected
+   * 	Number of invoked methods
+   * @return The response of each method
+   *
+   * @throws InvalidResponseException
+   * 	If the batch response does not have the expected format
+   */
+  protected List<String> splitBatchResponse(String jsonServerResponse, int expected)
+      throws InvalidResponseException {
+    try {
+      JsonElement element = new JsonParser().parse(jsonServerResponse);
+      if (!element.isJsonArray() || element.getAsJsonArray().size() != expected) {
+        throw new InvalidResponseException("Server response invalid or unsupported format");
+      }
+      List<String> responses = new ArrayList<String>(expected);
+      for (JsonElement response : element.getAsJsonArray()) {
+        responses.add(response.toString());
+      }
+      return responses;
+    } catch (JsonParseException ex) {
+      throw new InvalidResponseException("Server response invalid or unsupported format");
+    }
+  }
+
   /**
    * Prints out the error list
    *
@@ -226,7 +463,11 @@ public abstract class WSClient<T1, T2> {
    * @param waitData
    * 	time out for wait for the response of the server
    * @return An object with the Http time out parameters established
+   *
+   * @deprecated Requests are executed by the {@link WSTransport}, use
+   * {@link #setTimeouts(String, int, int)} instead
    */
+  @Deprecated
   protected HttpParams getTimeoutParameters(int establish, int waitData) {
     // ------ Request Set Timeouts
     HttpParams httpParameters = new BasicHttpParams();
@@ -235,6 +476,142 @@ public abstract class WSClient<T1, T2> {
     return httpParameters;
   }
 
+  /**
+   * Sets the transport used for executing the requests, by default the shared
+   * {@link HttpURLConnectionTransport} is used so connections are reused between all the clients.
+   * Wrap it with a {@link CachingTransport} for caching the GET responses or with a
+   * {@link ResilientTransport} for retrying the failed requests
+   *
+   * @param transport
+   * 	Transport to be used
+   */
+  public void setTransport(WSTransport transport) {
+    this.transport = transport;
+  }
+
+  public WSTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Sets the time outs used for the methods without specific time outs
+   *
+   * @param connectTimeout
+   * 	Time out for establish the connection with the server, in milliseconds
+   * @param readTimeout
+   * 	Time out for wait for the response of the server, in milliseconds
+   */
+  public void setDefaultTimeouts(int connectTimeout, int readTimeout) {
+    defaultTimeouts = new int[]{connectTimeout, readTimeout};
+  }
+
+  /**
+   * Sets the time outs for a method, ej. a longer read time out for a method that generates a
+   * report on the server
+   *
+   * @param methodName
+   * 	Name of the method
+   * @param connectTimeout
+   * 	Time out for establish the connection with the server, in milliseconds
+   * @param readTimeout
+   * 	Time out for wait for the response of the server, in milliseconds
+   */
+  public void setTimeouts(String methodName, int connectTimeout, int readTimeout) {
+    synchronized (methodTimeouts) {
+      methodTimeouts.put(methodName, new int[]{connectTimeout, readTimeout});
+    }
+  }
+
+  /**
+   * @param gzipRequests
+   * 	True if the POST bodies should be compressed with gzip, the server must support
+   * 	Content-Encoding on requests
+   */
+  public void setGzipRequests(boolean gzipRequests) {
+    this.gzipRequests = gzipRequests;
+  }
+
+  /**
+   * @param chunkLength
+   * 	Size of the chunks in bytes for sending the POST bodies with chunked transfer encoding, ej.
+   * 	for large uploads, 0 for sending them with their length when it is known
+   */
+  public void setChunkLength(int chunkLength) {
+    this.chunkLength = chunkLength;
+  }
+
+  /**
+   * Marks a POST method as idempotent, so it could be retried after a failure by a
+   * {@link ResilientTransport}, ej. a query method that uses POST for sending its parameters
+   *
+   * @param methodName
+   * 	Name of the method
+   */
+  public void setIdempotent(String methodName) {
+    synchronized (idempotentMethods) {
+      idempotentMethods.add(methodName);
+    }
+  }
+
+  /**
+   * @param methodName
+   * 	Name of the method
+   * @return True if the method was marked as idempotent
+   */
+  protected boolean isIdempotent(String methodName) {
+    synchronized (idempotentMethods) {
+      return idempotentMethods.contains(methodName);
+    }
+  }
+
+  /**
+   * Creates a request for a method of this service, with the time outs of the method
+   *
+   * @param httpMethod
+   * 	HTTP method, ej. {@link WSRequest#METHOD_POST}
+   * @param methodName
+   * 	Name of the method, this will be appended to the service URL
+   * @param query
+   * 	Query parameters already encoded, could be null
+   * @return The request
+   */
+  protected WSRequest buildRequest(String httpMethod, String methodName, String query) {
+    String url = service + "/" + methodName;
+    if (query != null) {
+      url += "?" + query;
+    }
+    WSRequest request = new WSRequest(httpMethod, url);
+    int[] timeouts;
+    synchronized (methodTimeouts) {
+      timeouts = methodTimeouts.get(methodName);
+    }
+    if (timeouts == null) {
+      timeouts = defaultTimeouts;
+    }
+    request.setTimeouts(timeouts[0], timeouts[1]);
+    request.setGzipBody(gzipRequests);
+    request.setChunkLength(chunkLength);
+    request.setService(service);
+    request.setIdempotent(WSRequest.METHOD_GET.equals(httpMethod) ||
+                              isIdempotent(methodName));
+    return request;
+  }
+
+  /**
+   * Executes a request through the transport and reads the full response
+   *
+   * @param request
+   * 	Request to be executed
+   * @return A String with the server response or null if the response has no body
+   *
+   * @throws java.io.IOException
+   * 	If the connection could not be done due to network problems
+   */
+  protected String executeRequest(WSRequest request) throws IOException {
+    Log.d(KeyDictionary.TAG, "Sending request to: " + request.getUrl());
+    return transport.execute(request).getBodyAsString();
+  }
+
   /**
    * Makes a WS request through POST to the WS server sending the corresponding data
    *
@@ -247,21 +624,7 @@ public abstract class WSClient<T1, T2> {
    * @throws java.io.IOException
    */
   protected String makeWSPostRequest(String methodName, JSONObject data) throws IOException {
-    HttpClient httpClient = new DefaultHttpClient(getTimeoutParameters(TIME_OUT, TIME_OUT));
-    HttpPost post = new HttpPost(service + "/" + methodName);
-    post.setHeader("content-type", "application/json");
-
-    StringEntity entity = new StringEntity(data.toString(), HTTP.UTF_8);
-    post.setEntity(entity);
-
-    HttpResponse response = httpClient.execute(post);
-
-    HttpEntity entityRes = response.getEntity();
-    if (entityRes != null) {
-      return EntityUtils.toString(response.getEntity(), HTTP.UTF_8);
-    } else {
-      return null;
-    }
+    return makeWSPostRequest(methodName, data.toString());
   }
 
   /**
@@ -276,22 +639,9 @@ public abstract class WSClient<T1, T2> {
    * @throws java.io.IOException
    */
   protected String makeWSPostRequest(String methodName, String data) throws IOException {
-    HttpClient httpClient = new DefaultHttpClient(getTimeoutParameters(TIME_OUT, TIME_OUT));
-    HttpPost post = new HttpPost(service + "/" + methodName);
-    Log.d(KeyDictionary.TAG, "Sending request to: " + service + "/" + methodName);
-    post.setHeader("content-type", "application/json");
-
-    StringEntity entity = new StringEntity(data, HTTP.UTF_8);
-    post.setEntity(entity);
-
-    HttpResponse response = httpClient.execute(post);
-
-    HttpEntity entityRes = response.getEntity();
-    if (entityRes != null) {
-      return EntityUtils.toString(response.getEntity(), HTTP.UTF_8);
-    } else {
-      return null;
-    }
+    WSRequest request = buildRequest(WSRequest.METHOD_POST, methodName, null);
+    request.setBody(CONTENT_TYPE_JSON, data.getBytes(UTF_8));
+    return executeRequest(request);
   }
 
   /**
@@ -309,23 +659,27 @@ public abstract class WSClient<T1, T2> {
    */
   protected String makeWSPostRequest(String methodName, List<BasicNameValuePair> data) throws
       IOException {
-    HttpClient httpClient = new DefaultHttpClient(getTimeoutParameters(TIME_OUT, TIME_OUT));
-    HttpPost post = new HttpPost(service + "/" + methodName);
-
-    AbstractHttpEntity entity;
-    entity = new UrlEncodedFormEntity(data, HTTP.UTF_8);
-    //Log.d(KeyDictionary.TAG, "Plain Content (URL format): " + entityData);
-
-    post.setEntity(entity);
-
-    HttpResponse response = httpClient.execute(post);
+    WSRequest request = buildRequest(WSRequest.METHOD_POST, methodName, null);
+    request.setBody(CONTENT_TYPE_FORM, encodeParameters(data).getBytes(UTF_8));
+    return executeRequest(request);
+  }
 
-    HttpEntity entityRes = response.getEntity();
-    if (entityRes != null) {
-      return EntityUtils.toString(response.getEntity(), HTTP.UTF_8);
-    } else {
-      return null;
-    }
+  /**
+   * Makes a WS request through POST to the WS server writing the body directly into the
+   * connection
+   *
+   * @param methodName
+   * 	Name of the method to post, this will be appended to the service URL
+   * @param body
+   * 	Request body
+   * @return A String encoded in JSON with the server response or null if the response is invalid
+   *
+   * @throws java.io.IOException
+   */
+  protected String makeWSPostRequest(String methodName, WSBodyWriter body) throws IOException {
+    WSRequest request = buildRequest(WSRequest.METHOD_POST, methodName, null);
+    request.setBody(body);
+    return executeRequest(request);
   }
 
   /**
@@ -337,30 +691,63 @@ public abstract class WSClient<T1, T2> {
    * 	Data to be sent to the server, must be on GET parameters format
    * @return A string decoded with JSON with the server response
    *
-   * @throws org.apache.http.client.ClientProtocolException
    * @throws IOException
    */
   protected String makeWSGetRequest(String methodName, String data) throws IOException {
-    HttpClient httpClient = new DefaultHttpClient(getTimeoutParameters(TIME_OUT, TIME_OUT));
-    String url = service + "/" + methodName + "?" + data;
-    HttpGet get = new HttpGet(url);
-
-    HttpResponse resp;
-    resp = httpClient.execute(get);
-    HttpEntity responseEntity = resp.getEntity();
-    if (responseEntity == null) {
-      return null;
-    }
-    BufferedReader reader = new BufferedReader(
-        new InputStreamReader(resp.getEntity().getContent(), "UTF-8"));
+    return executeRequest(buildRequest(WSRequest.METHOD_GET, methodName, data));
+  }
 
-    //Read the full server answer
+  /**
+   * Encodes the parameters in application/x-www-form-urlencoded format
+   *
+   * @param data
+   * 	Parameters to encode
+   * @return The encoded parameters
+   *
+   * @throws java.io.UnsupportedEncodingException
+   * 	If UTF-8 is not supported
+   */
+  protected static String encodeParameters(List<BasicNameValuePair> data)
+      throws UnsupportedEncodingException {
     StringBuilder builder = new StringBuilder();
-    String aux = "";
-
-    while ((aux = reader.readLine()) != null) {
-      builder.append(aux);
+    for (BasicNameValuePair pair : data) {
+      if (builder.length() > 0) {
+        builder.append('&');
+      }
+      builder.append(URLEncoder.encode(pair.getName(), UTF_8));
+      if (pair.getValue() != null) {
+        builder.append('=').append(URLEncoder.encode(pair.getValue(), UTF_8));
+      }
     }
     return builder.toString();
   }
+
+  /**
+   * A method invocation that is part of a batch request
+   */
+  public static class BatchEntry {
+    private final String methodName;
+    private final String jsonRequest;
+
+    /**
+     * Constructor
+     *
+     * @param methodName
+     * 	Name of the method that will be invoked
+     * @param jsonRequest
+     * 	Method request parameters in json format
+     */
+    public BatchEntry(String methodName, String jsonRequest) {
+      this.methodName = methodName;
+      this.jsonRequest = jsonRequest;
+    }
+
+    public String getMethodName() {
+      return methodName;
+    }
+
+    public String getJsonRequest() {
+      return jsonRequest;
+    }
+  }
 }
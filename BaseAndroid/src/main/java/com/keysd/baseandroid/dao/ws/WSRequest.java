@@ -0,0 +1,186 @@
+/**
+ * File: WSRequest
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * HTTP request to be executed by a WSTransport
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP request to be executed by a {@link WSTransport}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class WSRequest {
+
+  public static final String METHOD_GET = "GET";
+  public static final String METHOD_POST = "POST";
+
+  private final String method;
+  private final String url;
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+  private byte[] body;
+  private WSBodyWriter bodyWriter;
+  private int chunkLength;
+  private int connectTimeout;
+  private int readTimeout;
+  private boolean gzipBody;
+  private boolean idempotent;
+  private String service;
+
+  /**
+   * Constructor
+   *
+   * @param method
+   * 	HTTP method, ej. {@link #METHOD_GET}
+   * @param url
+   * 	Full URL, including the query
+   */
+  public WSRequest(String method, String url) {
+    this.method = method;
+    this.url = url;
+    this.idempotent = METHOD_GET.equals(method);
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Sets a request header, replacing the previous value
+   *
+   * @param name
+   * 	Header name
+   * @param value
+   * 	Header value
+   */
+  public void setHeader(String name, String value) {
+    headers.put(name, value);
+  }
+
+  public byte[] getBody() {
+    return body;
+  }
+
+  /**
+   * Sets the request body and its content type
+   *
+   * @param contentType
+   * 	Body content type, ej. application/json; charset=UTF-8
+   * @param body
+   * 	Encoded body
+   */
+  public void setBody(String contentType, byte[] body) {
+    setHeader("Content-Type", contentType);
+    this.body = body;
+    this.bodyWriter = null;
+  }
+
+  public WSBodyWriter getBodyWriter() {
+    return bodyWriter;
+  }
+
+  /**
+   * Sets a request body that is written directly into the connection stream, replacing the body
+   * set as bytes
+   *
+   * @param bodyWriter
+   * 	Body writer, its content type is set as the request content type
+   */
+  public void setBody(WSBodyWriter bodyWriter) {
+    setHeader("Content-Type", bodyWriter.getContentType());
+    this.bodyWriter = bodyWriter;
+    this.body = null;
+  }
+
+  public int getChunkLength() {
+    return chunkLength;
+  }
+
+  /**
+   * @param chunkLength
+   * 	Size of the chunks in bytes for sending the body with chunked transfer encoding, 0 for
+   * 	sending it with its length when it is known, bodies whose length is unknown are always
+   * 	chunked
+   */
+  public void setChunkLength(int chunkLength) {
+    this.chunkLength = chunkLength;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * Sets the time outs of this request, 0 means no time out
+   *
+   * @param connectTimeout
+   * 	Time out for establish the connection with the server, in milliseconds
+   * @param readTimeout
+   * 	Time out for wait for the response of the server, in milliseconds
+   */
+  public void setTimeouts(int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  public boolean isGzipBody() {
+    return gzipBody;
+  }
+
+  /**
+   * @param gzipBody
+   * 	True if the body should be compressed with gzip, the server must support Content-Encoding
+   * 	on requests
+   */
+  public void setGzipBody(boolean gzipBody) {
+    this.gzipBody = gzipBody;
+  }
+
+  public boolean isIdempotent() {
+    return idempotent;
+  }
+
+  /**
+   * @param idempotent
+   * 	True if executing the request several times has the same effect as executing it once, so
+   * 	it could be retried after a failure, GET requests are idempotent by default
+   */
+  public void setIdempotent(boolean idempotent) {
+    this.idempotent = idempotent;
+  }
+
+  /**
+   * @return The service that the request belongs to, or null if it was not set
+   */
+  public String getService() {
+    return service;
+  }
+
+  /**
+   * @param service
+   * 	The service that the request belongs to, ej. the service URL of the client
+   */
+  public void setService(String service) {
+    this.service = service;
+  }
+}
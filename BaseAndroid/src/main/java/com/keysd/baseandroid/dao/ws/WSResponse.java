@@ -0,0 +1,115 @@
+/**
+ * File: WSResponse
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * HTTP response returned by a WSTransport
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP response returned by a {@link WSTransport}, the body is not read until requested so it
+ * could be streamed. The response must be closed once the body is read, even if it was not read
+ * at all, so the connection is released
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class WSResponse implements Closeable {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final int statusCode;
+  private final Map<String, List<String>> headers;
+  private final InputStream body;
+
+  /**
+   * Constructor
+   *
+   * @param statusCode
+   * 	HTTP status code
+   * @param headers
+   * 	Response headers
+   * @param body
+   * 	Decoded body stream, could be null if the response has no body
+   */
+  public WSResponse(int statusCode, Map<String, List<String>> headers, InputStream body) {
+    this.statusCode = statusCode;
+    this.headers = headers != null ? headers : Collections.<String, List<String>>emptyMap();
+    this.body = body;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Map<String, List<String>> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Gets the first value of a header, header names are case insensitive
+   *
+   * @param name
+   * 	Header name
+   * @return The header value, or null if the response does not have the header
+   */
+  public String getHeader(String name) {
+    for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+      if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null &&
+          !entry.getValue().isEmpty()) {
+        return entry.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return The body stream, could be null if the response has no body
+   */
+  public InputStream getBody() {
+    return body;
+  }
+
+  /**
+   * Reads the full body as an UTF-8 string and closes the response
+   *
+   * @return The body, or null if the response has no body or it is empty
+   *
+   * @throws IOException
+   * 	If the body could not be read
+   */
+  public String getBodyAsString() throws IOException {
+    if (body == null) {
+      return null;
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = body.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.size() > 0 ? out.toString("UTF-8") : null;
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (body != null) {
+      body.close();
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * File: WSTransport
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Transport layer used by the WS clients for executing the HTTP requests
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import java.io.IOException;
+
+/**
+ * Transport layer used by {@link WSClient} for executing the HTTP requests, implementations must
+ * be thread safe and should be shared by all the clients, so the connections to the server are
+ * reused between calls
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public interface WSTransport {
+
+  /**
+   * Executes a request, the returned response must be closed once its body is read so the
+   * connection could be reused
+   *
+   * @param request
+   * 	Request to be executed
+   * @return The server response, with any status code
+   *
+   * @throws IOException
+   * 	If the connection could not be done due to network problems
+   */
+  public WSResponse execute(WSRequest request) throws IOException;
+}
@@ -0,0 +1,137 @@
+/**
+ * File: BaseModelTypeAdapter
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Base for hand written Gson adapters of the models, without reflection
+ */
+
+package com.keysd.baseandroid.model.ws;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.keysd.baseandroid.model.db.BaseModel;
+import java.io.IOException;
+
+/**
+ * Base for hand written Gson adapters of the models, the adapter reads and writes the fields
+ * directly instead of using reflection, which is several times faster for large arrays. The
+ * {@link com.keysd.baseandroid.model.db.BaseModel} fields are handled here, so subclasses only
+ * handle their own fields. Register the adapter with
+ * {@link GsonRegistry#registerTypeAdapter(java.lang.reflect.Type, Object)}
+ *
+ * @param <T>
+ * 	Model type
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public abstract class BaseModelTypeAdapter<T extends BaseModel> extends TypeAdapter<T> {
+
+  /**
+   * JSON name of the {@link com.keysd.baseandroid.model.db.BaseModel#getDbId()} field
+   */
+  public static final String FIELD_DB_ID = "dbId";
+
+  /**
+   * @return A new empty model, where the read fields will be set
+   */
+  protected abstract T newInstance();
+
+  /**
+   * Reads the value of a field of the model, unknown fields must be skipped with
+   * {@link com.google.gson.stream.JsonReader#skipValue()}
+   *
+   * @param in
+   * 	Reader positioned at the field value
+   * @param name
+   * 	Field name
+   * @param object
+   * 	Model where the value should be set
+   * @throws IOException
+   * 	If the value could not be read
+   */
+  protected abstract void readField(JsonReader in, String name, T object) throws IOException;
+
+  /**
+   * Writes the fields of the model, except the base ones
+   *
+   * @param out
+   * 	Writer positioned inside the model object
+   * @param object
+   * 	Model to write
+   * @throws IOException
+   * 	If the fields could not be written
+   */
+  protected abstract void writeFields(JsonWriter out, T object) throws IOException;
+
+  @Override
+  public T read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    T object = newInstance();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (FIELD_DB_ID.equals(name)) {
+        object.setDbId(nextInteger(in));
+      } else {
+        readField(in, name, object);
+      }
+    }
+    in.endObject();
+    return object;
+  }
+
+  @Override
+  public void write(JsonWriter out, T object) throws IOException {
+    if (object == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name(FIELD_DB_ID).value(object.getDbId());
+    writeFields(out, object);
+    out.endObject();
+  }
+
+  /**
+   * Reads a nullable integer value
+   *
+   * @param in
+   * 	Reader positioned at the value
+   * @return The value, or null if it is a JSON null
+   *
+   * @throws IOException
+   * 	If the value could not be read
+   */
+  protected static Integer nextInteger(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextInt();
+  }
+
+  /**
+   * Reads a nullable string value
+   *
+   * @param in
+   * 	Reader positioned at the value
+   * @return The value, or null if it is a JSON null
+   *
+   * @throws IOException
+   * 	If the value could not be read
+   */
+  protected static String nextString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * File: GsonRegistry
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Process wide Gson instance with the type adapters registered by the application
+ */
+
+package com.keysd.baseandroid.model.ws;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapterFactory;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process wide {@link com.google.gson.Gson} instance with the type adapters registered by the
+ * application. Gson builds and caches a type adapter the first time each type is parsed, which
+ * is lost every time a new Gson is created, so all the parsing should use {@link #getGson()}.
+ * <p/>
+ * Hot types, ej. large catalogs, could register hand written adapters that do not use reflection,
+ * see {@link BaseModelTypeAdapter}. Adapters should be registered once at startup, registering
+ * an adapter later discards the shared instance and the adapters cached by it
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public final class GsonRegistry {
+
+  private static final Map<Type, Object> typeAdapters = new LinkedHashMap<Type, Object>();
+  private static final List<TypeAdapterFactory> factories = new LinkedList<TypeAdapterFactory>();
+  private static volatile Gson gson;
+
+  private GsonRegistry() {
+  }
+
+  /**
+   * Registers an adapter for a type
+   *
+   * @param type
+   * 	Type to be parsed by the adapter
+   * @param typeAdapter
+   * 	A {@link com.google.gson.TypeAdapter}, {@link com.google.gson.JsonSerializer},
+   * 	{@link com.google.gson.JsonDeserializer} or {@link com.google.gson.InstanceCreator}
+   * @see com.google.gson.GsonBuilder#registerTypeAdapter(java.lang.reflect.Type, Object)
+   */
+  public static synchronized void registerTypeAdapter(Type type, Object typeAdapter) {
+    typeAdapters.put(type, typeAdapter);
+    gson = null;
+  }
+
+  /**
+   * Registers a factory of adapters, ej. for a hierarchy of types
+   *
+   * @param factory
+   * 	Factory to be registered
+   * @see com.google.gson.GsonBuilder#registerTypeAdapterFactory(com.google.gson.TypeAdapterFactory)
+   */
+  public static synchronized void registerTypeAdapterFactory(TypeAdapterFactory factory) {
+    factories.add(factory);
+    gson = null;
+  }
+
+  /**
+   * @return The shared Gson with all the registered adapters
+   */
+  public static Gson getGson() {
+    Gson result = gson;
+    if (result == null) {
+      synchronized (GsonRegistry.class) {
+        result = gson;
+        if (result == null) {
+          GsonBuilder builder = new GsonBuilder();
+          for (Map.Entry<Type, Object> entry : typeAdapters.entrySet()) {
+            builder.registerTypeAdapter(entry.getKey(), entry.getValue());
+          }
+          for (TypeAdapterFactory factory : factories) {
+            builder.registerTypeAdapterFactory(factory);
+          }
+          result = builder.create();
+          gson = result;
+        }
+      }
+    }
+    return result;
+  }
+}
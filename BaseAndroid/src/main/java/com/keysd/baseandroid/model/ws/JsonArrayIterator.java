@@ -0,0 +1,122 @@
+/**
+ * File: JsonArrayIterator
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Iterator that parses the elements of a JSON array one at a time from a stream
+ */
+
+package com.keysd.baseandroid.model.ws;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator that parses the elements of a JSON array one at a time from a stream, using a
+ * {@link com.google.gson.stream.JsonReader}, so neither the full response nor the full list of
+ * objects are kept in memory. This allows processing responses larger than the available heap,
+ * ej. inserting them into the data base in batches with
+ * {@link com.keysd.baseandroid.dao.db.BaseDBDAO#insert(java.util.Iterator, int)}.
+ * <p/>
+ * Parsing or network errors while iterating are thrown as
+ * {@link com.google.gson.JsonSyntaxException} or {@link com.google.gson.JsonIOException}. The
+ * iterator must be closed once it is not needed, so the stream is released
+ *
+ * @param <T>
+ * 	Type of the array elements
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+  private final JsonReader reader;
+  private final Gson gson;
+  private final Class<T> type;
+  private boolean started;
+  private boolean finished;
+
+  /**
+   * Constructor
+   *
+   * @param reader
+   * 	Reader positioned before the array
+   * @param gson
+   * 	Gson to be used for parsing each element
+   * @param type
+   * 	Type of the array elements
+   */
+  public JsonArrayIterator(JsonReader reader, Gson gson, Class<T> type) {
+    this.reader = reader;
+    this.gson = gson;
+    this.type = type;
+  }
+
+  /**
+   * Constructor for an UTF-8 stream
+   *
+   * @param in
+   * 	Stream that contains the array
+   * @param gson
+   * 	Gson to be used for parsing each element
+   * @param type
+   * 	Type of the array elements
+   * @throws UnsupportedEncodingException
+   * 	If UTF-8 is not supported
+   */
+  public JsonArrayIterator(InputStream in, Gson gson, Class<T> type)
+      throws UnsupportedEncodingException {
+    this(new JsonReader(new InputStreamReader(in, "UTF-8")), gson, type);
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (finished) {
+      return false;
+    }
+    try {
+      if (!started) {
+        reader.beginArray();
+        started = true;
+      }
+      if (reader.hasNext()) {
+        return true;
+      }
+      reader.endArray();
+      finished = true;
+      return false;
+    } catch (IllegalStateException ex) {
+      throw new JsonSyntaxException(ex);
+    } catch (IOException ex) {
+      throw new JsonIOException(ex);
+    }
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return gson.fromJson(reader, type);
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("Parsed elements could not be removed");
+  }
+
+  @Override
+  public void close() throws IOException {
+    finished = true;
+    reader.close();
+  }
+}
@@ -11,13 +11,15 @@
 package com.keysd.baseandroid.model.ws;
 
 import android.util.Log;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.keysd.baseandroid.dao.ws.InvalidResponseException;
 import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,30 +43,53 @@ public class Parser<T> {
    * 	Corresponding JSON string
    * @return A list of objects if the JSON string was correct
    *
-   * @throws com.google.gson.JsonSyntaxException
-   * 	If the string is not valid JSON
+   * @throws InvalidResponseException
+   * 	If the string is not a valid JSON array of the type
+   * @see GsonRegistry
    */
   public List<T> parseWSObjects(String json, Class<T> type) throws InvalidResponseException {
-    Gson gson = new Gson();
-    JsonParser jsonParser = new JsonParser();
     List<T> list = new ArrayList<T>();
     try {
-      JsonElement jsonElem = jsonParser.parse(json);
-      if (jsonElem.isJsonArray()) {
-        JsonArray arr = jsonElem.getAsJsonArray();
-        for (JsonElement je : arr) {
-          list.add(gson.fromJson(je, type));
-        }
-      } else {
+      //Parse each element directly from the string, without building the JSON tree
+      JsonReader reader = new JsonReader(new StringReader(json));
+      reader.setLenient(true);
+      if (reader.peek() != JsonToken.BEGIN_ARRAY) {
         throw new InvalidResponseException("Server response invalid or unsupported format");
       }
+      JsonArrayIterator<T> iterator = new JsonArrayIterator<T>(reader, GsonRegistry.getGson(),
+                                                               type);
+      while (iterator.hasNext()) {
+        list.add(iterator.next());
+      }
       return list;
+    } catch (IOException ex) {
+      Log.e(KeyDictionary.TAG, ex.getMessage(), ex);
+      throw new InvalidResponseException(ex.getMessage());
     } catch (ClassCastException ex) {
       Log.e(KeyDictionary.TAG, ex.getMessage(), ex);
       throw new InvalidResponseException(ex.getMessage());
-    } catch (JsonSyntaxException ex) {
+    } catch (JsonParseException ex) {
       Log.e(KeyDictionary.TAG, ex.getMessage(), ex);
       throw new InvalidResponseException(ex.getMessage());
     }
   }
+
+  /**
+   * Parse a JSON array from a stream one element at a time, without reading the full stream
+   * into memory
+   *
+   * @param json
+   * 	UTF-8 stream with the JSON array
+   * @param type
+   * 	Type of the array elements
+   * @return An iterator over the parsed objects, it must be closed once it is not needed
+   *
+   * @throws java.io.UnsupportedEncodingException
+   * 	If UTF-8 is not supported
+   * @see JsonArrayIterator
+   */
+  public JsonArrayIterator<T> iterateWSObjects(InputStream json, Class<T> type)
+      throws UnsupportedEncodingException {
+    return new JsonArrayIterator<T>(json, GsonRegistry.getGson(), type);
+  }
 }
\ No newline at end of file
@@ -540,6 +540,9 @@ public class CMUtils {
    * @param format
    * 	Format with which this image is going to be decoded
    * @return A byte array containing the bytes of the decoded bitmap
+   * @see com.keysd.baseandroid.view.util.BitmapUtils#compressToBase64(Bitmap,
+   * Bitmap.CompressFormat, int, int, java.io.OutputStream) for uploads, which does not keep the
+   * compressed image in memory
    */
   public static byte[] bitmapToByteArray(Bitmap bitmap, Bitmap.CompressFormat format) {
     ByteArrayOutputStream stream = new ByteArrayOutputStream();
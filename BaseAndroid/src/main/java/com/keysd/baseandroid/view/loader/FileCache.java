@@ -2,11 +2,25 @@ package com.keysd.baseandroid.view.loader;
 
 import android.content.Context;
 import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 public class FileCache {
 
+  private static final char VARIANT_SEPARATOR = '_';
+  private static final char VARIANT_SIZE_SEPARATOR = 'x';
+
   private File cacheDir;
 
+  /**
+   * Sizes of the saved variants per variant prefix, loaded from the cache directory the first
+   * time it is needed so the look ups do not list the directory, see
+   * {@link #findVariantFile(String, int, int)}
+   */
+  private Map<String, List<int[]>> variants;
+
   public FileCache(Context context) {
     //Find the dir to save cached images
     cacheDir = new File(
@@ -31,10 +45,135 @@ public class FileCache {
 
   }
 
+  /**
+   * Return the file where a downscaled variant of the image that corresponds to the selected key
+   * is saved, the variant is identified by the requested size used for decoding it
+   *
+   * @param key       Key for look up the file
+   * @param reqWidth  Requested width used for decoding the variant, 0 or less means no constraint
+   * @param reqHeight Requested height used for decoding the variant, 0 or less means no constraint
+   * @return The variant file for the corresponding key and size
+   */
+  public File getVariantFile(String key, int reqWidth, int reqHeight) {
+    return new File(cacheDir, getVariantPrefix(key) + normalize(reqWidth) + VARIANT_SIZE_SEPARATOR
+        + normalize(reqHeight));
+  }
+
+  /**
+   * Look up the smallest saved variant that was decoded for a requested size at least as large
+   * as the requested one, so it could be decoded instead of the full resolution image. The
+   * variants are looked up on an in-memory index, so only the chosen file is checked on disk
+   *
+   * @param key       Key for look up the file
+   * @param reqWidth  Requested width, 0 or less means no constraint
+   * @param reqHeight Requested height, 0 or less means no constraint
+   * @return The nearest larger variant file, or null if there is no usable variant
+   */
+  public synchronized File findVariantFile(String key, int reqWidth, int reqHeight) {
+    List<int[]> sizes = getVariants().get(getVariantPrefix(key));
+    if (sizes == null) {
+      return null;
+    }
+    reqWidth = normalize(reqWidth);
+    reqHeight = normalize(reqHeight);
+    while (!sizes.isEmpty()) {
+      int[] best = null;
+      long bestArea = Long.MAX_VALUE;
+      for (int[] size : sizes) {
+        long area = (long) size[0] * size[1];
+        if (size[0] >= reqWidth && size[1] >= reqHeight && area < bestArea) {
+          best = size;
+          bestArea = area;
+        }
+      }
+      if (best == null) {
+        return null;
+      }
+      File f = new File(cacheDir, getVariantPrefix(key) + best[0] + VARIANT_SIZE_SEPARATOR +
+          best[1]);
+      if (f.exists()) {
+        return f;
+      }
+      //Deleted outside of the cache, forget it and try the next one
+      sizes.remove(best);
+    }
+    return null;
+  }
+
+  /**
+   * Registers a variant saved on the file returned by {@link #getVariantFile(String, int, int)},
+   * so it could be found by {@link #findVariantFile(String, int, int)}
+   *
+   * @param key       Key for look up the file
+   * @param reqWidth  Requested width used for decoding the variant, 0 or less means no constraint
+   * @param reqHeight Requested height used for decoding the variant, 0 or less means no constraint
+   */
+  public synchronized void addVariant(String key, int reqWidth, int reqHeight) {
+    addVariant(getVariants(), getVariantPrefix(key), normalize(reqWidth), normalize(reqHeight));
+  }
+
+  /**
+   * @return The variants index, the cache directory is listed only the first time
+   */
+  private Map<String, List<int[]>> getVariants() {
+    if (variants != null) {
+      return variants;
+    }
+    variants = new HashMap<String, List<int[]>>();
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return variants;
+    }
+    for (File f : files) {
+      String name = f.getName();
+      int prefixEnd = name.indexOf(VARIANT_SEPARATOR);
+      if (prefixEnd < 0) {
+        continue;
+      }
+      String size = name.substring(prefixEnd + 1);
+      int separator = size.indexOf(VARIANT_SIZE_SEPARATOR);
+      if (separator < 0) {
+        continue;
+      }
+      try {
+        addVariant(variants, name.substring(0, prefixEnd + 1),
+                   Integer.parseInt(size.substring(0, separator)),
+                   Integer.parseInt(size.substring(separator + 1)));
+      } catch (NumberFormatException ex) {
+        //Not a variant file
+      }
+    }
+    return variants;
+  }
+
+  private static void addVariant(Map<String, List<int[]>> variants, String prefix, int width,
+      int height) {
+    List<int[]> sizes = variants.get(prefix);
+    if (sizes == null) {
+      sizes = new LinkedList<int[]>();
+      variants.put(prefix, sizes);
+    }
+    for (int[] size : sizes) {
+      if (size[0] == width && size[1] == height) {
+        return;
+      }
+    }
+    sizes.add(new int[]{width, height});
+  }
+
+  private static String getVariantPrefix(String key) {
+    return String.valueOf(key.hashCode()) + VARIANT_SEPARATOR;
+  }
+
+  private static int normalize(int requested) {
+    return requested <= 0 ? Integer.MAX_VALUE : requested;
+  }
+
   /**
    * Clears the cache directory
    */
-  public void clear() {
+  public synchronized void clear() {
+    variants = null;
     File[] files = cacheDir.listFiles();
     if (files == null) {
       return;
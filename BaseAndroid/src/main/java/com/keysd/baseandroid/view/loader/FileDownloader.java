@@ -0,0 +1,299 @@
+/**
+ * File: FileDownloader
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Downloads a remote resource straight into a file, resuming interrupted downloads when the
+ * server supports HTTP Range requests
+ */
+
+package com.keysd.baseandroid.view.loader;
+
+import android.util.Log;
+import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Downloads a remote resource straight into a file. The response body is streamed to disk using
+ * a per thread reusable buffer, so no extra copies of the resource are kept in memory, and the
+ * data is written first to a partial file which is renamed once the download completes. If a
+ * partial file already exists, the download is resumed using an HTTP Range request; if the
+ * server does not honor it the download starts again from the beginning.
+ * <p/>
+ * The ETag or Last-Modified of the response is saved next to the partial file and sent as
+ * If-Range when resuming, so a resource that changed on the server is downloaded again from the
+ * beginning instead of being appended to the old bytes. Partial files without a validator are
+ * not resumed.
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class FileDownloader {
+
+  /**
+   * Default size of the buffer used to copy the response stream into the file
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Suffix appended to the target file name while the download is in progress
+   */
+  public static final String PARTIAL_SUFFIX = ".part";
+
+  /**
+   * Suffix appended to the partial file name for the file that keeps its If-Range validator
+   */
+  public static final String VALIDATOR_SUFFIX = ".validator";
+
+  private static final int DEFAULT_CONNECT_TIME_OUT = 1000;
+  private static final int DEFAULT_READ_TIME_OUT = 5000;
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  /**
+   * Copy buffer, one per download thread so concurrent downloads do not share it
+   */
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[DEFAULT_BUFFER_SIZE];
+    }
+  };
+
+  private int connectTimeout;
+  private int readTimeout;
+
+  /**
+   * Creates a downloader with the default connect and read time outs
+   */
+  public FileDownloader() {
+    this(DEFAULT_CONNECT_TIME_OUT, DEFAULT_READ_TIME_OUT);
+  }
+
+  /**
+   * Creates a downloader with custom time outs
+   *
+   * @param connectTimeout
+   * 	Time out in milliseconds for establish the connection with the server
+   * @param readTimeout
+   * 	Time out in milliseconds for wait for data from the server
+   */
+  public FileDownloader(int connectTimeout, int readTimeout) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * Downloads the resource into the target file, if the target file already exists it is
+   * returned without any network access
+   *
+   * @param url
+   * 	URL of the resource to download
+   * @param target
+   * 	File where the resource will be saved
+   * @return The target file, fully downloaded
+   *
+   * @throws IOException
+   * 	If the connection could not be done, the server answers with an error code or the file
+   * 	could not be written
+   */
+  public File download(String url, File target) throws IOException {
+    if (target.exists()) {
+      return target;
+    }
+    File partial = new File(target.getAbsolutePath() + PARTIAL_SUFFIX);
+    File validatorFile = new File(partial.getAbsolutePath() + VALIDATOR_SUFFIX);
+    long offset = partial.exists() ? partial.length() : 0;
+    String validator = offset > 0 ? readValidator(validatorFile) : null;
+    if (offset > 0 && validator == null) {
+      //Without a validator there is no way to know the partial file is still valid
+      partial.delete();
+      offset = 0;
+    }
+
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      conn.setConnectTimeout(connectTimeout);
+      conn.setReadTimeout(readTimeout);
+      conn.setInstanceFollowRedirects(true);
+      if (offset > 0) {
+        conn.setRequestProperty("Range", "bytes=" + offset + "-");
+        //The server sends the whole resource if it changed since the partial download
+        conn.setRequestProperty("If-Range", validator);
+      }
+      conn.connect();
+
+      int responseCode = conn.getResponseCode();
+      boolean append;
+      if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+        //The server honored the range, only if it starts where the partial file ends
+        append = isExpectedRange(conn.getHeaderField("Content-Range"), offset);
+        if (!append) {
+          Log.d(KeyDictionary.TAG, "Unexpected content range, restarting download: " + url);
+          conn.disconnect();
+          discard(partial, validatorFile);
+          return download(url, target);
+        }
+      } else if (responseCode == HTTP_RANGE_NOT_SATISFIABLE && offset > 0) {
+        //The partial file already contains the whole resource, only if it has the total length
+        if (getCompleteLength(conn.getHeaderField("Content-Range")) == offset) {
+          return commit(partial, target);
+        }
+        Log.d(KeyDictionary.TAG, "Partial file does not match the resource, restarting " +
+            "download: " + url);
+        conn.disconnect();
+        discard(partial, validatorFile);
+        return download(url, target);
+      } else if (responseCode == HttpURLConnection.HTTP_OK) {
+        //A new download, or the resource changed since the partial download
+        append = false;
+        writeValidator(validatorFile, getValidator(conn));
+      } else {
+        throw new IOException("Unexpected response code " + responseCode + " for " + url);
+      }
+
+      InputStream is = conn.getInputStream();
+      OutputStream os = new FileOutputStream(partial, append);
+      try {
+        Utils.copyStream(is, os, BUFFER.get());
+      } finally {
+        os.close();
+        is.close();
+      }
+      return commit(partial, target);
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Renames the partial file to its final name
+   *
+   * @param partial
+   * 	Fully downloaded partial file
+   * @param target
+   * 	Final file
+   * @return The target file
+   *
+   * @throws IOException
+   * 	If the file could not be renamed
+   */
+  private File commit(File partial, File target) throws IOException {
+    if (!partial.renameTo(target)) {
+      throw new IOException("Could not rename " + partial + " to " + target);
+    }
+    new File(partial.getAbsolutePath() + VALIDATOR_SUFFIX).delete();
+    return target;
+  }
+
+  /**
+   * Deletes a partial file and its validator
+   */
+  private static void discard(File partial, File validatorFile) {
+    partial.delete();
+    validatorFile.delete();
+  }
+
+  /**
+   * Gets the validator to be sent as If-Range, weak ETags could not be used for ranges
+   *
+   * @param conn
+   * 	Connection with the full response
+   * @return The strong ETag, or the Last-Modified date, null if the response has none
+   */
+  private static String getValidator(HttpURLConnection conn) {
+    String etag = conn.getHeaderField("ETag");
+    if (etag != null && !etag.startsWith("W/")) {
+      return etag;
+    }
+    return conn.getHeaderField("Last-Modified");
+  }
+
+  /**
+   * Saves the validator of a partial download, or deletes the previous one if it is null
+   */
+  private static void writeValidator(File validatorFile, String validator) throws IOException {
+    if (validator == null) {
+      validatorFile.delete();
+      return;
+    }
+    OutputStream os = new FileOutputStream(validatorFile);
+    try {
+      os.write(validator.getBytes("UTF-8"));
+    } finally {
+      os.close();
+    }
+  }
+
+  /**
+   * @return The saved validator of a partial download, null if there is none
+   */
+  private static String readValidator(File validatorFile) {
+    if (!validatorFile.exists()) {
+      return null;
+    }
+    try {
+      InputStream is = new FileInputStream(validatorFile);
+      try {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Utils.copyStream(is, os, new byte[256]);
+        String validator = os.toString("UTF-8").trim();
+        return validator.length() > 0 ? validator : null;
+      } finally {
+        is.close();
+      }
+    } catch (IOException e) {
+      Log.w(KeyDictionary.TAG, "Unable to read " + validatorFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Gets the complete length of a Content-Range header, bytes start-end/total for the partial
+   * responses or bytes &#42;/total for the 416 ones
+   *
+   * @param contentRange
+   * 	Content-Range header value, could be null
+   * @return The complete length, or -1 if it is unknown
+   */
+  private static long getCompleteLength(String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+    int slash = contentRange.lastIndexOf('/');
+    if (slash < 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentRange.substring(slash + 1).trim());
+    } catch (NumberFormatException e) {
+      //Unknown length, ej. bytes 0-99/*
+      return -1;
+    }
+  }
+
+  /**
+   * Checks that a Content-Range header (bytes start-end/total) starts at the expected offset
+   *
+   * @param contentRange
+   * 	Content-Range header value, could be null
+   * @param offset
+   * 	Expected first byte
+   * @return TRUE if the range starts at the offset, FALSE otherwise
+   */
+  private static boolean isExpectedRange(String contentRange, long offset) {
+    if (contentRange == null) {
+      return false;
+    }
+    String prefix = "bytes " + offset + "-";
+    return contentRange.trim().startsWith(prefix);
+  }
+}
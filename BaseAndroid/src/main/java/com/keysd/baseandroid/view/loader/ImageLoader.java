@@ -2,18 +2,20 @@ package com.keysd.baseandroid.view.loader;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.AsyncTask;
 import android.view.View;
 import android.widget.AbsListView;
 import android.widget.ImageView;
 import com.keysd.baseandroid.view.util.BitmapDecoderTask;
 import com.keysd.baseandroid.view.util.CustomAsyncTaskEventListener;
-import com.keysd.baseandroid.view.util.DownloadImageAsyncTask;
+import com.keysd.baseandroid.view.util.DownloadFileAsyncTask;
 import com.keysd.baseandroid.view.util.StreamTooLargeException;
 import java.io.File;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +58,20 @@ public class ImageLoader<T> {
   private List<String> fails = new LinkedList<String>();
   private Map<String, List<PendingImageView>> pending
       = new HashMap<String, List<PendingImageView>>();
+  /**
+   * Requests received while paused, by image view, so only the latest request of a recycled view
+   * is kept
+   */
+  private Map<ImageView, DeferredRequest> deferred = new WeakHashMap<ImageView, DeferredRequest>();
+  /**
+   * Download and decode tasks started for list positions, so they could be cancelled once their
+   * position scrolls away
+   */
+  private List<QueuedTask> queuedTasks = new LinkedList<QueuedTask>();
+  /**
+   * TRUE while new requests should be deferred, see {@link #pause()}
+   */
+  private boolean paused;
   private Context context;
 
   public ImageLoader(Context context) {
@@ -122,8 +138,8 @@ public class ImageLoader<T> {
       int requestedHeight, OnImageDecodedListener onImageDecodedListener,
       AbsListView absListView, Integer position) {
     imageViews.put(imageView, key);
-    //Get the bitmap from cache
-    Bitmap bitmap = memoryCache.get(key);
+    //Get the nearest larger bitmap variant for the requested size from cache
+    Bitmap bitmap = memoryCache.getVariant(key, requestedWidth, requestedHeight);
     if (bitmap != null) {
       //If its not null, set it to the image view
       imageView.setImageBitmap(bitmap);
@@ -146,6 +162,14 @@ public class ImageLoader<T> {
                                    onImageDecodedListener);
         return;
       }
+      //While the list is flinging, defer the request until the scroll settles
+      if (paused && absListView != null) {
+        deferred.put(imageView, new DeferredRequest(key, imageResource, progressBar,
+                                                    requestedWidth, requestedHeight,
+                                                    onImageDecodedListener, absListView,
+                                                    position));
+        return;
+      }
       //If the bitmap is not on the cache, add it to the queue for download and decode
       queuePhoto(key, imageResource, imageView, progressBar, requestedWidth, requestedHeight,
                  onImageDecodedListener, absListView, position);
@@ -250,10 +274,11 @@ public class ImageLoader<T> {
     WeakReference<ImageView> imgReference = new WeakReference<ImageView>(imageView);
     File f = fileCache.getFile(key);
     if (f.exists()) {
+      //Prefer a saved downscaled variant over the full resolution file
+      File variant = fileCache.findVariantFile(key, requestedWidth, requestedHeight);
       //Tries to load the bitmap from cache, if the bit map is not present download it
-      decodeFile(key, imgReference, progressBar, requestedWidth, requestedHeight, f,
-                 onImageDecodedListener,
-                 absListView, position);
+      decodeFile(key, imgReference, progressBar, requestedWidth, requestedHeight,
+                 variant != null ? variant : f, onImageDecodedListener, absListView, position);
     } else {
       //If the bitmap has never been cached, download it
       if (!downloading.contains(key)) {
@@ -264,22 +289,23 @@ public class ImageLoader<T> {
           decodeResource(key, (Integer) imageResource, imgReference, progressBar, requestedWidth,
                          requestedHeight, onImageDecodedListener, absListView, position);
         } else if (imageResource instanceof String) {
-          DownloadImageAsyncTask loadFirm = new DownloadImageAsyncTask(
-              new CustomDownloadAsyncTaskEventListenerImp(progressBar, imageView, requestedWidth,
-                                                          requestedHeight, key,
-                                                          onImageDecodedListener, absListView,
-                                                          position), f
-                  .getAbsolutePath()
+          //Download straight into the cache file and decode it by path
+          DownloadFileAsyncTask loadFirm = new DownloadFileAsyncTask(
+              new CustomDownloadFileEventListenerImp(progressBar, imgReference, requestedWidth,
+                                                     requestedHeight, key,
+                                                     onImageDecodedListener, absListView,
+                                                     position), f
           );
+          track(loadFirm, key, absListView, position);
           loadFirm.execute((String) imageResource);
         } else if (imageResource instanceof Bitmap) {
           processBitmap(key, imgReference, progressBar, onImageDecodedListener, (Bitmap)
-                            imageResource,
+                            imageResource, 0, 0,
                         absListView, position);
         }
       } else {
         pending.get(key).add(new PendingImageView(imgReference, progressBar,
-                                                  onImageDecodedListener));
+                                                  onImageDecodedListener, position));
       }
     }
   }
@@ -315,7 +341,7 @@ public class ImageLoader<T> {
    */
   private void decodeResource(final String key, int resourceId, final WeakReference<ImageView>
       imgViewReference,
-      final View progressBar, int requestedWidth, int requestedHeight,
+      final View progressBar, final int requestedWidth, final int requestedHeight,
       final OnImageDecodedListener onImageDecodedListener, final
   AbsListView absListView,
       final Integer position) {
@@ -330,6 +356,7 @@ public class ImageLoader<T> {
                                            // set bitmap.
                                            processBitmap(key, imgViewReference, progressBar,
                                                          onImageDecodedListener, result,
+                                                         requestedWidth, requestedHeight,
                                                          absListView,
                                                          position);
                                          }
@@ -341,6 +368,7 @@ public class ImageLoader<T> {
                                        }
         );
 
+    track(bitmapDecoderTask, key, absListView, position);
     bitmapDecoderTask.execute(resourceId);
   }
 
@@ -380,15 +408,19 @@ public class ImageLoader<T> {
       absListView,
       final Integer position) {
     // Decode de image using the original size
+    BitmapDecodedEventListenerImp listener =
+        new BitmapDecodedEventListenerImp(progressBar, imgViewReference, requestedWidth,
+                                          requestedHeight, key, onImageDecodedListener,
+                                          absListView, position);
     BitmapDecoderTask<File> bitmapDecoderTask =
-        new BitmapDecoderTask<File>(context, requestedWidth, requestedHeight,
-                                    new BitmapDecodedEventListenerImp(progressBar, imgViewReference,
-                                                                      requestedWidth,
-                                                                      requestedHeight, key,
-                                                                      onImageDecodedListener,
-                                                                      absListView, position)
-        );
+        new BitmapDecoderTask<File>(context, requestedWidth, requestedHeight, listener);
+    //When decoding the full resolution file for a specific size, save the downscaled result
+    if ((requestedWidth > 0 || requestedHeight > 0) && f.equals(fileCache.getFile(key))) {
+      listener.variantFile = fileCache.getVariantFile(key, requestedWidth, requestedHeight);
+      bitmapDecoderTask.setVariantFile(listener.variantFile);
+    }
 
+    track(bitmapDecoderTask, key, absListView, position);
     bitmapDecoderTask.execute(f);
   }
 
@@ -455,6 +487,8 @@ public class ImageLoader<T> {
    *                               implementing method could personalize its
    *                               layout behavior depending on the result
    * @param result                 The decoded bitmap
+   * @param requestedWidth         Width requested for decoding the bitmap, used as cache key
+   * @param requestedHeight        Height requested for decoding the bitmap, used as cache key
    * @param absListView            List view that its used for display the images of this image
    *                               loader, this will be used for checking if the
    *                               decoded image is on the screen at the end of the process, and
@@ -467,58 +501,56 @@ public class ImageLoader<T> {
    */
   private void processBitmap(String key, WeakReference<ImageView> imgViewReference,
       View progressBar,
-      OnImageDecodedListener onImageDecodedListener, Bitmap result, AbsListView absListView,
-      Integer position) {
+      OnImageDecodedListener onImageDecodedListener, Bitmap result, int requestedWidth,
+      int requestedHeight, AbsListView absListView, Integer position) {
     // Once complete, see if ImageView is still around
     // and set bitmap.
-    if (imgViewReference != null) {
-      final ImageView imgView = imgViewReference.get();
-      if (imgView != null) {
-
-        //If the image view its visible on the list, set the image view and update progress bar
-        // status
-        if (imageViewVisible(absListView, position)) {
-          //Set resulting bitmap to image view
-          imgView.setImageBitmap(result);
-          imgView.setVisibility(View.VISIBLE);
-        }
-        memoryCache.put(key, result);
-        downloading.remove(key);
-        //If the resulting bitmap is null, add it to fails list
-        if (result == null) {
-          fails.add(key);
-        }
+    final ImageView imgView = imgViewReference != null ? imgViewReference.get() : null;
+    //If the image view its visible on the list, set the image view and update progress bar
+    // status
+    if (imgView != null && imageViewVisible(absListView, position)) {
+      //Set resulting bitmap to image view
+      imgView.setImageBitmap(result);
+      imgView.setVisibility(View.VISIBLE);
+    }
+    //Cache the result even if the image view is gone (or was never set, for prefetch requests)
+    memoryCache.putVariant(key, requestedWidth, requestedHeight, result);
+    downloading.remove(key);
+    //If the resulting bitmap is null, add it to fails list
+    if (result == null) {
+      fails.add(key);
+    }
 
-        List<PendingImageView> pendingImageViews = pending.get(key);
-        if (pendingImageViews != null) {
-          for (PendingImageView pendingImageView : pendingImageViews) {
-            //Check if there's pending image views to load for that key
-            if (pendingImageView != null) {
-              //Get the image view reference
-              WeakReference<ImageView> pendingImageViewReference = pendingImageView.getImageView();
-              if (pendingImageViewReference != null) {
-                final ImageView imgViewP = pendingImageViewReference.get();
-                //Update image view
-                if (imgViewP != null && imageViewVisible(absListView, position)) {
-                  imgViewP.setImageBitmap(result);
-                  imgViewP.setVisibility(View.VISIBLE);
-                }
-              }
-              View pendingProgressBar = pendingImageView.progressBar;
-              if (pendingProgressBar != null) {
-                pendingProgressBar.setVisibility(View.GONE);
-              }
-
-              OnImageDecodedListener onImageDecodedListenerPending =
-                  pendingImageView.onImageDecodedListener;
-              callOnImageDecodedListener(key, pendingImageViewReference, pendingProgressBar,
-                                         result,
-                                         position, onImageDecodedListenerPending);
+    List<PendingImageView> pendingImageViews = pending.get(key);
+    if (pendingImageViews != null) {
+      for (PendingImageView pendingImageView : pendingImageViews) {
+        //Check if there's pending image views to load for that key
+        if (pendingImageView != null) {
+          //Get the image view reference
+          WeakReference<ImageView> pendingImageViewReference = pendingImageView.getImageView();
+          if (pendingImageViewReference != null) {
+            final ImageView imgViewP = pendingImageViewReference.get();
+            //Update image view
+            if (imgViewP != null && imageViewVisible(absListView, position)) {
+              imgViewP.setImageBitmap(result);
+              imgViewP.setVisibility(View.VISIBLE);
             }
           }
+          View pendingProgressBar = pendingImageView.progressBar;
+          if (pendingProgressBar != null) {
+            pendingProgressBar.setVisibility(View.GONE);
+          }
+
+          OnImageDecodedListener onImageDecodedListenerPending =
+              pendingImageView.onImageDecodedListener;
+          callOnImageDecodedListener(key, pendingImageViewReference, pendingProgressBar,
+                                     result,
+                                     position, onImageDecodedListenerPending);
         }
-        pending.remove(key);
       }
+    }
+    pending.remove(key);
+    if (imgViewReference != null) {
       callOnImageDecodedListener(key, imgViewReference, progressBar, result, position,
                                  onImageDecodedListener);
     }
@@ -540,6 +572,159 @@ public class ImageLoader<T> {
     return (tag == null || !tag.equals(key));
   }
 
+  /**
+   * Pauses the loader, requests for list items received while paused are deferred until
+   * {@link #resume()} is called, so no download or decoding work is done for items that are only
+   * shown for a moment, ej. while the list is flinging. Cached bitmaps are still shown right away
+   */
+  public void pause() {
+    paused = true;
+  }
+
+  /**
+   * Resumes the loader and process the deferred requests whose image views are still visible
+   * and still showing the same key, the other ones are dropped
+   */
+  public void resume() {
+    paused = false;
+    List<Map.Entry<ImageView, DeferredRequest>> requests =
+        new LinkedList<Map.Entry<ImageView, DeferredRequest>>(deferred.entrySet());
+    deferred.clear();
+    for (Map.Entry<ImageView, DeferredRequest> entry : requests) {
+      ImageView imageView = entry.getKey();
+      DeferredRequest request = entry.getValue();
+      if (imageView != null && !imageViewReused(imageView, request.key) &&
+          imageViewVisible(request.absListView, request.position)) {
+        displayImage(request.key, request.imageResource, imageView, request.progressBar,
+                     request.requestedWidth, request.requestedHeight,
+                     request.onImageDecodedListener, request.absListView, request.position);
+      }
+    }
+  }
+
+  /**
+   * @return TRUE if the loader is paused, see {@link #pause()}
+   */
+  public boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Cancels the tasks that belong to list positions outside the selected range, so a fast scroll
+   * does not leave a long queue of work for items that are no longer shown. Tasks that have not
+   * started are dropped, running ones skip their remaining work. A task is kept while an image
+   * view of a position inside the range waits for the same key. Interrupted downloads are
+   * resumed when the item is requested again
+   *
+   * @param firstPosition First list position to keep
+   * @param lastPosition  Last list position to keep
+   */
+  public void cancelOutside(int firstPosition, int lastPosition) {
+    Iterator<QueuedTask> iterator = queuedTasks.iterator();
+    while (iterator.hasNext()) {
+      QueuedTask queuedTask = iterator.next();
+      AsyncTask.Status status = queuedTask.task.getStatus();
+      if (status == AsyncTask.Status.FINISHED) {
+        iterator.remove();
+      } else if (queuedTask.position < firstPosition || queuedTask.position > lastPosition) {
+        //Keep the task if a visible image view is waiting for the same key
+        if (!isWaitedInside(pending.get(queuedTask.key), firstPosition, lastPosition)) {
+          queuedTask.task.cancel(false);
+          downloading.remove(queuedTask.key);
+          pending.remove(queuedTask.key);
+          iterator.remove();
+        }
+      }
+    }
+    //Drop the deferred requests of the positions that scrolled away
+    Iterator<DeferredRequest> deferredIterator = deferred.values().iterator();
+    while (deferredIterator.hasNext()) {
+      DeferredRequest request = deferredIterator.next();
+      if (request.position < firstPosition || request.position > lastPosition) {
+        deferredIterator.remove();
+      }
+    }
+  }
+
+  /**
+   * @return TRUE if one of the image views is not on a list or its position is inside the range
+   */
+  private boolean isWaitedInside(List<PendingImageView> pendingImageViews,
+      int firstPosition, int lastPosition) {
+    if (pendingImageViews == null) {
+      return false;
+    }
+    for (PendingImageView pendingImageView : pendingImageViews) {
+      Integer position = pendingImageView.position;
+      if (position == null || position < 0 ||
+          (position >= firstPosition && position <= lastPosition)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Downloads and decodes an image into the caches without showing it, so it is ready when its
+   * list item is shown. Nothing is done if the loader is paused or the image is already cached,
+   * failed or being downloaded
+   *
+   * @param key             Key to identify the images to download, this should be unique per
+   *                        download image
+   * @param imageResource   Image resource to decode, a URL {@link java.lang.String} or a drawable
+   *                        resource {@link java.lang.Integer}
+   * @param requestedWidth  If necessary, the desired width of the bitmap to be decoded
+   * @param requestedHeight If necessary, the desired height of the bitmap to be decoded
+   * @param absListView     List view in which the image will be shown, could be null
+   * @param position        Position of the item that will show the image, used for cancelling
+   *                        the work if the position scrolls away
+   */
+  public void prefetch(String key, T imageResource, int requestedWidth, int requestedHeight,
+      AbsListView absListView, Integer position) {
+    if (paused || fails.contains(key) || downloading.contains(key) ||
+        memoryCache.getVariant(key, requestedWidth, requestedHeight) != null) {
+      return;
+    }
+    File f = fileCache.getFile(key);
+    if (f.exists()) {
+      //Mark it in flight, so the next scroll events do not queue the same decode again
+      downloading.add(key);
+      pending.put(key, new LinkedList<PendingImageView>());
+      File variant = fileCache.findVariantFile(key, requestedWidth, requestedHeight);
+      decodeFile(key, null, null, requestedWidth, requestedHeight, variant != null ? variant : f,
+                 null, absListView, position);
+    } else if (imageResource instanceof Integer) {
+      downloading.add(key);
+      pending.put(key, new LinkedList<PendingImageView>());
+      decodeResource(key, (Integer) imageResource, null, null, requestedWidth, requestedHeight,
+                     null, absListView, position);
+    } else if (imageResource instanceof String) {
+      downloading.add(key);
+      pending.put(key, new LinkedList<PendingImageView>());
+      DownloadFileAsyncTask prefetchTask = new DownloadFileAsyncTask(
+          new CustomDownloadFileEventListenerImp(null, null, requestedWidth, requestedHeight, key,
+                                                 null, absListView, position), f);
+      track(prefetchTask, key, absListView, position);
+      prefetchTask.execute((String) imageResource);
+    }
+  }
+
+  /**
+   * Keeps track of a task started for a list position, see {@link #cancelOutside(int, int)}
+   *
+   * @param task        Task to track
+   * @param key         Key of the image processed by the task
+   * @param absListView List view in which the image will be shown, if null the task is not
+   *                    tracked
+   * @param position    List position of the image, if null or negative the task is not tracked
+   */
+  private void track(AsyncTask<?, ?, ?> task, String key, AbsListView absListView,
+      Integer position) {
+    if (absListView != null && position != null && position >= 0) {
+      queuedTasks.add(new QueuedTask(task, key, position));
+    }
+  }
+
   /**
    * Clears both memory and file cache bitmaps
    */
@@ -595,13 +780,18 @@ public class ImageLoader<T> {
     WeakReference<ImageView> imageView;
     View progressBar;
     OnImageDecodedListener onImageDecodedListener;
+    /**
+     * List position of the image view, null or negative if it is not on a list
+     */
+    Integer position;
 
 
     private PendingImageView(WeakReference<ImageView> imageView, View progressBar,
-        OnImageDecodedListener onImageDecodedListener) {
+        OnImageDecodedListener onImageDecodedListener, Integer position) {
       this.imageView = imageView;
       this.progressBar = progressBar;
       this.onImageDecodedListener = onImageDecodedListener;
+      this.position = position;
     }
 
     public WeakReference<ImageView> getImageView() {
@@ -617,6 +807,48 @@ public class ImageLoader<T> {
     }
   }
 
+  /**
+   * Request received while the loader was paused
+   */
+  private class DeferredRequest {
+    final String key;
+    final T imageResource;
+    final View progressBar;
+    final int requestedWidth;
+    final int requestedHeight;
+    final OnImageDecodedListener onImageDecodedListener;
+    final AbsListView absListView;
+    final int position;
+
+    private DeferredRequest(String key, T imageResource, View progressBar, int requestedWidth,
+        int requestedHeight, OnImageDecodedListener onImageDecodedListener,
+        AbsListView absListView, Integer position) {
+      this.key = key;
+      this.imageResource = imageResource;
+      this.progressBar = progressBar;
+      this.requestedWidth = requestedWidth;
+      this.requestedHeight = requestedHeight;
+      this.onImageDecodedListener = onImageDecodedListener;
+      this.absListView = absListView;
+      this.position = position != null ? position : -1;
+    }
+  }
+
+  /**
+   * Task started for a list position
+   */
+  private static class QueuedTask {
+    final AsyncTask<?, ?, ?> task;
+    final String key;
+    final int position;
+
+    private QueuedTask(AsyncTask<?, ?, ?> task, String key, int position) {
+      this.task = task;
+      this.key = key;
+      this.position = position;
+    }
+  }
+
   /**
    * Custom implementation for download event listener, this implementation
    * contains the specific implementations for onPreExecute and onPostExecute
@@ -671,6 +903,60 @@ public class ImageLoader<T> {
     }
   }
 
+  /**
+   * Custom implementation for the download file event listener, once the resource is saved on the
+   * cache file it gets decoded by path, so no stream mark or reset is needed
+   *
+   * @author "M. en C. Javier Silva Perez (JSP)"
+   * @version 1.0
+   * @since 19/10/2016
+   */
+  protected class CustomDownloadFileEventListenerImp extends CustomAsyncTaskEventListener<File> {
+
+    private final WeakReference<ImageView> imgOriginalReference;
+    View progressBar;
+    private Integer requestedWidth;
+    private Integer requestedHeight;
+    private String key;
+    private OnImageDecodedListener onImageDecodedListener;
+    private AbsListView absListView;
+    private Integer position;
+
+
+    public CustomDownloadFileEventListenerImp(View progressBar,
+        WeakReference<ImageView> imgOriginalReference, int requestedWidth, int requestedHeight,
+        String key, OnImageDecodedListener onImageDecodedListener, AbsListView absListView,
+        Integer position) {
+      this.progressBar = progressBar;
+      this.requestedHeight = requestedHeight;
+      this.requestedWidth = requestedWidth;
+      this.imgOriginalReference = imgOriginalReference;
+      this.key = key;
+      this.onImageDecodedListener = onImageDecodedListener;
+      this.absListView = absListView;
+      this.position = position;
+    }
+
+    @Override
+    public void onPreExecute() {
+      if (progressBar != null) {
+        progressBar.setVisibility(View.VISIBLE);
+      }
+    }
+
+    @Override
+    public void onPostExecute(File result) {
+      if (result == null) {
+        //Download failed, report a null bitmap so the key is added to the fails list
+        processBitmap(key, imgOriginalReference, progressBar, onImageDecodedListener, null,
+                      requestedWidth, requestedHeight, absListView, position);
+        return;
+      }
+      decodeFile(key, imgOriginalReference, progressBar, requestedWidth, requestedHeight, result,
+                 onImageDecodedListener, absListView, position);
+    }
+  }
+
   /**
    * Custom implementation for async event listener, this implementation
    * contains the specific implementations for onPreExecute and onPostExecute
@@ -690,6 +976,10 @@ public class ImageLoader<T> {
     private OnImageDecodedListener onImageDecodedListener;
     private AbsListView absListView;
     private Integer position;
+    /**
+     * Variant saved by the decoder task, registered on the file cache once the task finishes
+     */
+    private File variantFile;
 
 
     public BitmapDecodedEventListenerImp(View progressBar,
@@ -724,11 +1014,13 @@ public class ImageLoader<T> {
             return;
           }
         }
+      } else if (variantFile != null && variantFile.exists()) {
+        fileCache.addVariant(key, requestedWidth, requestedHeight);
       }
 
       // Once complete, see if ImageView is still around and set bitmap.
       processBitmap(key, imgOriginalReference, progressBar, onImageDecodedListener, result,
-                    absListView,
+                    requestedWidth, requestedHeight, absListView,
                     position);
     }
 
@@ -0,0 +1,171 @@
+/**
+ * File: ImageLoaderScrollListener
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Scroll listener that pauses an ImageLoader while a list is flinging, cancels the work for the
+ * positions that scrolled away and prefetches the next positions in the scroll direction
+ */
+
+package com.keysd.baseandroid.view.loader;
+
+import android.widget.AbsListView;
+
+/**
+ * Scroll listener to be set on the {@link android.widget.AbsListView} that shows the images of an
+ * {@link ImageLoader}. While the list is flinging the loader is paused, so requests are deferred
+ * instead of downloaded and decoded, once the list is idle the loader resumes and the next
+ * positions in the scroll direction are prefetched into the caches. On every scroll, the tasks
+ * that have not started yet and whose positions are no longer near the visible range are
+ * cancelled.
+ * <p/>
+ * If the list already has a scroll listener, pass it as delegate so it keeps receiving the
+ * events.
+ *
+ * @param <T> Type of the image resources of the loader
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class ImageLoaderScrollListener<T> implements AbsListView.OnScrollListener {
+
+  private final ImageLoader<T> imageLoader;
+  private final PrefetchProvider<T> prefetchProvider;
+  private final int prefetchCount;
+  private final int requestedWidth;
+  private final int requestedHeight;
+  private AbsListView.OnScrollListener delegate;
+
+  private int lastFirstVisible = -1;
+  private boolean scrollingForward = true;
+
+  /**
+   * Constructor for a listener that only pauses, resumes and cancels work, without prefetching
+   *
+   * @param imageLoader Image loader to control
+   */
+  public ImageLoaderScrollListener(ImageLoader<T> imageLoader) {
+    this(imageLoader, null, 0, 0, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param imageLoader      Image loader to control
+   * @param prefetchProvider Provides the key and image resource for each list position, could be
+   *                         null for not prefetching
+   * @param prefetchCount    Number of positions to prefetch after the visible ones in the scroll
+   *                         direction, this is also used as margin for cancelling work
+   * @param requestedWidth   Width requested for the prefetched bitmaps, should be the same used
+   *                         for displaying them so the cached variant could be reused
+   * @param requestedHeight  Height requested for the prefetched bitmaps, should be the same used
+   *                         for displaying them so the cached variant could be reused
+   */
+  public ImageLoaderScrollListener(ImageLoader<T> imageLoader,
+      PrefetchProvider<T> prefetchProvider, int prefetchCount, int requestedWidth,
+      int requestedHeight) {
+    this.imageLoader = imageLoader;
+    this.prefetchProvider = prefetchProvider;
+    this.prefetchCount = prefetchCount;
+    this.requestedWidth = requestedWidth;
+    this.requestedHeight = requestedHeight;
+  }
+
+  /**
+   * Sets a listener that will also receive the scroll events of the list
+   *
+   * @param delegate Scroll listener to notify, could be null
+   */
+  public void setDelegate(AbsListView.OnScrollListener delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void onScrollStateChanged(AbsListView view, int scrollState) {
+    if (scrollState == SCROLL_STATE_FLING) {
+      imageLoader.pause();
+    } else if (scrollState == SCROLL_STATE_IDLE) {
+      imageLoader.resume();
+      prefetch(view);
+    }
+    if (delegate != null) {
+      delegate.onScrollStateChanged(view, scrollState);
+    }
+  }
+
+  @Override
+  public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+      int totalItemCount) {
+    if (firstVisibleItem != lastFirstVisible) {
+      if (lastFirstVisible >= 0) {
+        scrollingForward = firstVisibleItem > lastFirstVisible;
+      }
+      lastFirstVisible = firstVisibleItem;
+      imageLoader.cancelOutside(firstVisibleItem - prefetchCount,
+                                firstVisibleItem + visibleItemCount - 1 + prefetchCount);
+      if (!imageLoader.isPaused()) {
+        prefetch(view);
+      }
+    }
+    if (delegate != null) {
+      delegate.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+    }
+  }
+
+  /**
+   * Prefetches the positions after the visible ones in the scroll direction
+   *
+   * @param view List view
+   */
+  private void prefetch(AbsListView view) {
+    if (prefetchProvider == null || prefetchCount <= 0) {
+      return;
+    }
+    int first = view.getFirstVisiblePosition();
+    int last = view.getLastVisiblePosition();
+    int total = view.getCount();
+    if (scrollingForward) {
+      int end = Math.min(last + prefetchCount, total - 1);
+      for (int position = last + 1; position <= end; position++) {
+        prefetch(view, position);
+      }
+    } else {
+      int end = Math.max(first - prefetchCount, 0);
+      for (int position = first - 1; position >= end; position--) {
+        prefetch(view, position);
+      }
+    }
+  }
+
+  private void prefetch(AbsListView view, int position) {
+    String key = prefetchProvider.getKey(position);
+    if (key != null) {
+      imageLoader.prefetch(key, prefetchProvider.getImageResource(position), requestedWidth,
+                           requestedHeight, view, position);
+    }
+  }
+
+  /**
+   * Provides the image of each list position for prefetching, positions are the ones of the list
+   * view, so header views must be considered
+   *
+   * @param <T> Type of the image resources of the loader
+   * @author "M. en C. Javier Silva Perez (JSP)"
+   * @version 1.0
+   * @since 19/10/16
+   */
+  public interface PrefetchProvider<T> {
+
+    /**
+     * @param position List position
+     * @return The key of the image shown at the position, or null if it has no image
+     */
+    public String getKey(int position);
+
+    /**
+     * @param position List position
+     * @return The image resource shown at the position
+     */
+    public T getImageResource(int position);
+  }
+}
@@ -3,8 +3,11 @@ package com.keysd.baseandroid.view.loader;
 import android.graphics.Bitmap;
 import android.util.Log;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -15,6 +18,10 @@ public class MemoryCache {
       .synchronizedMap(new LinkedHashMap<String, Bitmap>(10, 1.5f,
                                                          true));
       //Last argument true for LRU ordering
+  /**
+   * Size variants cached for each image key, see {@link #putVariant(String, int, int, Bitmap)}
+   */
+  private final Map<String, List<Variant>> variants = new HashMap<String, List<Variant>>();
   private long size = 0;//current allocated size
   private long limit = 1000000;//max memory in bytes
 
@@ -55,6 +62,76 @@ public class MemoryCache {
     }
   }
 
+  /**
+   * Gets the best cached bitmap for the image key and the requested size, this is the smallest
+   * cached variant that is at least as large as the requested size, or that was decoded for a
+   * requested size at least as large as this one (so decoding again would not give a better
+   * bitmap)
+   *
+   * @param key
+   * 	Key that identifies the image
+   * @param reqWidth
+   * 	Requested width, 0 or less means no constraint
+   * @param reqHeight
+   * 	Requested height, 0 or less means no constraint
+   * @return The nearest larger cached bitmap or null if no cached variant could be used
+   */
+  public Bitmap getVariant(String key, int reqWidth, int reqHeight) {
+    reqWidth = normalize(reqWidth);
+    reqHeight = normalize(reqHeight);
+    String bestKey = null;
+    synchronized (variants) {
+      List<Variant> keyVariants = variants.get(key);
+      if (keyVariants == null) {
+        return null;
+      }
+      long bestPixels = Long.MAX_VALUE;
+      for (Variant variant : keyVariants) {
+        if (variant.satisfies(reqWidth, reqHeight) && variant.getPixels() < bestPixels) {
+          bestPixels = variant.getPixels();
+          bestKey = variant.cacheKey;
+        }
+      }
+    }
+    return bestKey != null ? get(bestKey) : null;
+  }
+
+  /**
+   * Adds a bitmap decoded for the requested size as a variant of the image key, so later
+   * requests of the same or smaller sizes could reuse it
+   *
+   * @param key
+   * 	Key that identifies the image
+   * @param reqWidth
+   * 	Width requested when the bitmap was decoded, 0 or less means no constraint
+   * @param reqHeight
+   * 	Height requested when the bitmap was decoded, 0 or less means no constraint
+   * @param bitmap
+   * 	Decoded bitmap
+   */
+  public void putVariant(String key, int reqWidth, int reqHeight, Bitmap bitmap) {
+    if (bitmap == null) {
+      return;
+    }
+    Variant variant = new Variant(key, normalize(reqWidth), normalize(reqHeight),
+                                  bitmap.getWidth(), bitmap.getHeight());
+    synchronized (variants) {
+      List<Variant> keyVariants = variants.get(key);
+      if (keyVariants == null) {
+        keyVariants = new LinkedList<Variant>();
+        variants.put(key, keyVariants);
+      }
+      Iterator<Variant> iter = keyVariants.iterator();
+      while (iter.hasNext()) {
+        if (iter.next().cacheKey.equals(variant.cacheKey)) {
+          iter.remove();
+        }
+      }
+      keyVariants.add(variant);
+    }
+    put(variant.cacheKey, bitmap);
+  }
+
   private void checkSize() {
     if (size > limit) {
       Iterator<Entry<String, Bitmap>> iter = cache.entrySet()
@@ -64,6 +141,7 @@ public class MemoryCache {
         Entry<String, Bitmap> entry = iter.next();
         size -= getSizeInBytes(entry.getValue());
         iter.remove();
+        removeVariant(entry.getKey());
         if (size <= limit) {
           break;
         }
@@ -71,11 +149,47 @@ public class MemoryCache {
     }
   }
 
+  /**
+   * Removes the variant entry that corresponds to an evicted cache key, if any
+   *
+   * @param cacheKey
+   * 	Evicted cache key
+   */
+  private void removeVariant(String cacheKey) {
+    int separator = cacheKey.lastIndexOf(Variant.SEPARATOR);
+    if (separator < 0) {
+      return;
+    }
+    synchronized (variants) {
+      String key = cacheKey.substring(0, separator);
+      List<Variant> keyVariants = variants.get(key);
+      if (keyVariants == null) {
+        return;
+      }
+      Iterator<Variant> iter = keyVariants.iterator();
+      while (iter.hasNext()) {
+        if (iter.next().cacheKey.equals(cacheKey)) {
+          iter.remove();
+        }
+      }
+      if (keyVariants.isEmpty()) {
+        variants.remove(key);
+      }
+    }
+  }
+
+  private static int normalize(int requested) {
+    return requested <= 0 ? Integer.MAX_VALUE : requested;
+  }
+
   public void clear() {
     try {
       //NullPointerException sometimes happen here http://code.google
       // .com/p/osmdroid/issues/detail?id=78
       cache.clear();
+      synchronized (variants) {
+        variants.clear();
+      }
       size = 0;
     } catch (NullPointerException ex) {
       ex.printStackTrace();
@@ -88,4 +202,38 @@ public class MemoryCache {
     }
     return bitmap.getRowBytes() * bitmap.getHeight();
   }
-}
\ No newline at end of file
+
+  /**
+   * Size variant of a cached image, saves both the requested size used for decoding and the
+   * actual size of the decoded bitmap
+   */
+  private static class Variant {
+    static final char SEPARATOR = '#';
+
+    final String cacheKey;
+    final int reqWidth;
+    final int reqHeight;
+    final int width;
+    final int height;
+
+    Variant(String key, int reqWidth, int reqHeight, int width, int height) {
+      this.reqWidth = reqWidth;
+      this.reqHeight = reqHeight;
+      this.width = width;
+      this.height = height;
+      this.cacheKey = key + SEPARATOR + width + "x" + height;
+    }
+
+    /**
+     * @return TRUE if this variant could be shown for the requested size without losing quality
+     */
+    boolean satisfies(int requestedWidth, int requestedHeight) {
+      return (width >= requestedWidth && height >= requestedHeight) ||
+          (reqWidth >= requestedWidth && reqHeight >= requestedHeight);
+    }
+
+    long getPixels() {
+      return (long) width * height;
+    }
+  }
+}
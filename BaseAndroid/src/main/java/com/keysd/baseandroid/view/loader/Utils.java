@@ -2,6 +2,7 @@ package com.keysd.baseandroid.view.loader;
 
 import android.util.Log;
 import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -17,4 +18,30 @@ public class Utils {
       Log.e(KeyDictionary.TAG, ex.getMessage(), ex);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Copies the input stream into the output stream using the given buffer, so callers copying
+   * many streams could reuse the same buffer instead of allocating a new one per copy
+   *
+   * @param is
+   * 	Stream to read from
+   * @param os
+   * 	Stream to write to
+   * @param buffer
+   * 	Buffer to be used for the copy
+   * @return The number of bytes copied
+   *
+   * @throws IOException
+   * 	If the streams could not be read or written
+   */
+  public static long copyStream(InputStream is, OutputStream os, byte[] buffer)
+      throws IOException {
+    long total = 0;
+    int bytesRead;
+    while ((bytesRead = is.read(buffer)) != -1) {
+      os.write(buffer, 0, bytesRead);
+      total += bytesRead;
+    }
+    return total;
+  }
+}
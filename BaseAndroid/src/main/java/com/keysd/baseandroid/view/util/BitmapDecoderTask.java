@@ -13,9 +13,12 @@ import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.util.Log;
 import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Decodes a bitmap using an InputStream or a File as input, if the input could not be decoded as a
@@ -46,11 +49,15 @@ public class BitmapDecoderTask<T> extends AsyncTask<T, Void, Bitmap> {
    */
   private int reqHeight;
 
-  private boolean requestedMeasuresSet;
   private CustomAsyncTaskEventListener<Bitmap> customAsyncTaskEventListener;
   private Context context;
 
-  private static final float SCALE_FACTOR = 0.75f;
+  private static final int VARIANT_QUALITY = 90;
+
+  /**
+   * File where a downscaled copy of the decoded bitmap will be saved, could be null
+   */
+  private File variantFile;
 
   /**
    * Constructor, using this constructor the requested image sizes will be established and the
@@ -71,15 +78,13 @@ public class BitmapDecoderTask<T> extends AsyncTask<T, Void, Bitmap> {
     this.reqHeight = reqHeight;
     this.reqWidth = reqWidth;
     this.context = context;
-
-    requestedMeasuresSet = reqHeight > 0 || reqWidth > 0;
   }
 
   /**
    * Constructor, using this constructor no requested height and width will be set, so the bitmap
    * will decode the
    * full
-   * original image, this could cause {@link OutOfMemoryError} exceptions
+   * original image, unless it does not fit the decode memory budget, see {@link DecodePlanner}
    *
    * @param customAsyncTaskEventListener
    * 	Custom event listener that indicates what to do onPostExecute and onPreExecute function
@@ -89,7 +94,6 @@ public class BitmapDecoderTask<T> extends AsyncTask<T, Void, Bitmap> {
     this.customAsyncTaskEventListener = customAsyncTaskEventListener;
     this.reqHeight = 0;
     this.reqWidth = 0;
-    requestedMeasuresSet = false;
     this.context = context;
   }
 
@@ -108,87 +112,62 @@ public class BitmapDecoderTask<T> extends AsyncTask<T, Void, Bitmap> {
 
   @Override
   protected Bitmap doInBackground(T... params) {
-    Boolean complete;
-    InputStream bis = null;
-
     //If not parameters to decode are set, return null
-    if (params == null || params[0] == null) {
+    //Nothing to do either if it was cancelled while queued
+    if (params == null || params[0] == null || isCancelled()) {
       return null;
     }
     try {
-      do {
-        complete = Boolean.TRUE;
-        try {
-          //If no request width or height are specified, set them to integer max value in order
-          // to decode the
-          // image using its full size, this is because at the end the sampling value will always
-          // be 0
-          if (reqWidth <= 0) {
-            reqWidth = Integer.MAX_VALUE;
-          }
-          if (reqHeight <= 0) {
-            reqHeight = Integer.MAX_VALUE;
-          }
-
-          if (params[0] instanceof InputStream) {
-            bis = (InputStream) params[0];
-            return BitmapUtils
-                .decodeSampledBitmapFromStream((InputStream) params[0], reqWidth, reqHeight);
-          } else if (params[0] instanceof File) {
-            return BitmapUtils
-                .decodeSampledBitmapFromFile(((File) params[0]).getAbsolutePath(), reqWidth,
-                                             reqHeight);
-          } else {
-            return BitmapUtils
-                .decodeSampledBitmapFromResource(context.getResources(), (Integer) params[0],
-                                                 reqWidth,
-                                                 reqHeight);
-          }
-
-        } catch (OutOfMemoryError ex) {
-          //If the image is too large, resize it using the half of the actual required height and
-          // width
-          complete = Boolean.FALSE;
-
-          Log.d(KeyDictionary.TAG, "OutOfMemory: W: " + reqWidth + " - H: " + reqHeight);
-
-          //Reset bitmap
-          if (bis != null) {
-            bis.reset();
-          }
-          if (!requestedMeasuresSet) {
-
-            //If no height or width are set, get the actual image sizes
-            // First decode with inJustDecodeBounds=true to check dimensions
-            final BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            if (params[0] instanceof InputStream) {
-              //Mark the buffer for get the actual size
-              if (bis != null) {
-                bis.mark(bis.available());
-              }
-              BitmapFactory.decodeStream((InputStream) params[0], null, options);
-
-              //Reset bitmap
-              if (bis != null) {
-                bis.reset();
-              }
-            } else if (params[0] instanceof File) {
-              BitmapFactory.decodeFile(((File) params[0]).getAbsolutePath(), options);
-            }
-            reqHeight = (int) (options.outHeight * SCALE_FACTOR);
-            reqWidth = (int) (options.outWidth * SCALE_FACTOR);
-
-            requestedMeasuresSet = true;
-          } else {
-            reqHeight = (int) (reqHeight * SCALE_FACTOR);
-            reqWidth = (int) (reqWidth * SCALE_FACTOR);
-          }
-
-          System.gc();
+      //Read the image bounds first, so the decode could be planned before allocating anything
+      final BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+      InputStream bis = null;
+      if (params[0] instanceof InputStream) {
+        //As a InputStream from a HttpUrlConnection can only be used one time its necessary to
+        // rewind it or the actual decode will return a null bitmap
+        bis = (InputStream) params[0];
+        bis.mark(bis.available());
+        BitmapFactory.decodeStream(bis, null, bounds);
+        bis.reset();
+      } else if (params[0] instanceof File) {
+        BitmapFactory.decodeFile(((File) params[0]).getAbsolutePath(), bounds);
+      } else {
+        BitmapFactory.decodeResource(context.getResources(), (Integer) params[0], bounds);
+      }
+      if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+        //Not an image
+        return null;
+      }
 
+      //Get a sample size and configuration that fits the decode memory budget, and wait until
+      // the budget is available instead of running out of memory
+      DecodePlanner planner = DecodePlanner.getInstance();
+      DecodePlanner.DecodePlan plan = planner.plan(bounds, reqWidth, reqHeight);
+      planner.acquire(plan.getBytes());
+      try {
+        //The wait for the budget could be long, skip the decode if cancelled meanwhile
+        if (isCancelled()) {
+          return null;
         }
-      } while (!complete);
+        if (bis != null) {
+          return BitmapFactory.decodeStream(bis, null, plan.getOptions());
+        } else if (params[0] instanceof File) {
+          Bitmap bitmap = BitmapFactory.decodeFile(((File) params[0]).getAbsolutePath(),
+                                                   plan.getOptions());
+          saveVariant((File) params[0], bitmap);
+          return bitmap;
+        } else {
+          return BitmapFactory.decodeResource(context.getResources(), (Integer) params[0],
+                                              plan.getOptions());
+        }
+      } finally {
+        planner.release(plan.getBytes());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (OutOfMemoryError ex) {
+      //The decode was planned to fit the budget, so this means the rest of the heap is full
+      Log.e(KeyDictionary.TAG, "OutOfMemory: W: " + reqWidth + " - H: " + reqHeight, ex);
     } catch (IOException ex) {
       //If the image stream its to large and it could not be reset, it could not be decoded so
       // return null
@@ -206,6 +185,63 @@ public class BitmapDecoderTask<T> extends AsyncTask<T, Void, Bitmap> {
     return null;
   }
 
+  /**
+   * Sets the file where a downscaled copy of the decoded bitmap will be saved when decoding a
+   * {@link java.io.File} input, so later requests of the same or smaller sizes could decode the
+   * small copy instead of the full resolution image. The copy is only saved if the decoded
+   * bitmap is smaller than the source image
+   *
+   * @param variantFile
+   * 	File where the downscaled copy will be saved, null for not saving it
+   */
+  public void setVariantFile(File variantFile) {
+    this.variantFile = variantFile;
+  }
+
+  /**
+   * Saves the decoded bitmap to the variant file, if one was set and the bitmap was downscaled
+   *
+   * @param source
+   * 	Decoded source file
+   * @param bitmap
+   * 	Decoded bitmap
+   */
+  private void saveVariant(File source, Bitmap bitmap) {
+    if (variantFile == null || bitmap == null || variantFile.equals(source)) {
+      return;
+    }
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+    if (bitmap.getWidth() >= options.outWidth && bitmap.getHeight() >= options.outHeight) {
+      return;
+    }
+    File tmp = new File(variantFile.getAbsolutePath() + ".tmp");
+    OutputStream os = null;
+    try {
+      os = new BufferedOutputStream(new FileOutputStream(tmp));
+      Bitmap.CompressFormat format =
+          bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+      if (bitmap.compress(format, VARIANT_QUALITY, os)) {
+        os.close();
+        os = null;
+        if (!tmp.renameTo(variantFile)) {
+          tmp.delete();
+        }
+      }
+    } catch (IOException ex) {
+      Log.e(KeyDictionary.TAG, "Saving variant error: " + ex.getMessage(), ex);
+    } finally {
+      if (os != null) {
+        try {
+          os.close();
+        } catch (IOException ignored) {
+        }
+      }
+      tmp.delete();
+    }
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -0,0 +1,123 @@
+/**
+ * File: BitmapPool
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Pool of mutable bitmaps that are no longer used, so they could be reused as destination of
+ * transformations or decodes instead of allocating new ones
+ */
+
+package com.keysd.baseandroid.view.util;
+
+import android.graphics.Bitmap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Pool of mutable bitmaps that are no longer used, so they could be reused as destination of
+ * transformations or decodes instead of allocating new ones. The pool is bounded by bytes, when
+ * it is full the least recently added bitmaps are recycled. A bitmap must not be used after it is
+ * added to the pool
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class BitmapPool {
+
+  /**
+   * Default pool, a sixteenth of the maximum heap size
+   */
+  private static final BitmapPool DEFAULT_POOL =
+      new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+
+  private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>();
+  private final long maxBytes;
+  private long size;
+
+  /**
+   * Constructor
+   *
+   * @param maxBytes
+   * 	Maximum bytes of the bitmaps kept in the pool
+   */
+  public BitmapPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return The process wide pool
+   */
+  public static BitmapPool getInstance() {
+    return DEFAULT_POOL;
+  }
+
+  /**
+   * Gets a pooled bitmap with the exact size and configuration, the returned bitmap is removed
+   * from the pool and its content is undefined
+   *
+   * @param width
+   * 	Bitmap width
+   * @param height
+   * 	Bitmap height
+   * @param config
+   * 	Bitmap configuration
+   * @return A mutable bitmap, or null if there is no bitmap that matches
+   */
+  public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    Iterator<Bitmap> iterator = bitmaps.iterator();
+    while (iterator.hasNext()) {
+      Bitmap bitmap = iterator.next();
+      if (bitmap.getWidth() == width && bitmap.getHeight() == height &&
+          bitmap.getConfig() == config) {
+        iterator.remove();
+        size -= getSizeInBytes(bitmap);
+        return bitmap;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds a bitmap that is no longer used to the pool, immutable or recycled bitmaps are ignored,
+   * so the caller should recycle them, ej. the decoded bitmaps before KitKat are immutable
+   *
+   * @param bitmap
+   * 	Bitmap to be reused
+   * @return TRUE if the pool took the bitmap, it is pooled or was recycled by the pool, FALSE if
+   * it was ignored
+   */
+  public synchronized boolean put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+      return false;
+    }
+    long bytes = getSizeInBytes(bitmap);
+    if (bytes > maxBytes) {
+      bitmap.recycle();
+      return true;
+    }
+    bitmaps.addLast(bitmap);
+    size += bytes;
+    while (size > maxBytes) {
+      Bitmap evicted = bitmaps.removeFirst();
+      size -= getSizeInBytes(evicted);
+      evicted.recycle();
+    }
+    return true;
+  }
+
+  /**
+   * Recycles all the pooled bitmaps
+   */
+  public synchronized void clear() {
+    for (Bitmap bitmap : bitmaps) {
+      bitmap.recycle();
+    }
+    bitmaps.clear();
+    size = 0;
+  }
+
+  private static long getSizeInBytes(Bitmap bitmap) {
+    return (long) bitmap.getRowBytes() * bitmap.getHeight();
+  }
+}
@@ -9,20 +9,34 @@
 
 package com.keysd.baseandroid.view.util;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Build;
 import android.util.Base64;
+import android.util.Base64InputStream;
+import android.util.Base64OutputStream;
 import android.util.Log;
 import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 
 /**
  * Class that contains common functions across the application as well as static
@@ -34,6 +48,7 @@ import java.io.InputStream;
  */
 public class BitmapUtils {
   private static final float PHOTO_BORDER_WIDTH = 0.0f;
+  private static final int STREAM_BUFFER_SIZE = 8 * 1024;
   private static final Paint sPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
   private static final Paint sStrokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
   private static final Paint sNumPaint = new Paint(Paint.LINEAR_TEXT_FLAG);
@@ -237,6 +252,22 @@ public class BitmapUtils {
    * @return A new Bitmap that correspond to the rotated original bitmap
    */
   public static Bitmap rotateAndFrame(Bitmap bitmap, float angle) {
+    return rotateAndFrame(bitmap, angle, null);
+  }
+
+  /**
+   * Rotates a bitmap in the desired angle (in degrees), drawing it into a bitmap taken from the
+   * pool when there is one of the resulting size
+   *
+   * @param bitmap
+   * 	Bitmap to be rotated
+   * @param angle
+   * 	Angle for rotate the image, in degrees
+   * @param bitmapPool
+   * 	Pool for reusing the destination bitmap, could be null
+   * @return A new Bitmap that correspond to the rotated original bitmap
+   */
+  public static Bitmap rotateAndFrame(Bitmap bitmap, float angle, BitmapPool bitmapPool) {
     final double radAngle = Math.toRadians(angle);
 
     final int bitmapWidth = bitmap.getWidth();
@@ -254,7 +285,7 @@ public class BitmapUtils {
     final float x = (width - bitmapWidth) / 2.0f;
     final float y = (height - bitmapHeight) / 2.0f;
 
-    final Bitmap decored = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    final Bitmap decored = obtainBitmap(bitmapPool, width, height, Bitmap.Config.ARGB_8888);
 
     final Canvas canvas = new Canvas(decored);
 
@@ -263,6 +294,218 @@ public class BitmapUtils {
     return decored;
   }
 
+  /**
+   * Reads the EXIF orientation of an image file
+   *
+   * @param imagePath
+   * 	Absolute image path
+   * @return One of the ExifInterface ORIENTATION constants,
+   * {@link android.media.ExifInterface#ORIENTATION_NORMAL} if the image has no EXIF data or it
+   * could not be read
+   */
+  public static int getExifOrientation(String imagePath) {
+    try {
+      ExifInterface exifInterface = new ExifInterface(imagePath);
+      return exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                                           ExifInterface.ORIENTATION_NORMAL);
+    } catch (IOException e) {
+      Log.e(KeyDictionary.TAG, "Error reading EXIF from " + imagePath + ": " + e);
+      return ExifInterface.ORIENTATION_NORMAL;
+    }
+  }
+
+  /**
+   * Checks if an EXIF orientation swaps the width and height of the image
+   *
+   * @param orientation
+   * 	EXIF orientation
+   * @return True if the image is rotated 90 or 270 degrees
+   */
+  public static boolean isTransposed(int orientation) {
+    return orientation == ExifInterface.ORIENTATION_ROTATE_90 ||
+        orientation == ExifInterface.ORIENTATION_ROTATE_270 ||
+        orientation == ExifInterface.ORIENTATION_TRANSPOSE ||
+        orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+  }
+
+  /**
+   * Gets the transformation that shows an image upright from its EXIF orientation, rotations
+   * and flips are combined in a single matrix
+   *
+   * @param orientation
+   * 	EXIF orientation
+   * @return The transformation matrix, null if the image is already upright
+   */
+  public static Matrix getExifMatrix(int orientation) {
+    Matrix matrix = new Matrix();
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+        matrix.setScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        matrix.setRotate(180);
+        break;
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+        matrix.setScale(1, -1);
+        break;
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+        matrix.setRotate(90);
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        matrix.setRotate(90);
+        break;
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        matrix.setRotate(-90);
+        matrix.postScale(-1, 1);
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        matrix.setRotate(-90);
+        break;
+      default:
+        return null;
+    }
+    return matrix;
+  }
+
+  /**
+   * Gets a sampled and upright bitmap from a file, the EXIF orientation is read first so the
+   * sample size is calculated over the displayed width and height, and the rotation or flip is
+   * applied in a single draw of the sampled bitmap, never of the full size image
+   *
+   * @param imagePath
+   * 	Absolute image path
+   * @param reqWidth
+   * 	Requested with of the upright image, ej. the with of the image view
+   * @param reqHeight
+   * 	Request height of the upright image, ej. the height of the image view
+   * @return The sampled and upright Bitmap, null if the file could not be decoded
+   * @see #decodeSampledBitmapFromFileOriented(String, int, int, BitmapPool)
+   */
+  public static Bitmap decodeSampledBitmapFromFileOriented(String imagePath, int reqWidth,
+      int reqHeight) {
+    return decodeSampledBitmapFromFileOriented(imagePath, reqWidth, reqHeight, null);
+  }
+
+  /**
+   * Gets a sampled and upright bitmap from a file, the EXIF orientation is read first so the
+   * sample size is calculated over the displayed width and height, and the rotation or flip is
+   * applied in a single draw of the sampled bitmap, never of the full size image.
+   * <p/>
+   * When a pool is given, the destination of the transformation is taken from it and the
+   * intermediate sampled bitmap is returned to it afterwards, so decoding a series of photos of
+   * the same size does not allocate a new pair of bitmaps each time. On KitKat and above the
+   * pooled bitmaps are also reused for decoding, through
+   * {@link android.graphics.BitmapFactory.Options#inBitmap}
+   *
+   * @param imagePath
+   * 	Absolute image path
+   * @param reqWidth
+   * 	Requested with of the upright image, ej. the with of the image view
+   * @param reqHeight
+   * 	Request height of the upright image, ej. the height of the image view
+   * @param bitmapPool
+   * 	Pool for reusing bitmaps, could be null
+   * @return The sampled and upright Bitmap, null if the file could not be decoded
+   */
+  public static Bitmap decodeSampledBitmapFromFileOriented(String imagePath, int reqWidth,
+      int reqHeight, BitmapPool bitmapPool) {
+    int orientation = getExifOrientation(imagePath);
+    boolean transposed = isTransposed(orientation);
+
+    final BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(imagePath, bounds);
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+      return null;
+    }
+
+    //The requested measures are for the upright image, the file is decoded before the rotation
+    DecodePlanner planner = DecodePlanner.getInstance();
+    DecodePlanner.DecodePlan plan = transposed ? planner.plan(bounds, reqHeight, reqWidth) :
+        planner.plan(bounds, reqWidth, reqHeight);
+    BitmapFactory.Options options = plan.getOptions();
+
+    Bitmap decoded;
+    try {
+      planner.acquire(plan.getBytes());
+      try {
+        decoded = decodeFileReusing(imagePath, bounds, options, bitmapPool);
+      } finally {
+        planner.release(plan.getBytes());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+
+    Matrix matrix = getExifMatrix(orientation);
+    if (decoded == null || matrix == null) {
+      return decoded;
+    }
+
+    int width = transposed ? decoded.getHeight() : decoded.getWidth();
+    int height = transposed ? decoded.getWidth() : decoded.getHeight();
+    Bitmap.Config config =
+        decoded.getConfig() != null ? decoded.getConfig() : Bitmap.Config.ARGB_8888;
+    //Move the transformed image back to the origin of the destination bitmap
+    RectF mapped = new RectF(0, 0, decoded.getWidth(), decoded.getHeight());
+    matrix.mapRect(mapped);
+    matrix.postTranslate(-mapped.left, -mapped.top);
+
+    Bitmap oriented = obtainBitmap(bitmapPool, width, height, config);
+    Canvas canvas = new Canvas(oriented);
+    canvas.drawBitmap(decoded, matrix, sPaint);
+    //Immutable bitmaps are not pooled, ej. the ones decoded before KitKat
+    if (bitmapPool == null || !bitmapPool.put(decoded)) {
+      decoded.recycle();
+    }
+    return oriented;
+  }
+
+  /**
+   * Gets a cleared bitmap from the pool, or creates a new one if there is none of the same size
+   * and configuration
+   */
+  private static Bitmap obtainBitmap(BitmapPool bitmapPool, int width, int height,
+      Bitmap.Config config) {
+    Bitmap bitmap = bitmapPool != null ? bitmapPool.get(width, height, config) : null;
+    if (bitmap == null) {
+      return Bitmap.createBitmap(width, height, config);
+    }
+    bitmap.eraseColor(Color.TRANSPARENT);
+    return bitmap;
+  }
+
+  /**
+   * Decodes a file reusing a pooled bitmap when possible, the decoded bitmap is mutable so it
+   * could be returned to the pool afterwards
+   */
+  @TargetApi(Build.VERSION_CODES.KITKAT)
+  private static Bitmap decodeFileReusing(String imagePath, BitmapFactory.Options bounds,
+      BitmapFactory.Options options, BitmapPool bitmapPool) {
+    //Before KitKat inBitmap requires the same size and no sampling, so it is barely reusable
+    if (bitmapPool == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+      return BitmapFactory.decodeFile(imagePath, options);
+    }
+    int sampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+    options.inMutable = true;
+    options.inBitmap = bitmapPool.get((bounds.outWidth + sampleSize - 1) / sampleSize,
+                                      (bounds.outHeight + sampleSize - 1) / sampleSize,
+                                      options.inPreferredConfig);
+    if (options.inBitmap == null) {
+      return BitmapFactory.decodeFile(imagePath, options);
+    }
+    try {
+      return BitmapFactory.decodeFile(imagePath, options);
+    } catch (IllegalArgumentException e) {
+      //The pooled bitmap could not be reused by the decoder
+      bitmapPool.put(options.inBitmap);
+      options.inBitmap = null;
+      return BitmapFactory.decodeFile(imagePath, options);
+    }
+  }
+
   /**
    * Este método disminuye el bitmap
    *
@@ -302,6 +545,7 @@ public class BitmapUtils {
    * @param bitmap
    * 	el bitmap a convertir
    * @return encodedImage cadena base64
+   * @see #compressToBase64(Bitmap, Bitmap.CompressFormat, int, int, OutputStream)
    */
   public static String convertBitmapToStringBase64(Bitmap bitmap) {
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -318,6 +562,7 @@ public class BitmapUtils {
    * 	cadena base 64
    * @return bitmap devuelve el bitmap generado de la cadena base64
    * si ocurre un error regresa nulo
+   * @see #decodeBase64Stream(Reader, int, BitmapFactory.Options)
    */
   public static Bitmap convertStringToBitMap(String encodedString) {
     Bitmap bitmap = null;
@@ -336,6 +581,7 @@ public class BitmapUtils {
    *
    * @param bmap
    * 	Bitmap to be compress
+   * @see #compressToBase64(Bitmap, Bitmap.CompressFormat, int, int, OutputStream)
    */
   public static String convertImage(Bitmap bmap) {
 
@@ -352,6 +598,157 @@ public class BitmapUtils {
     }
     return image;
   }
-}
 
+  /**
+   * Compress a bitmap and writes it encoded in Base64 to the output stream, without keeping the
+   * compressed image or the encoded string in memory, so it could be written straight into a file
+   * or a HTTP request body. The output stream is flushed but not closed, so more content could be
+   * written after the image
+   *
+   * @param bitmap
+   * 	Bitmap to be compressed
+   * @param format
+   * 	Compression format
+   * @param quality
+   * 	Compression quality, from 0 to 100
+   * @param base64Flags
+   * 	Base64 flags, ej. {@link android.util.Base64#NO_WRAP}
+   * @param out
+   * 	Stream where the encoded image will be written
+   * @return TRUE if the bitmap was successfully compressed
+   *
+   * @throws IOException
+   * 	If the stream could not be written
+   */
+  public static boolean compressToBase64(Bitmap bitmap, Bitmap.CompressFormat format, int quality,
+      int base64Flags, OutputStream out) throws IOException {
+    Base64OutputStream base64Out =
+        new Base64OutputStream(new NonClosingOutputStream(out), base64Flags);
+    boolean compressed;
+    try {
+      compressed = bitmap.compress(format, quality, base64Out);
+    } finally {
+      //Closing the Base64 stream writes the final padding
+      base64Out.close();
+    }
+    return compressed;
+  }
+
+  /**
+   * Compress a bitmap and writes it encoded in Base64 into a file, see
+   * {@link #compressToBase64(Bitmap, Bitmap.CompressFormat, int, int, OutputStream)}
+   *
+   * @param bitmap
+   * 	Bitmap to be compressed
+   * @param format
+   * 	Compression format
+   * @param quality
+   * 	Compression quality, from 0 to 100
+   * @param base64Flags
+   * 	Base64 flags, ej. {@link android.util.Base64#NO_WRAP}
+   * @param file
+   * 	File where the encoded image will be saved
+   * @return TRUE if the bitmap was successfully compressed
+   *
+   * @throws IOException
+   * 	If the file could not be written
+   */
+  public static boolean compressToBase64(Bitmap bitmap, Bitmap.CompressFormat format, int quality,
+      int base64Flags, File file) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file), STREAM_BUFFER_SIZE);
+    try {
+      return compressToBase64(bitmap, format, quality, base64Flags, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Decodes a bitmap from a Base64 encoded image read from a stream, the encoded string is never
+   * fully loaded in memory
+   *
+   * @param in
+   * 	Stream with the Base64 encoded image
+   * @param base64Flags
+   * 	Base64 flags used when the image was encoded
+   * @param options
+   * 	Decode options, could be null
+   * @return The decoded bitmap, or null if the image could not be decoded
+   */
+  public static Bitmap decodeBase64Stream(InputStream in, int base64Flags,
+      BitmapFactory.Options options) {
+    return BitmapFactory.decodeStream(
+        new Base64InputStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE), base64Flags), null,
+        options);
+  }
+
+  /**
+   * Decodes a bitmap from a Base64 encoded image read from a Reader, ej. a JSON string value
+   * being streamed, the encoded string is never fully loaded in memory. This is the streaming
+   * version of {@link #convertStringToBitMap(String)}
+   *
+   * @param reader
+   * 	Reader with the Base64 encoded image
+   * @param base64Flags
+   * 	Base64 flags used when the image was encoded
+   * @param options
+   * 	Decode options, could be null
+   * @return The decoded bitmap, or null if the image could not be decoded
+   */
+  public static Bitmap decodeBase64Stream(Reader reader, int base64Flags,
+      BitmapFactory.Options options) {
+    return decodeBase64Stream(new AsciiReaderInputStream(reader), base64Flags, options);
+  }
+
+  /**
+   * Output stream that flushes instead of closing the wrapped stream
+   */
+  private static class NonClosingOutputStream extends FilterOutputStream {
+
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      out.write(buffer, offset, length);
+    }
 
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  /**
+   * Input stream over a Reader of ASCII characters, as Base64 text, each character is returned
+   * as one byte
+   */
+  private static class AsciiReaderInputStream extends InputStream {
+    private final Reader reader;
+    private final char[] chars = new char[STREAM_BUFFER_SIZE];
+
+    AsciiReaderInputStream(Reader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return reader.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = reader.read(chars, 0, Math.min(length, chars.length));
+      for (int i = 0; i < read; i++) {
+        buffer[offset + i] = (byte) chars[i];
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * File: DecodePlanner
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Plans bitmap decodes from the image bounds so they fit a memory budget shared by all the
+ * concurrent decodes
+ */
+
+package com.keysd.baseandroid.view.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Plans bitmap decodes from the image bounds, read using
+ * {@link android.graphics.BitmapFactory.Options#inJustDecodeBounds}, so the decoded bitmap fits a
+ * memory budget shared by all the concurrent decodes. The plan chooses the sample size for the
+ * requested size and, if the result still does not fit the budget, uses
+ * {@link android.graphics.Bitmap.Config#RGB_565} for opaque images and larger sample sizes until
+ * it fits. Before decoding, {@link #acquire(long)} must be called with the planned bytes, it
+ * waits while the budget is used by other decodes, and {@link #release(long)} once the decode
+ * finishes
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class DecodePlanner {
+
+  /**
+   * Default budget, a eighth of the maximum heap size
+   */
+  private static final DecodePlanner DEFAULT_PLANNER =
+      new DecodePlanner(Runtime.getRuntime().maxMemory() / 8);
+
+  private static final String MIME_TYPE_JPEG = "image/jpeg";
+
+  /**
+   * Total bytes that concurrent decodes could use
+   */
+  private final long budget;
+
+  /**
+   * Bytes used by the decodes in progress
+   */
+  private long inUse;
+
+  /**
+   * Constructor
+   *
+   * @param budget
+   * 	Total bytes that concurrent decodes could use
+   */
+  public DecodePlanner(long budget) {
+    this.budget = budget;
+  }
+
+  /**
+   * @return The process wide planner
+   */
+  public static DecodePlanner getInstance() {
+    return DEFAULT_PLANNER;
+  }
+
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Gets the number of bytes used by each pixel on the selected configuration
+   *
+   * @param config
+   * 	Bitmap configuration
+   * @return Bytes per pixel
+   */
+  public static int getBytesPerPixel(Bitmap.Config config) {
+    if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+      return 2;
+    } else if (config == Bitmap.Config.ALPHA_8) {
+      return 1;
+    }
+    return 4;
+  }
+
+  /**
+   * Computes the exact number of bytes of a decoded bitmap. Some decoders only use powers of two
+   * as sample size, so the nearest lower power of two is used, which is the worst case
+   *
+   * @param width
+   * 	Image width
+   * @param height
+   * 	Image height
+   * @param inSampleSize
+   * 	Sample size to be used for decoding
+   * @param config
+   * 	Bitmap configuration to be used for decoding
+   * @return Bytes of the decoded bitmap
+   */
+  public static long getDecodedBytes(int width, int height, int inSampleSize,
+      Bitmap.Config config) {
+    int sampleSize = Integer.highestOneBit(Math.max(1, inSampleSize));
+    long sampledWidth = (width + sampleSize - 1) / sampleSize;
+    long sampledHeight = (height + sampleSize - 1) / sampleSize;
+    return sampledWidth * sampledHeight * getBytesPerPixel(config);
+  }
+
+  /**
+   * Plans the decode of an image, the resulting options could be used for decoding the image
+   * directly
+   *
+   * @param bounds
+   * 	Options filled up by a decode with inJustDecodeBounds set
+   * @param reqWidth
+   * 	Requested width, 0 or less or Integer.MAX_VALUE means that it should be proportional to the
+   * 	requested height
+   * @param reqHeight
+   * 	Requested height, 0 or less or Integer.MAX_VALUE means that it should be proportional to
+   * 	the requested width
+   * @return The decode plan
+   */
+  public DecodePlan plan(BitmapFactory.Options bounds, int reqWidth, int reqHeight) {
+    boolean widthSet = reqWidth > 0 && reqWidth < Integer.MAX_VALUE;
+    boolean heightSet = reqHeight > 0 && reqHeight < Integer.MAX_VALUE;
+    if (!widthSet && !heightSet) {
+      reqWidth = bounds.outWidth;
+      reqHeight = bounds.outHeight;
+    } else if (!heightSet) {
+      //Calculate the height in proportion to the requested width
+      reqHeight = (int) ((reqWidth / (bounds.outWidth * 1.0)) * bounds.outHeight);
+    } else if (!widthSet) {
+      //Calculate the width in proportion to the requested height
+      reqWidth = (int) ((reqHeight / (bounds.outHeight * 1.0)) * bounds.outWidth);
+    }
+
+    int inSampleSize = Math.max(1, BitmapUtils.calculateInSampleSize(bounds, reqWidth,
+                                                                     reqHeight));
+    Bitmap.Config config = Bitmap.Config.ARGB_8888;
+    long bytes = getDecodedBytes(bounds.outWidth, bounds.outHeight, inSampleSize, config);
+    //JPEG images have no alpha, so half of the memory could be saved without losing quality
+    if (bytes > budget && MIME_TYPE_JPEG.equals(bounds.outMimeType)) {
+      config = Bitmap.Config.RGB_565;
+      bytes = getDecodedBytes(bounds.outWidth, bounds.outHeight, inSampleSize, config);
+    }
+    while (bytes > budget) {
+      inSampleSize *= 2;
+      bytes = getDecodedBytes(bounds.outWidth, bounds.outHeight, inSampleSize, config);
+    }
+
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = inSampleSize;
+    options.inPreferredConfig = config;
+    return new DecodePlan(options, bytes);
+  }
+
+  /**
+   * Reserves memory from the budget for a decode, waiting while there is not enough memory
+   * available. A decode that alone uses the full budget only waits for the other decodes to
+   * finish
+   *
+   * @param bytes
+   * 	Bytes to reserve, as planned by {@link #plan(BitmapFactory.Options, int, int)}
+   * @throws InterruptedException
+   * 	If the thread is interrupted while waiting
+   */
+  public synchronized void acquire(long bytes) throws InterruptedException {
+    while (inUse > 0 && inUse + bytes > budget) {
+      wait();
+    }
+    inUse += bytes;
+  }
+
+  /**
+   * Returns the memory reserved for a decode to the budget
+   *
+   * @param bytes
+   * 	Reserved bytes
+   */
+  public synchronized void release(long bytes) {
+    inUse = Math.max(0, inUse - bytes);
+    notifyAll();
+  }
+
+  /**
+   * Result of a decode planning
+   */
+  public static class DecodePlan {
+    private final BitmapFactory.Options options;
+    private final long bytes;
+
+    private DecodePlan(BitmapFactory.Options options, long bytes) {
+      this.options = options;
+      this.bytes = bytes;
+    }
+
+    /**
+     * @return The options to be used for decoding the image
+     */
+    public BitmapFactory.Options getOptions() {
+      return options;
+    }
+
+    /**
+     * @return The bytes of the decoded bitmap
+     */
+    public long getBytes() {
+      return bytes;
+    }
+  }
+}
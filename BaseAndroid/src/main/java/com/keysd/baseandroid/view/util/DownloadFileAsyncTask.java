@@ -0,0 +1,113 @@
+/**
+ * File: DownloadFileAsyncTask.java
+ * CreationDate: 19/10/2016
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * AsyncTask for download a resource directly into a cache file, the result of the task is the
+ * downloaded file so it could be decoded by path, without reading the downloaded stream twice
+ */
+
+package com.keysd.baseandroid.view.util;
+
+import android.os.AsyncTask;
+import android.util.Log;
+import com.keysd.baseandroid.util.KeyDictionary;
+import com.keysd.baseandroid.view.loader.FileDownloader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * AsyncTask for download a resource directly into a cache file, the result of the task is the
+ * downloaded file so it could be decoded by path using
+ * {@link BitmapUtils#decodeSampledBitmapFromFile(String, int, int)}, which reads the image
+ * bounds and then decodes a sampled version without the mark/reset limitations of the streams
+ * returned by {@link DownloadImageAsyncTask}. Interrupted downloads are resumed using HTTP Range
+ * requests, see {@link FileDownloader}
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/2016
+ */
+public class DownloadFileAsyncTask extends AsyncTask<String, Void, File> {
+
+  private static final FileDownloader DEFAULT_DOWNLOADER = new FileDownloader();
+
+  private CustomAsyncTaskEventListener<File> customAsyncTaskEventListener;
+  private File cacheFile;
+  private FileDownloader fileDownloader;
+
+  /**
+   * Constructor receives the event listener for this async task and the cache file where the
+   * downloaded resource will be saved
+   *
+   * @param customAsyncTaskEventListener
+   * 	Listener with the basic asyncTask methods that will be invoked in the different steps of
+   * 	this async task
+   * @param cacheFile
+   * 	Cache file where the downloaded resource will be saved
+   */
+  public DownloadFileAsyncTask(CustomAsyncTaskEventListener<File> customAsyncTaskEventListener,
+      File cacheFile) {
+    this(customAsyncTaskEventListener, cacheFile, DEFAULT_DOWNLOADER);
+  }
+
+  /**
+   * Constructor receives the event listener for this async task, the cache file and the
+   * downloader to be used, for custom time outs
+   *
+   * @param customAsyncTaskEventListener
+   * 	Listener with the basic asyncTask methods that will be invoked in the different steps of
+   * 	this async task
+   * @param cacheFile
+   * 	Cache file where the downloaded resource will be saved
+   * @param fileDownloader
+   * 	Downloader to be used
+   */
+  public DownloadFileAsyncTask(CustomAsyncTaskEventListener<File> customAsyncTaskEventListener,
+      File cacheFile, FileDownloader fileDownloader) {
+    this.customAsyncTaskEventListener = customAsyncTaskEventListener;
+    this.cacheFile = cacheFile;
+    this.fileDownloader = fileDownloader;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see android.os.AsyncTask#onPreExecute()
+   */
+  @Override
+  protected void onPreExecute() {
+    if (customAsyncTaskEventListener != null) {
+      customAsyncTaskEventListener.onPreExecute();
+    }
+  }
+
+  @Override
+  protected File doInBackground(String... params) {
+    //Cancelled while queued, ej. its list position scrolled away
+    if (isCancelled()) {
+      return null;
+    }
+    try {
+      return fileDownloader.download(params[0], cacheFile);
+    } catch (IOException e) {
+      Log.e(KeyDictionary.TAG, "Download error: " + e);
+      if (customAsyncTaskEventListener != null) {
+        customAsyncTaskEventListener.setErrorCause(e);
+      }
+    }
+    return null;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+   */
+  @Override
+  protected void onPostExecute(File result) {
+    if (customAsyncTaskEventListener != null) {
+      customAsyncTaskEventListener.onPostExecute(result);
+    }
+  }
+}
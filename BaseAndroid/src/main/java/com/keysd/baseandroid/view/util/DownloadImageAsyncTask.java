@@ -19,14 +19,13 @@ package com.keysd.baseandroid.view.util;
 import android.os.AsyncTask;
 import android.util.Log;
 import com.keysd.baseandroid.util.KeyDictionary;
-import com.keysd.baseandroid.view.loader.Utils;
+import com.keysd.baseandroid.view.loader.FileDownloader;
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -40,7 +39,8 @@ import java.net.URL;
  * the other hand if no
  * cache its been used the downloading task will return the BufferedInputStream that comes from
  * the HttpURLConnection,
- * be careful with this stream because it can only be used ones!
+ * be careful with this stream because it can only be used ones! When a cache file is available
+ * prefer {@link DownloadFileAsyncTask}, so the file could be decoded by path
  *
  * @author "M. en C. Javier Silva Perez (JSP)"
  * @version 1.5
@@ -100,24 +100,12 @@ public class DownloadImageAsyncTask extends AsyncTask<String, Void, InputStream>
   @Override
   protected InputStream doInBackground(String... params) {
     try {
-      URL openPoster = new URL(params[0]);
-      HttpURLConnection conn = (HttpURLConnection) openPoster.openConnection();
-      conn.setConnectTimeout(1000);
-      conn.setReadTimeout(5000);
-      conn.setInstanceFollowRedirects(true);
-      conn.connect();
-      InputStream is = conn.getInputStream();
-      BufferedInputStream bis = new BufferedInputStream(is);
-
-      //If cache file is not null, the file should be saved on cache
+      //If cache file is not null, the resource is streamed straight into the file
       if (cacheFile != null) {
         try {
-          //Save the downloaded stream to the file
-          OutputStream os = new FileOutputStream(cacheFile);
-          Utils.CopyStream(bis, os);
-          os.close();
+          File file = new FileDownloader().download(params[0], new File(cacheFile));
           //Load the file and return its stream
-          return new FileInputStream(cacheFile);
+          return new FileInputStream(file);
         } catch (FileNotFoundException e) {
           Log.e(KeyDictionary.TAG, "Saving to cache error: " + e.getMessage(), e);
         } catch (IOException e) {
@@ -125,7 +113,14 @@ public class DownloadImageAsyncTask extends AsyncTask<String, Void, InputStream>
         }
       }
 
-      return bis;
+      URL openPoster = new URL(params[0]);
+      HttpURLConnection conn = (HttpURLConnection) openPoster.openConnection();
+      conn.setConnectTimeout(1000);
+      conn.setReadTimeout(5000);
+      conn.setInstanceFollowRedirects(true);
+      conn.connect();
+      InputStream is = conn.getInputStream();
+      return new BufferedInputStream(is);
     } catch (MalformedURLException e) {
       Log.e(KeyDictionary.TAG, "Download error: " + e.getMessage());
       if (customAsyncTaskEventListener != null) {
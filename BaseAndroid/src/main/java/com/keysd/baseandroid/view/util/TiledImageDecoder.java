@@ -0,0 +1,525 @@
+/**
+ * File: TiledImageDecoder
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Decodes large images by tiles, only the tiles of the visible viewport are decoded at the
+ * sample size that corresponds to the current zoom level
+ */
+
+package com.keysd.baseandroid.view.util;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.keysd.baseandroid.util.KeyDictionary;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes large images by tiles using {@link android.graphics.BitmapRegionDecoder}, so zooming
+ * into big photos or scans does not need the whole image in memory. The caller, usually a custom
+ * view, asks for the tiles of the visible viewport (in image coordinates) at the current scale
+ * with {@link #getTiles(android.graphics.Rect, float)}; the tiles already decoded are returned
+ * and the missing ones are decoded in a background thread, notifying
+ * {@link OnTileLoadedListener} on the UI thread so the view could be invalidated.
+ * <p/>
+ * Tiles are decoded using the largest power of two sample size that keeps the image resolution
+ * above the screen resolution, and are kept in a LRU cache bounded by bytes, so memory use only
+ * depends on the viewport and the cache size, not on the source image size. Tiles requested for
+ * a previous viewport that have not been decoded yet are discarded.
+ * <p/>
+ * BitmapRegionDecoder is only available from API 10, on API 9 the image is decoded once with
+ * the smallest power of two sample size that fits the cache size and the tiles are cut from it,
+ * so deep zoom levels are upscaled instead of decoded at full resolution.
+ * <p/>
+ * Call {@link #recycle()} once the image is not needed anymore.
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class TiledImageDecoder {
+
+  /**
+   * Default tile size in pixels of the decoded tile
+   */
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  private final TileSource source;
+  private final int tileSize;
+  private final Bitmap.Config config;
+  private final TileCache tileCache;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private OnTileLoadedListener onTileLoadedListener;
+
+  /**
+   * Tiles waiting to be decoded, only the ones of the latest viewport are kept
+   */
+  private final Set<TileKey> queued = new HashSet<TileKey>();
+
+  /**
+   * Opens a tiled decoder for an image file, using the default tile size, ARGB_8888 tiles and a
+   * cache of a sixteenth of the heap
+   *
+   * @param imagePath
+   * 	Absolute image path
+   * @throws IOException
+   * 	If the image could not be opened or its format is not supported
+   */
+  public TiledImageDecoder(String imagePath) throws IOException {
+    this(imagePath, DEFAULT_TILE_SIZE, Bitmap.Config.ARGB_8888,
+         Runtime.getRuntime().maxMemory() / 16);
+  }
+
+  /**
+   * Opens a tiled decoder for an image file
+   *
+   * @param imagePath
+   * 	Absolute image path
+   * @param tileSize
+   * 	Size in pixels of the decoded tiles
+   * @param config
+   * 	Configuration of the decoded tiles, RGB_565 halves the memory for opaque images
+   * @param maxCacheBytes
+   * 	Maximum bytes of decoded tiles kept in memory
+   * @throws IOException
+   * 	If the image could not be opened or its format is not supported
+   */
+  public TiledImageDecoder(String imagePath, int tileSize, Bitmap.Config config,
+      long maxCacheBytes) throws IOException {
+    this.source = Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1 ?
+        new RegionTileSource(imagePath) : new SampledTileSource(imagePath, config, maxCacheBytes);
+    this.tileSize = tileSize;
+    this.config = config;
+    this.tileCache = new TileCache(maxCacheBytes);
+  }
+
+  public void setOnTileLoadedListener(OnTileLoadedListener onTileLoadedListener) {
+    this.onTileLoadedListener = onTileLoadedListener;
+  }
+
+  /**
+   * @return The source image width
+   */
+  public int getImageWidth() {
+    return source.getWidth();
+  }
+
+  /**
+   * @return The source image height
+   */
+  public int getImageHeight() {
+    return source.getHeight();
+  }
+
+  /**
+   * Gets the sample size for a scale, this is the largest power of two that keeps the decoded
+   * resolution equal or above the shown one
+   *
+   * @param scale
+   * 	Shown pixels per image pixel, ej. 0.25 when the image is shown at a quarter of its size
+   * @return The sample size to be used for decoding the tiles
+   */
+  public static int getSampleSize(float scale) {
+    if (scale >= 1f || scale <= 0f) {
+      return 1;
+    }
+    return Integer.highestOneBit((int) (1f / scale));
+  }
+
+  /**
+   * Gets the decoded tiles that cover the viewport and queues the decoding of the missing ones,
+   * the queued tiles of previous viewports that have not been decoded yet are discarded
+   *
+   * @param viewport
+   * 	Visible rectangle in image coordinates
+   * @param scale
+   * 	Shown pixels per image pixel
+   * @return The tiles already decoded, the listener is notified when the missing ones are ready
+   */
+  public List<Tile> getTiles(Rect viewport, float scale) {
+    int sampleSize = getSampleSize(scale);
+    int span = tileSize * sampleSize;
+    Rect bounds = new Rect(0, 0, getImageWidth(), getImageHeight());
+    List<Tile> tiles = new LinkedList<Tile>();
+    Set<TileKey> visible = new HashSet<TileKey>();
+    if (!bounds.intersect(viewport)) {
+      return tiles;
+    }
+    int firstColumn = bounds.left / span;
+    int lastColumn = (bounds.right - 1) / span;
+    int firstRow = bounds.top / span;
+    int lastRow = (bounds.bottom - 1) / span;
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        TileKey key = new TileKey(sampleSize, column, row);
+        Tile tile = tileCache.get(key);
+        if (tile != null) {
+          tiles.add(tile);
+        } else {
+          visible.add(key);
+        }
+      }
+    }
+    synchronized (queued) {
+      queued.retainAll(visible);
+      for (TileKey key : visible) {
+        if (queued.add(key)) {
+          executor.execute(new DecodeTileRunnable(key));
+        }
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Releases the decoded tiles and the region decoder, this decoder could not be used after this
+   */
+  public void recycle() {
+    executor.shutdownNow();
+    synchronized (queued) {
+      queued.clear();
+    }
+    tileCache.clear();
+    synchronized (source) {
+      source.recycle();
+    }
+  }
+
+  /**
+   * Decodes a tile, if it is still part of the latest viewport
+   */
+  private class DecodeTileRunnable implements Runnable {
+    private final TileKey key;
+
+    private DecodeTileRunnable(TileKey key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      synchronized (queued) {
+        if (!queued.contains(key)) {
+          return;
+        }
+      }
+      int span = tileSize * key.sampleSize;
+      Rect rect = new Rect(key.column * span, key.row * span,
+                           Math.min((key.column + 1) * span, getImageWidth()),
+                           Math.min((key.row + 1) * span, getImageHeight()));
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = key.sampleSize;
+      options.inPreferredConfig = config;
+
+      //Tile decodes share the decode memory budget with the rest of the bitmap decodes
+      DecodePlanner planner = DecodePlanner.getInstance();
+      long bytes = DecodePlanner.getDecodedBytes(rect.width(), rect.height(), key.sampleSize,
+                                                 config);
+      Bitmap bitmap = null;
+      try {
+        planner.acquire(bytes);
+        try {
+          synchronized (source) {
+            bitmap = source.decodeRegion(rect, options);
+          }
+        } finally {
+          planner.release(bytes);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (OutOfMemoryError ex) {
+        Log.e(KeyDictionary.TAG, "OutOfMemory decoding tile " + rect, ex);
+      }
+
+      synchronized (queued) {
+        queued.remove(key);
+      }
+      if (bitmap != null) {
+        final Tile tile = new Tile(rect, key.sampleSize, bitmap);
+        tileCache.put(key, tile);
+        handler.post(new Runnable() {
+          @Override
+          public void run() {
+            if (onTileLoadedListener != null) {
+              onTileLoadedListener.onTileLoaded(tile);
+            }
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Decodes the tiles of the source image, the calls must be synchronized on the source
+   */
+  private interface TileSource {
+
+    public int getWidth();
+
+    public int getHeight();
+
+    /**
+     * @return The decoded region, or null if it could not be decoded or the source is recycled
+     */
+    public Bitmap decodeRegion(Rect rect, BitmapFactory.Options options);
+
+    public void recycle();
+  }
+
+  /**
+   * Decodes each tile from the file with {@link android.graphics.BitmapRegionDecoder}
+   */
+  @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+  private static class RegionTileSource implements TileSource {
+    private final BitmapRegionDecoder regionDecoder;
+
+    RegionTileSource(String imagePath) throws IOException {
+      regionDecoder = BitmapRegionDecoder.newInstance(imagePath, false);
+    }
+
+    @Override
+    public int getWidth() {
+      return regionDecoder.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return regionDecoder.getHeight();
+    }
+
+    @Override
+    public Bitmap decodeRegion(Rect rect, BitmapFactory.Options options) {
+      return regionDecoder.isRecycled() ? null : regionDecoder.decodeRegion(rect, options);
+    }
+
+    @Override
+    public void recycle() {
+      regionDecoder.recycle();
+    }
+  }
+
+  /**
+   * Fallback for API 9, decodes the whole image once at a sample size that fits the cache size
+   * and cuts the tiles from it
+   */
+  private static class SampledTileSource implements TileSource {
+    private final String imagePath;
+    private final int width;
+    private final int height;
+    private final int imageSampleSize;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Bitmap image;
+    private boolean recycled;
+
+    SampledTileSource(String imagePath, Bitmap.Config config, long maxBytes)
+        throws IOException {
+      BitmapFactory.Options bounds = new BitmapFactory.Options();
+      bounds.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(imagePath, bounds);
+      if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+        throw new IOException("Image could not be opened: " + imagePath);
+      }
+      this.imagePath = imagePath;
+      this.width = bounds.outWidth;
+      this.height = bounds.outHeight;
+      int sampleSize = 1;
+      while (DecodePlanner.getDecodedBytes(width, height, sampleSize, config) > maxBytes) {
+        sampleSize *= 2;
+      }
+      this.imageSampleSize = sampleSize;
+    }
+
+    @Override
+    public int getWidth() {
+      return width;
+    }
+
+    @Override
+    public int getHeight() {
+      return height;
+    }
+
+    @Override
+    public Bitmap decodeRegion(Rect rect, BitmapFactory.Options options) {
+      if (recycled) {
+        return null;
+      }
+      if (image == null) {
+        //Decoded on the first tile, so the constructor only reads the bounds
+        BitmapFactory.Options imageOptions = new BitmapFactory.Options();
+        imageOptions.inSampleSize = imageSampleSize;
+        imageOptions.inPreferredConfig = options.inPreferredConfig;
+        image = BitmapFactory.decodeFile(imagePath, imageOptions);
+        if (image == null) {
+          return null;
+        }
+      }
+      Rect src = new Rect(rect.left * image.getWidth() / width,
+                          rect.top * image.getHeight() / height,
+                          rect.right * image.getWidth() / width,
+                          rect.bottom * image.getHeight() / height);
+      int sampleSize = Math.max(1, options.inSampleSize);
+      Bitmap tile = Bitmap.createBitmap(Math.max(1, (rect.width() + sampleSize - 1) / sampleSize),
+                                        Math.max(1, (rect.height() + sampleSize - 1) / sampleSize),
+                                        options.inPreferredConfig);
+      new Canvas(tile).drawBitmap(image, src, new Rect(0, 0, tile.getWidth(), tile.getHeight()),
+                                  paint);
+      return tile;
+    }
+
+    @Override
+    public void recycle() {
+      recycled = true;
+      if (image != null) {
+        image.recycle();
+        image = null;
+      }
+    }
+  }
+
+  /**
+   * Decoded tile, the bitmap covers the rectangle of the source image
+   */
+  public static class Tile {
+    private final Rect rect;
+    private final int sampleSize;
+    private final Bitmap bitmap;
+
+    private Tile(Rect rect, int sampleSize, Bitmap bitmap) {
+      this.rect = rect;
+      this.sampleSize = sampleSize;
+      this.bitmap = bitmap;
+    }
+
+    /**
+     * @return Rectangle of the source image covered by this tile, in image coordinates
+     */
+    public Rect getRect() {
+      return rect;
+    }
+
+    public int getSampleSize() {
+      return sampleSize;
+    }
+
+    public Bitmap getBitmap() {
+      return bitmap;
+    }
+  }
+
+  /**
+   * Identifies a tile by its sample size and position on the tile grid of that sample size
+   */
+  private static class TileKey {
+    final int sampleSize;
+    final int column;
+    final int row;
+
+    TileKey(int sampleSize, int column, int row) {
+      this.sampleSize = sampleSize;
+      this.column = column;
+      this.row = row;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TileKey)) {
+        return false;
+      }
+      TileKey tileKey = (TileKey) o;
+      return sampleSize == tileKey.sampleSize && column == tileKey.column && row == tileKey.row;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = sampleSize;
+      result = 31 * result + column;
+      result = 31 * result + row;
+      return result;
+    }
+  }
+
+  /**
+   * LRU cache of decoded tiles bounded by bytes
+   */
+  private static class TileCache {
+    private final Map<TileKey, Tile> tiles = new LinkedHashMap<TileKey, Tile>(16, 0.75f, true);
+    private final long maxBytes;
+    private long size;
+
+    TileCache(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized Tile get(TileKey key) {
+      return tiles.get(key);
+    }
+
+    synchronized void put(TileKey key, Tile tile) {
+      Tile previous = tiles.put(key, tile);
+      if (previous != null) {
+        size -= getSizeInBytes(previous);
+      }
+      size += getSizeInBytes(tile);
+      //Least recently used tiles are the first ones iterated
+      Iterator<Map.Entry<TileKey, Tile>> iterator = tiles.entrySet().iterator();
+      while (size > maxBytes && iterator.hasNext()) {
+        Map.Entry<TileKey, Tile> entry = iterator.next();
+        if (entry.getValue() == tile) {
+          continue;
+        }
+        size -= getSizeInBytes(entry.getValue());
+        iterator.remove();
+      }
+    }
+
+    synchronized void clear() {
+      tiles.clear();
+      size = 0;
+    }
+
+    private static long getSizeInBytes(Tile tile) {
+      return (long) tile.bitmap.getRowBytes() * tile.bitmap.getHeight();
+    }
+  }
+
+  /**
+   * Interface that defines what to do after a tile gets decoded, ej. invalidate the view
+   *
+   * @author "M. en C. Javier Silva Perez (JSP)"
+   * @version 1.0
+   * @since 19/10/16
+   */
+  public interface OnTileLoadedListener {
+
+    /**
+     * Called on the UI thread after a tile of the latest viewport gets decoded
+     *
+     * @param tile
+     * 	Decoded tile
+     */
+    public void onTileLoaded(Tile tile);
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * File: ResilientTransportTest
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Retries and circuit breaker of the WS transport against a local HTTP server
+ */
+
+package com.keysd.baseandroid.dao.ws;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Executes requests through a {@link ResilientTransport} over a {@link HttpURLConnectionTransport}
+ * against a local server, which replies with a scripted sequence of status codes
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class ResilientTransportTest {
+
+  private static final RetryPolicy IMMEDIATE_RETRY = new RetryPolicy(3, 0, 0);
+
+  private HttpServer server;
+  private ScriptedHandler handler;
+  private String url;
+
+  @Before
+  public void setUp() throws IOException {
+    handler = new ScriptedHandler();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+    server.createContext("/", handler);
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/service";
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void getIsRetriedOnServiceUnavailable() throws IOException {
+    handler.enqueue(503, null);
+    handler.enqueue(503, null);
+    ResilientTransport transport = newTransport(IMMEDIATE_RETRY, 5, 30000);
+
+    assertEquals(200, execute(transport, new WSRequest(WSRequest.METHOD_GET, url)));
+    assertEquals(3, handler.getRequestTimes().size());
+  }
+
+  @Test
+  public void postIsNotRetried() throws IOException {
+    handler.enqueue(503, null);
+    ResilientTransport transport = newTransport(IMMEDIATE_RETRY, 5, 30000);
+    WSRequest request = new WSRequest(WSRequest.METHOD_POST, url);
+    request.setBody("application/json", "{}".getBytes("UTF-8"));
+
+    assertEquals(503, execute(transport, request));
+    assertEquals(1, handler.getRequestTimes().size());
+  }
+
+  @Test
+  public void retryAfterIsHonored() throws IOException {
+    handler.enqueue(503, "1");
+    ResilientTransport transport = newTransport(IMMEDIATE_RETRY, 5, 30000);
+
+    assertEquals(200, execute(transport, new WSRequest(WSRequest.METHOD_GET, url)));
+    List<Long> times = handler.getRequestTimes();
+    assertEquals(2, times.size());
+    long waited = times.get(1) - times.get(0);
+    assertTrue("Retried after " + waited + " ms", waited >= 1000);
+  }
+
+  @Test
+  public void circuitOpensAndClosesAfterProbe() throws IOException, InterruptedException {
+    handler.enqueue(500, null);
+    handler.enqueue(500, null);
+    ResilientTransport transport = newTransport(RetryPolicy.NO_RETRY, 2, 200);
+    //Requests without service are grouped by the URL authority
+    String service = "127.0.0.1:" + server.getAddress().getPort();
+    CircuitBreaker circuitBreaker = transport.getCircuitBreaker(service);
+
+    assertEquals(500, execute(transport, new WSRequest(WSRequest.METHOD_GET, url)));
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertEquals(500, execute(transport, new WSRequest(WSRequest.METHOD_GET, url)));
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    //Fails fast, without reaching the server
+    try {
+      execute(transport, new WSRequest(WSRequest.METHOD_GET, url));
+      fail("The circuit should be open");
+    } catch (CircuitOpenException e) {
+      assertEquals(2, handler.getRequestTimes().size());
+    }
+
+    //The trial request succeeds once the open time has passed
+    Thread.sleep(300);
+    assertEquals(200, execute(transport, new WSRequest(WSRequest.METHOD_GET, url)));
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertEquals(3, handler.getRequestTimes().size());
+  }
+
+  private static ResilientTransport newTransport(RetryPolicy retryPolicy, int failureThreshold,
+      long openTime) {
+    return new ResilientTransport(new HttpURLConnectionTransport(2), retryPolicy,
+                                  failureThreshold, openTime);
+  }
+
+  /**
+   * Executes a request and closes its response
+   *
+   * @return The status code of the response
+   */
+  private static int execute(WSTransport transport, WSRequest request) throws IOException {
+    request.setTimeouts(5000, 5000);
+    WSResponse response = transport.execute(request);
+    try {
+      response.getBodyAsString();
+      return response.getStatusCode();
+    } finally {
+      response.close();
+    }
+  }
+
+  /**
+   * Replies the enqueued status codes in order and 200 once they are consumed, recording the time
+   * of every request
+   */
+  private static class ScriptedHandler implements HttpHandler {
+    private final LinkedList<Integer> statusCodes = new LinkedList<Integer>();
+    private final LinkedList<String> retryAfters = new LinkedList<String>();
+    private final List<Long> requestTimes = new ArrayList<Long>();
+
+    synchronized void enqueue(int statusCode, String retryAfter) {
+      statusCodes.add(statusCode);
+      retryAfters.add(retryAfter);
+    }
+
+    synchronized List<Long> getRequestTimes() {
+      return new ArrayList<Long>(requestTimes);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      int statusCode = 200;
+      String retryAfter = null;
+      synchronized (this) {
+        requestTimes.add(System.currentTimeMillis());
+        if (!statusCodes.isEmpty()) {
+          statusCode = statusCodes.removeFirst();
+          retryAfter = retryAfters.removeFirst();
+        }
+      }
+      try {
+        //Consume the request body so the connection could be reused
+        while (exchange.getRequestBody().read() != -1) {
+          //Discard
+        }
+        if (retryAfter != null) {
+          exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        }
+        byte[] body = ("{\"status\":" + statusCode + "}").getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        exchange.getResponseBody().write(body);
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * File: ParserBenchmarkTest
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Parsing benchmark of large JSON arrays
+ */
+
+package com.keysd.baseandroid.model.ws;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.keysd.baseandroid.model.db.BaseModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses arrays of 100k elements with the reflective Gson adapters and with a
+ * {@link BaseModelTypeAdapter}, checking the adapter is not slower. The adapter is registered on
+ * a Gson of the test instead of {@link GsonRegistry}, so the other tests do not inherit it. Each
+ * path is run once before being measured, so the JIT and the Gson adapter caches are warm, and
+ * the best of several runs is compared
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class ParserBenchmarkTest {
+
+  private static final int ELEMENTS = 100000;
+  private static final int RUNS = 3;
+
+  private static String json;
+  private static byte[] jsonBytes;
+  private static Gson reflectiveGson;
+  private static Gson adapterGson;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    StringBuilder builder = new StringBuilder(ELEMENTS * 64);
+    builder.append('[');
+    for (int i = 0; i < ELEMENTS; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"dbId\":").append(i)
+             .append(",\"idServer\":").append(i + 1)
+             .append(",\"name\":\"Item ").append(i)
+             .append("\",\"description\":\"Description of the item ").append(i)
+             .append("\"}");
+    }
+    builder.append(']');
+    json = builder.toString();
+    jsonBytes = json.getBytes("UTF-8");
+    reflectiveGson = new Gson();
+    adapterGson = new GsonBuilder().registerTypeAdapter(Item.class, new ItemTypeAdapter())
+                                   .create();
+  }
+
+  @Test
+  public void registeredAdapterParsing() {
+    long reflective = measure(new StringParseRun(reflectiveGson));
+    long adapter = measure(new StringParseRun(adapterGson));
+    assertTrue("Reflective Gson: " + reflective + " ms, registered adapter: " + adapter + " ms",
+               adapter <= reflective);
+  }
+
+  @Test
+  public void registeredAdapterStreaming() {
+    long reflective = measure(new StreamParseRun(reflectiveGson));
+    long adapter = measure(new StreamParseRun(adapterGson));
+    assertTrue("Streamed with reflective Gson: " + reflective + " ms, streamed with registered " +
+                   "adapter: " + adapter + " ms", adapter <= reflective);
+  }
+
+  /**
+   * Runs a parse once for warming up and then several times, checking the parsed items
+   *
+   * @return The best time of the runs in milliseconds
+   */
+  private static long measure(ParseRun run) {
+    try {
+      assertItems(run.parse());
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < RUNS; i++) {
+        long start = System.nanoTime();
+        List<Item> items = run.parse();
+        best = Math.min(best, (System.nanoTime() - start) / 1000000L);
+        assertItems(items);
+      }
+      return best;
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void assertItems(List<Item> items) {
+    assertEquals(ELEMENTS, items.size());
+    Item last = items.get(ELEMENTS - 1);
+    assertEquals(Integer.valueOf(ELEMENTS - 1), last.getDbId());
+    assertEquals(Integer.valueOf(ELEMENTS), last.idServer);
+    assertEquals("Item " + (ELEMENTS - 1), last.name);
+    assertEquals("Description of the item " + (ELEMENTS - 1), last.description);
+  }
+
+  private interface ParseRun {
+    public List<Item> parse() throws IOException;
+  }
+
+  /**
+   * Parses the array from a string
+   */
+  private static class StringParseRun implements ParseRun {
+    private final Gson gson;
+
+    StringParseRun(Gson gson) {
+      this.gson = gson;
+    }
+
+    @Override
+    public List<Item> parse() throws IOException {
+      JsonReader reader = new JsonReader(new StringReader(json));
+      return collect(new JsonArrayIterator<Item>(reader, gson, Item.class));
+    }
+  }
+
+  /**
+   * Parses the array streamed from its UTF-8 bytes
+   */
+  private static class StreamParseRun implements ParseRun {
+    private final Gson gson;
+
+    StreamParseRun(Gson gson) {
+      this.gson = gson;
+    }
+
+    @Override
+    public List<Item> parse() throws IOException {
+      InputStream in = new ByteArrayInputStream(jsonBytes);
+      return collect(new JsonArrayIterator<Item>(in, gson, Item.class));
+    }
+  }
+
+  private static List<Item> collect(JsonArrayIterator<Item> iterator) throws IOException {
+    List<Item> items = new ArrayList<Item>(ELEMENTS);
+    try {
+      while (iterator.hasNext()) {
+        items.add(iterator.next());
+      }
+    } finally {
+      iterator.close();
+    }
+    return items;
+  }
+
+  /**
+   * Catalog like model
+   */
+  static class Item extends BaseModel {
+    Integer idServer;
+    String name;
+    String description;
+
+    @Override
+    public String getShownDescription() {
+      return name;
+    }
+  }
+
+  static class ItemTypeAdapter extends BaseModelTypeAdapter<Item> {
+
+    @Override
+    protected Item newInstance() {
+      return new Item();
+    }
+
+    @Override
+    protected void readField(JsonReader in, String name, Item object) throws IOException {
+      if ("idServer".equals(name)) {
+        object.idServer = nextInteger(in);
+      } else if ("name".equals(name)) {
+        object.name = nextString(in);
+      } else if ("description".equals(name)) {
+        object.description = nextString(in);
+      } else {
+        in.skipValue();
+      }
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, Item object) throws IOException {
+      out.name("idServer").value(object.idServer);
+      out.name("name").value(object.name);
+      out.name("description").value(object.description);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/**
+ * File: Column
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Marks a model field that is saved on a table column
+ */
+
+package com.keysd.baseandroid.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a model annotated with {@link Table} that is saved on a table column.
+ * Supported types are int, long, short, boolean, float, double, their wrappers, String and
+ * byte[]. Private fields are accessed through their getter and setter, ej. getName and setName
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+  /**
+   * @return Column name
+   */
+  String value();
+}
@@ -0,0 +1,38 @@
+/**
+ * File: Table
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Marks a model that is saved on a data base table
+ */
+
+package com.keysd.baseandroid.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code BaseModel} that is saved on a data base table, a binder named
+ * {@code <Model>_Binder} is generated for it at compile time with the fields annotated with
+ * {@link Column}. The model must have a public constructor without parameters
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Table {
+
+  /**
+   * @return Table name
+   */
+  String value();
+
+  /**
+   * @return Column of the row id, it is read into the model dbId and never inserted
+   */
+  String idColumn() default "_id";
+}
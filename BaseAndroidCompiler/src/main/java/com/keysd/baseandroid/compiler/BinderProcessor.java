@@ -0,0 +1,341 @@
+/**
+ * File: BinderProcessor
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Annotation processor that generates the data base binders of the annotated models
+ */
+
+package com.keysd.baseandroid.compiler;
+
+import com.keysd.baseandroid.annotation.Column;
+import com.keysd.baseandroid.annotation.Table;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor that generates a {@code ModelBinder} for each model annotated with
+ * {@link com.keysd.baseandroid.annotation.Table}. The binders bind the fields directly into a
+ * compiled insert statement by index and read them from a cursor by indexes resolved once per
+ * cursor, so the DAOs and controllers do not need hand written fillMapValues and fillUpObject
+ * methods
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class BinderProcessor extends AbstractProcessor {
+
+  private static final String BINDER_SUFFIX = "_Binder";
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(Table.class.getCanonicalName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(Table.class)) {
+      if (element.getKind() != ElementKind.CLASS) {
+        error(element, "@Table is only supported on classes");
+        continue;
+      }
+      try {
+        TypeElement model = (TypeElement) element;
+        List<ColumnField> columns = getColumns(model);
+        if (columns != null && hasDefaultConstructor(model)) {
+          writeBinder(model, model.getAnnotation(Table.class), columns);
+        }
+      } catch (IOException e) {
+        error(element, "Unable to write binder: " + e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the annotated fields of the model with their accessors
+   *
+   * @return The columns or null if any of them is invalid
+   */
+  private List<ColumnField> getColumns(TypeElement model) {
+    List<ColumnField> columns = new ArrayList<ColumnField>();
+    List<ExecutableElement> methods = ElementFilter.methodsIn(model.getEnclosedElements());
+    boolean valid = true;
+    for (VariableElement field : ElementFilter.fieldsIn(model.getEnclosedElements())) {
+      Column column = field.getAnnotation(Column.class);
+      if (column == null) {
+        continue;
+      }
+      ColumnType type = ColumnType.of(field.asType().toString());
+      if (type == null) {
+        error(field, "Unsupported column type " + field.asType());
+        valid = false;
+        continue;
+      }
+      String name = field.getSimpleName().toString();
+      String getter = "object." + name;
+      String setter = null;
+      if (field.getModifiers().contains(Modifier.PRIVATE)) {
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String getterName = findMethod(methods, "get" + capitalized, 0);
+        if (getterName == null && (type == ColumnType.BOOLEAN || type == ColumnType.BOOLEAN_BOX)) {
+          getterName = findMethod(methods, "is" + capitalized, 0);
+        }
+        setter = findMethod(methods, "set" + capitalized, 1);
+        if (getterName == null || setter == null) {
+          error(field, "Private column fields need a getter and a setter");
+          valid = false;
+          continue;
+        }
+        getter = "object." + getterName + "()";
+      }
+      columns.add(new ColumnField(column.value(), name, type, getter, setter));
+    }
+    return valid ? columns : null;
+  }
+
+  private static String findMethod(List<ExecutableElement> methods, String name,
+      int parameters) {
+    for (ExecutableElement method : methods) {
+      if (method.getSimpleName().contentEquals(name) &&
+          method.getParameters().size() == parameters &&
+          !method.getModifiers().contains(Modifier.PRIVATE)) {
+        return name;
+      }
+    }
+    return null;
+  }
+
+  private boolean hasDefaultConstructor(TypeElement model) {
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(
+        model.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty() &&
+          constructor.getModifiers().contains(Modifier.PUBLIC)) {
+        return true;
+      }
+    }
+    error(model, "@Table models need a public constructor without parameters");
+    return false;
+  }
+
+  private void writeBinder(TypeElement model, Table table, List<ColumnField> columns)
+      throws IOException {
+    PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(model);
+    String packageName = packageElement.getQualifiedName().toString();
+    String modelName = model.getSimpleName().toString();
+    String binderName = modelName + BINDER_SUFFIX;
+
+    StringBuilder insertColumns = new StringBuilder();
+    StringBuilder insertParams = new StringBuilder();
+    StringBuilder allColumns = new StringBuilder(quote(table.idColumn()));
+    for (int i = 0; i < columns.size(); i++) {
+      insertColumns.append(i > 0 ? "," : "").append(columns.get(i).column);
+      insertParams.append(i > 0 ? ",?" : "?");
+      allColumns.append(", ").append(quote(columns.get(i).column));
+    }
+
+    JavaFileObject file = processingEnv.getFiler().createSourceFile(
+        packageName.isEmpty() ? binderName : packageName + "." + binderName, model);
+    Writer writer = file.openWriter();
+    try {
+      if (!packageName.isEmpty()) {
+        writer.write("package " + packageName + ";\n\n");
+      }
+      writer.write("import android.content.ContentValues;\n");
+      writer.write("import android.database.Cursor;\n");
+      writer.write("import android.database.sqlite.SQLiteStatement;\n");
+      writer.write("import com.keysd.baseandroid.dao.db.ModelBinder;\n\n");
+      writer.write("/**\n * Binder of {@link " + modelName + "} generated by "
+                       + getClass().getSimpleName() + ", do not modify it\n */\n");
+      writer.write("public final class " + binderName + " implements ModelBinder<" + modelName +
+                       "> {\n\n");
+      writer.write("  private static final String TABLE_NAME = " + quote(table.value()) + ";\n");
+      writer.write("  private static final String[] COLUMNS = {" + allColumns + "};\n");
+      writer.write("  private static final String INSERT_SQL = " +
+                       quote("INSERT INTO " + table.value() + " (" + insertColumns +
+                                 ") VALUES (" + insertParams + ")") + ";\n\n");
+
+      writer.write("  @Override\n  public String getTableName() {\n    return TABLE_NAME;\n" +
+                       "  }\n\n");
+      writer.write("  @Override\n  public String[] getColumns() {\n    return COLUMNS.clone();\n" +
+                       "  }\n\n");
+      writer.write("  @Override\n  public String getInsertSql() {\n    return INSERT_SQL;\n" +
+                       "  }\n\n");
+
+      writer.write("  @Override\n  public void bindInsert(SQLiteStatement statement, " +
+                       modelName + " object) {\n");
+      for (int i = 0; i < columns.size(); i++) {
+        ColumnField column = columns.get(i);
+        writer.write(column.type.bind("statement", i + 1, column.getter));
+      }
+      writer.write("  }\n\n");
+
+      writer.write("  @Override\n  public ContentValues toContentValues(" + modelName +
+                       " object) {\n");
+      writer.write("    ContentValues values = new ContentValues(" + columns.size() + ");\n");
+      for (ColumnField column : columns) {
+        writer.write(column.type.put("values", quote(column.column), column.getter));
+      }
+      writer.write("    return values;\n  }\n\n");
+
+      writer.write("  @Override\n  public int[] getColumnIndexes(Cursor cursor) {\n");
+      writer.write("    int[] indexes = new int[COLUMNS.length];\n");
+      writer.write("    for (int i = 0; i < COLUMNS.length; i++) {\n");
+      writer.write("      indexes[i] = cursor.getColumnIndex(COLUMNS[i]);\n    }\n");
+      writer.write("    return indexes;\n  }\n\n");
+
+      writer.write("  @Override\n  public " + modelName + " fromCursor(Cursor cursor, " +
+                       "int[] indexes) {\n");
+      writer.write("    " + modelName + " object = new " + modelName + "();\n");
+      writer.write("    readInto(object, cursor, indexes);\n");
+      writer.write("    return object;\n  }\n\n");
+
+      writer.write("  @Override\n  public void readInto(" + modelName + " object, " +
+                       "Cursor cursor, int[] indexes) {\n");
+      writer.write("    if (indexes[0] != -1) {\n");
+      writer.write("      object.setDbId(cursor.getInt(indexes[0]));\n    }\n");
+      for (int i = 0; i < columns.size(); i++) {
+        ColumnField column = columns.get(i);
+        String index = "indexes[" + (i + 1) + "]";
+        String value = column.type.read("cursor", index);
+        writer.write("    if (" + index + " != -1) {\n");
+        if (column.setter != null) {
+          writer.write("      object." + column.setter + "(" + value + ");\n");
+        } else {
+          writer.write("      object." + column.field + " = " + value + ";\n");
+        }
+        writer.write("    }\n");
+      }
+      writer.write("  }\n}\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static String quote(String value) {
+    return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+  /**
+   * Annotated field with its accessors
+   */
+  private static class ColumnField {
+    private final String column;
+    private final String field;
+    private final ColumnType type;
+    private final String getter;
+    private final String setter;
+
+    private ColumnField(String column, String field, ColumnType type, String getter,
+        String setter) {
+      this.column = column;
+      this.field = field;
+      this.type = type;
+      this.getter = getter;
+      this.setter = setter;
+    }
+  }
+
+  /**
+   * Supported field types with the code for binding and reading them
+   */
+  private enum ColumnType {
+    INT("int", "bindLong", "getInt", false),
+    INT_BOX("java.lang.Integer", "bindLong", "getInt", true),
+    LONG("long", "bindLong", "getLong", false),
+    LONG_BOX("java.lang.Long", "bindLong", "getLong", true),
+    SHORT("short", "bindLong", "getShort", false),
+    SHORT_BOX("java.lang.Short", "bindLong", "getShort", true),
+    BOOLEAN("boolean", "bindLong", "getInt", false),
+    BOOLEAN_BOX("java.lang.Boolean", "bindLong", "getInt", true),
+    FLOAT("float", "bindDouble", "getFloat", false),
+    FLOAT_BOX("java.lang.Float", "bindDouble", "getFloat", true),
+    DOUBLE("double", "bindDouble", "getDouble", false),
+    DOUBLE_BOX("java.lang.Double", "bindDouble", "getDouble", true),
+    STRING("java.lang.String", "bindString", "getString", true),
+    BLOB("byte[]", "bindBlob", "getBlob", true);
+
+    private final String typeName;
+    private final String bindMethod;
+    private final String getMethod;
+    private final boolean nullable;
+
+    ColumnType(String typeName, String bindMethod, String getMethod, boolean nullable) {
+      this.typeName = typeName;
+      this.bindMethod = bindMethod;
+      this.getMethod = getMethod;
+      this.nullable = nullable;
+    }
+
+    static ColumnType of(String typeName) {
+      for (ColumnType type : values()) {
+        if (type.typeName.equals(typeName)) {
+          return type;
+        }
+      }
+      return null;
+    }
+
+    private boolean isBoolean() {
+      return this == BOOLEAN || this == BOOLEAN_BOX;
+    }
+
+    String bind(String statement, int index, String getter) {
+      String value = isBoolean() ? "(" + getter + " ? 1 : 0)" : getter;
+      if (!nullable) {
+        return "    " + statement + "." + bindMethod + "(" + index + ", " + value + ");\n";
+      }
+      String variable = "value" + index;
+      String bound = isBoolean() ? "(" + variable + " ? 1 : 0)" : variable;
+      return "    " + typeName + " " + variable + " = " + getter + ";\n" +
+          "    if (" + variable + " == null) {\n" +
+          "      " + statement + ".bindNull(" + index + ");\n" +
+          "    } else {\n" +
+          "      " + statement + "." + bindMethod + "(" + index + ", " + bound + ");\n" +
+          "    }\n";
+    }
+
+    String put(String values, String column, String getter) {
+      return "    " + values + ".put(" + column + ", " + getter + ");\n";
+    }
+
+    String read(String cursor, String index) {
+      String value = cursor + "." + getMethod + "(" + index + ")";
+      if (isBoolean()) {
+        value = value + " != 0";
+      }
+      if (!nullable) {
+        return value;
+      }
+      return cursor + ".isNull(" + index + ") ? null : " + (isBoolean() ? "(Boolean) (" + value +
+          ")" : value);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * File: SampleApplication
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Sample application, configures the library and prepares the data base at start
+ */
+
+package com.keysd.baseandroidtest;
+
+import android.app.Application;
+import com.keysd.baseandroid.model.ws.GsonRegistry;
+import com.keysd.baseandroidtest.dao.db.helper.CustomDataBaseOpenHelper;
+import com.keysd.baseandroidtest.dao.db.helper.DatabaseDictionary;
+import com.keysd.baseandroidtest.model.db.State;
+import com.keysd.baseandroidtest.model.ws.StateTypeAdapter;
+
+/**
+ * Sample application, registers the Gson type adapters once at start, before any response is
+ * parsed, see {@link com.keysd.baseandroid.model.ws.GsonRegistry}, and warms up the data base,
+ * so it is also ready when the process is restarted on a screen other than the splash
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class SampleApplication extends Application {
+
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    //Catalogs are parsed without reflection
+    GsonRegistry.registerTypeAdapter(State.class, new StateTypeAdapter());
+    //Open the data base while the UI is created
+    new CustomDataBaseOpenHelper(this).warmUp(DatabaseDictionary.State.NAME);
+  }
+}
@@ -38,10 +38,6 @@ import java.util.List;
  */
 public class SampleController extends BaseDBController<State> {
 
-  private static final String[] COLUMNS =
-      new String[]{DatabaseDictionary.State._ID, DatabaseDictionary.State.COLUMN_NAME_NAME,
-          DatabaseDictionary.State.COLUMN_NAME_ID_SERVER};
-
   /**
    * Constructor
    *
@@ -53,30 +49,15 @@ public class SampleController extends BaseDBController<State> {
   }
 
   /**
-   * Columns that will be returned by the sql statements
+   * Gets the server id of a state, used for the lookups on the catalog snapshot
    *
-   * @return A string array with the columns that will be returned in all sql statements
+   * @param state
+   * 	State
+   * @return The state server id
    */
   @Override
-  protected String[] getColumns() {
-    return COLUMNS;
-  }
-
-  /**
-   * Fill up an object with cursor values, the cursor must be valid or exceptions could be thrown
-   *
-   * @param cursor
-   * 	Valid cursor for extract object information
-   * @return A State object fill up with cursor information
-   */
-  public State fillUpObject(Cursor cursor) {
-    State state = new State();
-    state.setDbId(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseDictionary.State._ID)));
-    state.setIdServer(cursor.getInt(
-        cursor.getColumnIndexOrThrow(DatabaseDictionary.State.COLUMN_NAME_ID_SERVER)));
-    state.setName(
-        cursor.getString(cursor.getColumnIndexOrThrow(DatabaseDictionary.State.COLUMN_NAME_NAME)));
-    return state;
+  protected Object getServerId(State state) {
+    return state.getIdServer();
   }
 
   /**
@@ -93,7 +74,7 @@ public class SampleController extends BaseDBController<State> {
    */
   public State getByServerId(Integer idServer) throws DBException {
 
-    Cursor res = ((SampleDAO) getBaseDBDAO()).getByServerId(idServer, COLUMNS);
+    Cursor res = ((SampleDAO) getBaseDBDAO()).getByServerId(idServer, getColumns());
     //If the cursor has at least one element, create the corresponding State object, if not,
     // return an empty object
     if (res != null && res.moveToFirst()) {
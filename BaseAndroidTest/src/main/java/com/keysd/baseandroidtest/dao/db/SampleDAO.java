@@ -10,7 +10,6 @@
 
 package com.keysd.baseandroidtest.dao.db;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -19,6 +18,7 @@ import com.keysd.baseandroid.dao.db.DBException;
 import com.keysd.baseandroidtest.dao.db.helper.CustomDataBaseOpenHelper;
 import com.keysd.baseandroidtest.dao.db.helper.DatabaseDictionary;
 import com.keysd.baseandroidtest.model.db.State;
+import com.keysd.baseandroidtest.model.db.State_Binder;
 import java.util.Map;
 
 /**
@@ -39,23 +39,8 @@ public class SampleDAO extends BaseDBDAO<State> {
    * 	The Context within which to work, used to create the DB
    */
   public SampleDAO(Context context) {
-    super(DatabaseDictionary.State.NAME, new CustomDataBaseOpenHelper(context));
-  }
-
-  /**
-   * Fill up a map for the values to be inserted or updated into the data base
-   *
-   * @param state
-   * 	Object to be get the table values
-   * @return A ContentValues object filled up with the corresponding Patient values
-   */
-  @Override
-  protected ContentValues fillMapValues(State state) {
-    // Create a new map of values, where column base_dictionary are the keys
-    ContentValues values = new ContentValues();
-    values.put(DatabaseDictionary.State.COLUMN_NAME_NAME, state.getName());
-    values.put(DatabaseDictionary.State.COLUMN_NAME_ID_SERVER, state.getIdServer());
-    return values;
+    super(DatabaseDictionary.State.NAME, new CustomDataBaseOpenHelper(context),
+          new State_Binder());
   }
 
 
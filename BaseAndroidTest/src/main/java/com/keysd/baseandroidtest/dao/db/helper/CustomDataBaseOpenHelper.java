@@ -39,6 +39,8 @@ public class CustomDataBaseOpenHelper extends BaseDatabaseOpenHelper {
     //Call create function for each table
     create(db, DatabaseDictionary.State.SQL_CREATE);
     create(db, DatabaseDictionary.StateAux.SQL_CREATE);
+    //High water marks of the tables synchronized by the DeltaSyncEngine
+    create(db, com.keysd.baseandroid.dao.db.helper.DatabaseDictionary.SyncState.SQL_CREATE);
   }
 
   /**
@@ -76,6 +78,8 @@ public class CustomDataBaseOpenHelper extends BaseDatabaseOpenHelper {
     upgrade(DatabaseDictionary.State.NAME, DatabaseDictionary.State.SQL_CREATE,
             DatabaseDictionary.State.SQL_BACKUP,
             db);
+    //Created only if missing, so the marks of the previous version are kept
+    create(db, com.keysd.baseandroid.dao.db.helper.DatabaseDictionary.SyncState.SQL_CREATE);
   }
 
   /**
@@ -10,10 +10,10 @@
 
 package com.keysd.baseandroidtest.dao.ws;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import com.keysd.baseandroid.dao.ws.ResponseErrorException;
 import com.keysd.baseandroid.dao.ws.WSClient;
+import com.keysd.baseandroid.model.ws.GsonRegistry;
 import com.keysd.baseandroid.model.ws.MessageErrorCode;
 import java.util.LinkedList;
 import java.util.List;
@@ -55,8 +55,8 @@ public abstract class SampleWS<T1, T2> extends WSClient<T1, T2> {
    */
   protected void manageErrors(String serverResponse) throws ResponseErrorException {
     try {
-      Gson gson = new Gson();
-      MessageErrorCode errorCode = gson.fromJson(serverResponse, MessageErrorCode.class);
+      MessageErrorCode errorCode =
+          GsonRegistry.getGson().fromJson(serverResponse, MessageErrorCode.class);
       if (errorCode.getCode() != null && errorCode.getCode() != 1) {
 
         List<MessageErrorCode> errorCodeList = new LinkedList<MessageErrorCode>();
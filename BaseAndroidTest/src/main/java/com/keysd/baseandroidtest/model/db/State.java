@@ -9,8 +9,12 @@
 package com.keysd.baseandroidtest.model.db;
 
 
+import com.keysd.baseandroid.annotation.Column;
+import com.keysd.baseandroid.annotation.Table;
 import com.keysd.baseandroid.model.db.BaseModel;
+import com.keysd.baseandroid.model.db.Copyable;
 import com.keysd.baseandroid.util.CustomCatalogComparator;
+import com.keysd.baseandroidtest.dao.db.helper.DatabaseDictionary;
 
 /**
  * Model Object that represents the States table in DB model
@@ -19,7 +23,8 @@ import com.keysd.baseandroid.util.CustomCatalogComparator;
  * @version 1.0
  * @since 29/07/13
  */
-public class State extends BaseModel {
+@Table(DatabaseDictionary.State.NAME)
+public class State extends BaseModel implements Copyable<State> {
   /**
    * Comparator for state objects, using its description as comparable attribute
    */
@@ -29,10 +34,12 @@ public class State extends BaseModel {
   /**
    * State id on the server
    */
+  @Column(DatabaseDictionary.State.COLUMN_NAME_ID_SERVER)
   private Integer idServer;
   /**
    * State name
    */
+  @Column(DatabaseDictionary.State.COLUMN_NAME_NAME)
   private String name;
 
   /**
@@ -70,6 +77,18 @@ public class State extends BaseModel {
     return name;
   }
 
+  /**
+   * Creates a new state with the same values, used for keeping the states received while
+   * scanning the table, see
+   * {@link com.keysd.baseandroid.controller.BaseDBController#forEach(com.keysd.baseandroid.dao.db.RowCallback)}
+   *
+   * @return A new instance of the state
+   */
+  @Override
+  public State copy() {
+    return new State(dbId, idServer, name);
+  }
+
   public Integer getIdServer() {
     return idServer;
   }
@@ -0,0 +1,50 @@
+/**
+ * File: StateTypeAdapter
+ * CreationDate: 19/10/16
+ * Author: "M. en C. Javier Silva Perez (JSP)"
+ * Description:
+ * Gson adapter for the State model, without reflection
+ */
+
+package com.keysd.baseandroidtest.model.ws;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.keysd.baseandroid.model.ws.BaseModelTypeAdapter;
+import com.keysd.baseandroidtest.model.db.State;
+import java.io.IOException;
+
+/**
+ * Gson adapter for the {@link com.keysd.baseandroidtest.model.db.State} model, without reflection
+ *
+ * @author "M. en C. Javier Silva Perez (JSP)"
+ * @version 1.0
+ * @since 19/10/16
+ */
+public class StateTypeAdapter extends BaseModelTypeAdapter<State> {
+
+  private static final String FIELD_ID_SERVER = "idServer";
+  private static final String FIELD_NAME = "name";
+
+  @Override
+  protected State newInstance() {
+    return new State();
+  }
+
+  @Override
+  protected void readField(JsonReader in, String name, State object) throws IOException {
+    if (FIELD_ID_SERVER.equals(name)) {
+      object.setIdServer(nextInteger(in));
+    } else if (FIELD_NAME.equals(name)) {
+      object.setName(nextString(in));
+    } else {
+      in.skipValue();
+    }
+  }
+
+  @Override
+  protected void writeFields(JsonWriter out, State object) throws IOException {
+    out.name(FIELD_ID_SERVER).value(object.getIdServer());
+    out.name(FIELD_NAME).value(object.getName());
+  }
+}